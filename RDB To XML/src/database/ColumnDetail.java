@@ -11,6 +11,7 @@ public class ColumnDetail {
 	private boolean isNullable;
 	private boolean isUnique;
 	private boolean isMultiValued;
+	private boolean isUnsigned;
 	private int size;
 	private int sqlType;
 	
@@ -24,6 +25,7 @@ public class ColumnDetail {
 		this.size             = size;
 		this.sqlType          = sqlType;
 		this.isMultiValued    = false;
+		this.isUnsigned       = false;
 	}
 	
 	public String getTableName() {
@@ -69,4 +71,15 @@ public class ColumnDetail {
 	public boolean isMultiValued(){
 		return isMultiValued;
 	}
+
+	public void setIsUnsigned(boolean isUnsigned){
+		this.isUnsigned = isUnsigned;
+	}
+
+	/**
+	 * Whether the column is an unsigned number, whose values may not fit in the Java type of its SQL type
+	 */
+	public boolean isUnsigned(){
+		return isUnsigned;
+	}
 }
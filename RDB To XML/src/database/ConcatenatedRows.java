@@ -0,0 +1,91 @@
+package database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import javax.sql.rowset.CachedRowSet;
+
+import main.MainException;
+
+import com.sun.rowset.CachedRowSetImpl;
+
+/**
+ * Joins the rows of scans read in parts, e.g. the key ranges of a table, into one row set.
+ */
+public class ConcatenatedRows {
+
+	private ConcatenatedRows() {}
+
+	/**
+	 * Copies the rows of the parts, one part after the other, into one row set and closes the parts.
+	 * Each part is closed and removed from the list as soon as its rows are copied, so that the rows
+	 * of a large table are held at most twice for the part being copied, instead of for the whole table.
+	 * @param parts				row sets with the same columns, replaced by null once copied
+	 * @return					the rows of all the parts, in order
+	 * @throws MainException	if the rows cannot be copied
+	 */
+	public static CachedRowSet concatenate(List<CachedRowSet> parts) throws MainException {
+		if (parts.size() == 1)
+			return parts.get(0);
+		try {
+			CachedRowSet crs = new CachedRowSetImpl();
+			crs.populate(concatenatedResultSet(parts));
+			return crs;
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw new MainException("Cannot join the rows read in parts : " + e.getMessage());
+		} finally {
+			for (int i = 0; i < parts.size(); i++) {
+				release(parts, i);
+			}
+		}
+	}
+
+	/*
+	 * Closes a part, which frees its rows, and drops it from the list
+	 * */
+	private static void release(List<CachedRowSet> parts, int index) {
+		CachedRowSet part = parts.get(index);
+		if (part == null)
+			return;
+		parts.set(index, null);
+		try {
+			part.close();
+		} catch (SQLException e) {
+			// the rows are freed with the part anyway
+		}
+	}
+
+	/*
+	 * Result set which reads the parts one after the other. Every call but next() is
+	 * answered by the part being read. A part is released once its last row has been read.
+	 * */
+	private static ResultSet concatenatedResultSet(final List<CachedRowSet> parts) {
+		InvocationHandler handler = new InvocationHandler() {
+			private int current = 0;
+
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("next") && method.getParameterTypes().length == 0) {
+					while (!parts.get(current).next()) {
+						if (current == parts.size() - 1)
+							return false;
+						release(parts, current);
+						current++;
+					}
+					return true;
+				}
+				try {
+					return method.invoke(parts.get(current), args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		};
+		return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class }, handler);
+	}
+}
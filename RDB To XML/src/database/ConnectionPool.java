@@ -0,0 +1,190 @@
+package database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import main.MainException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Bounded pool of connections to one database.
+ *
+ * <p>
+ * A borrowed connection is returned to the pool when it is closed. An idle connection is
+ * checked with <code>Connection.isValid</code> before it is lent again, and replaced if the
+ * server has dropped it. A borrower waits while all the connections are lent, for at most
+ * {@link #BORROW_TIMEOUT_MILLIS}.
+ * </p>
+ */
+public class ConnectionPool {
+
+	public static final long BORROW_TIMEOUT_MILLIS = 60000;
+	/** Seconds given to the server to answer a health check **/
+	private static final int VALIDATION_TIMEOUT = 5;
+
+	private Logger logger = Logger.getLogger(ConnectionPool.class);
+	private String connectionUrl;
+	private String username;
+	private String password;
+	private int maxSize;
+	private int lentCount;
+	private Deque<Connection> idle;
+	private boolean closed;
+
+	/**
+	 * @param connectionUrl		JDBC URL of the database
+	 * @param username			user of the connections
+	 * @param password			password of the user
+	 * @param maxSize			maximum number of open connections
+	 */
+	public ConnectionPool(String connectionUrl, String username, String password, int maxSize) {
+		this.connectionUrl = connectionUrl;
+		this.username      = username;
+		this.password      = password;
+		this.maxSize       = Math.max(1, maxSize);
+		this.lentCount     = 0;
+		this.idle          = new ArrayDeque<Connection>();
+		this.closed        = false;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Number of connections which can be borrowed without waiting
+	 * @return	the connections idle or not opened yet, 0 if the pool is closed
+	 */
+	public synchronized int getFreeCount() {
+		return closed ? 0 : maxSize - lentCount;
+	}
+
+	/**
+	 * Lends a connection, opening one if none is idle and the pool is not full
+	 * @return					a connection which goes back to the pool when it is closed
+	 * @throws MainException	if the pool is closed, no connection is returned in time or the connection fails
+	 */
+	public Connection borrow() throws MainException {
+		Connection connection = null;
+		synchronized (this) {
+			long deadline = System.currentTimeMillis() + BORROW_TIMEOUT_MILLIS;
+			while (!closed && idle.isEmpty() && lentCount >= maxSize) {
+				long wait = deadline - System.currentTimeMillis();
+				if (wait <= 0)
+					throw new MainException("No database connection has been available for " + BORROW_TIMEOUT_MILLIS / 1000 + " seconds.");
+				try {
+					wait(wait);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new MainException("Interrupted while waiting for a database connection.");
+				}
+			}
+			if (closed)
+				throw new MainException("The database connection pool is closed.");
+			connection = idle.pollFirst();
+			lentCount++;
+		}
+		try {
+			if (connection != null && !isValid(connection)) {
+				logger.info("Replacing a database connection which is no longer valid");
+				closeQuietly(connection);
+				connection = null;
+			}
+			if (connection == null)
+				connection = DriverManager.getConnection(connectionUrl, username, password);
+			return wrap(connection);
+		} catch (SQLException e) {
+			e.printStackTrace();
+			giveBack(null);
+			throw new MainException("Failed to connect to database");
+		}
+	}
+
+	/**
+	 * Closes the idle connections and the lent connections when they are returned
+	 */
+	public void close() {
+		synchronized (this) {
+			closed = true;
+			while (!idle.isEmpty()) {
+				closeQuietly(idle.pollFirst());
+			}
+			notifyAll();
+		}
+	}
+
+	private boolean isValid(Connection connection) {
+		try {
+			return connection.isValid(VALIDATION_TIMEOUT);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	/*
+	 * Takes back a lent connection, or only its place in the pool if the connection is null
+	 * */
+	private synchronized void giveBack(Connection connection) {
+		lentCount--;
+		if (connection != null) {
+			if (closed) {
+				closeQuietly(connection);
+			} else {
+				idle.addFirst(connection);
+			}
+		}
+		notifyAll();
+	}
+
+	private void closeQuietly(Connection connection) {
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/*
+	 * Connection whose close() gives the connection back to the pool
+	 * */
+	private Connection wrap(final Connection connection) {
+		InvocationHandler handler = new InvocationHandler() {
+			private boolean returned = false;
+
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				if (name.equals("close")) {
+					if (!returned) {
+						returned = true;
+						boolean isUsable = !connection.isClosed();
+						if (isUsable && !connection.getAutoCommit()) {
+							connection.rollback();
+							connection.setAutoCommit(true);
+						}
+						giveBack(isUsable ? connection : null);
+					}
+					return null;
+				}
+				if (name.equals("isClosed")) {
+					return returned || connection.isClosed();
+				}
+				if (returned)
+					throw new SQLException("The connection has been returned to the pool.");
+				try {
+					return method.invoke(connection, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		};
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, handler);
+	}
+}
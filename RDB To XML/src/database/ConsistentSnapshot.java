@@ -0,0 +1,107 @@
+package database;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import main.MainException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Accesses of one export which all read the same snapshot of the database.
+ *
+ * <p>
+ * The session access takes a global read lock, every access then starts a transaction
+ * <code>WITH CONSISTENT SNAPSHOT</code>, and the lock is released. No write can commit
+ * between the start of two of the transactions, so the tables read by the workers in
+ * parallel refer to each other as they do in the database. Taking the lock needs the
+ * RELOAD privilege. Without it the transactions are started one after the other with
+ * no lock, and a write committed in between could be seen by some accesses only.
+ * </p>
+ */
+public class ConsistentSnapshot {
+
+	private Logger logger = Logger.getLogger(ConsistentSnapshot.class);
+	private DBAccess session;
+	private List<DBAccess> workers;
+
+	/**
+	 * @param session			access of the session, which takes part in the snapshot too
+	 * @param workers			accesses with connections of their own
+	 * @throws MainException	if a snapshot transaction cannot be started
+	 */
+	ConsistentSnapshot(DBAccess session, List<DBAccess> workers) throws MainException {
+		this.session = session;
+		this.workers = workers;
+		boolean isLocked = false;
+		try {
+			try {
+				session.execute("FLUSH TABLES WITH READ LOCK");
+				isLocked = true;
+			} catch (SQLException e) {
+				logger.warn("Cannot lock the tables to align the snapshots of the workers : " + e.getMessage());
+			}
+			session.beginSnapshot();
+			for (int i = 0; i < workers.size(); i++) {
+				workers.get(i).beginSnapshot();
+			}
+			logger.info("Consistent snapshot started on " + (workers.size() + 1) + " connections");
+		} catch (SQLException e) {
+			e.printStackTrace();
+			close();
+			throw new MainException("Cannot start a consistent snapshot : " + e.getMessage());
+		} finally {
+			if (isLocked)
+				unlockTables();
+		}
+	}
+
+	public DBAccess getSession() {
+		return session;
+	}
+
+	/**
+	 * Accesses which read the snapshot in parallel with the session
+	 */
+	public List<DBAccess> getWorkers() {
+		return new ArrayList<DBAccess>(workers);
+	}
+
+	/**
+	 * Ends the snapshot of the workers and gives their connections back to the pool.
+	 * The session keeps reading the snapshot until the snapshot is closed.
+	 */
+	public void releaseWorkers() {
+		for (int i = 0; i < workers.size(); i++) {
+			DBAccess worker = workers.get(i);
+			try {
+				worker.endSnapshot();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+			worker.close();
+		}
+		workers.clear();
+	}
+
+	/**
+	 * Ends the snapshot of the session and releases the workers
+	 */
+	public void close() {
+		releaseWorkers();
+		try {
+			session.endSnapshot();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void unlockTables() {
+		try {
+			session.execute("UNLOCK TABLES");
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+}
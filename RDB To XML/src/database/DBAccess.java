@@ -1,10 +1,13 @@
 package database;
 
+import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -13,6 +16,7 @@ import java.util.Map;
 
 import javax.sql.rowset.CachedRowSet;
 import main.MainException;
+import main.TaskRunner;
 import org.apache.log4j.Logger;
 import xml.NodeRelationship;
 import com.sun.rowset.CachedRowSetImpl;
@@ -20,43 +24,79 @@ import com.sun.rowset.CachedRowSetImpl;
 public class DBAccess {
 
 	private Logger logger = Logger.getLogger(DBAccess.class);
-	private static volatile DBAccess singDbAccess = null;
+	private ConnectionPool pool;
 	private Connection dbConnection;
+	private StatementCache statementCache;
+	private Map<String, List<String>> keyColumns;
+	private MetadataCache metadata;
+	private boolean inSnapshot;
 
 	/**
-	 * Constructor that can only be used by DBConnector
+	 * Constructor that can only be used by DBContext
 	 * 
-	 * @param dbConnection   database connection that has been opened by DBConnector
+	 * @param pool			pool of the connections to the database
+	 * @param metadata		metadata of the tables, shared by the accesses of one export
 	 * @throws MainException 
 	 */
-	public DBAccess(Connection dbConnection) throws MainException {
+	DBAccess(ConnectionPool pool, MetadataCache metadata) throws MainException {
 
-		this.dbConnection = dbConnection;
+		this.pool = pool;
+		this.dbConnection = pool.borrow();
+		this.statementCache = new StatementCache(dbConnection);
+		this.keyColumns = new HashMap<String, List<String>>();
+		this.metadata = metadata;
+	}
 
+	/**
+	 * Closes the statements of this access and gives its connection back to the pool
+	 */
+	public void close() {
+		if (dbConnection == null)
+			return;
+		statementCache.close();
 		try {
-			if(this.dbConnection.isClosed()){
-				throw new MainException("The database connection is closed.");
-			}
+			dbConnection.close();
 		} catch (SQLException e) {
 			e.printStackTrace();
-			throw new MainException("Cannot access database connection.");
 		}
+		dbConnection = null;
+	}
 
-		singDbAccess = this;
+	/*
+	 * Runs a statement on the session connection
+	 * */
+	void execute(String sql) throws SQLException {
+		Statement stmt = dbConnection.createStatement();
+		try {
+			stmt.execute(sql);
+		} finally {
+			stmt.close();
+		}
 	}
 
+	/*
+	 * Starts a transaction which reads the snapshot of the database taken when it starts
+	 * */
+	void beginSnapshot() throws SQLException {
+		dbConnection.setAutoCommit(false);
+		execute("SET SESSION TRANSACTION ISOLATION LEVEL REPEATABLE READ");
+		execute("START TRANSACTION WITH CONSISTENT SNAPSHOT");
+		inSnapshot = true;
+	}
 
-	public static DBAccess getInstance() throws MainException {
-		if (singDbAccess == null)
-			throw new MainException("DBAccess instance not initialized");
-		else{
-			return singDbAccess;
-		}
+	/*
+	 * Ends the snapshot transaction. It has only read, so it is committed.
+	 * */
+	void endSnapshot() throws SQLException {
+		if (!inSnapshot)
+			return;
+		inSnapshot = false;
+		dbConnection.commit();
+		dbConnection.setAutoCommit(true);
 	}
 
-	public void removeInstance() {
-		singDbAccess = null;
-		dbConnection = null;
+	public boolean isInSnapshot() {
+		return inSnapshot;
 	}
 
 	public List<String> getTableNames() throws MainException {
@@ -74,25 +114,51 @@ public class DBAccess {
 		}
 	}
 
+	/**
+	 * Reads the metadata of the given tables in batches, so that the metadata calls of each table
+	 * are answered without a round trip to the server
+	 * @param tableNames		tables whose metadata is read
+	 * @throws MainException	if the metadata cannot be read
+	 */
+	public void loadMetadata(List<String> tableNames) throws MainException {
+		loadMetadata(tableNames, null);
+	}
+
+	/**
+	 * Reads the metadata of the given tables in batches, with the batches sent at once over
+	 * connections of the pool
+	 * @param tableNames		tables whose metadata is read
+	 * @param runner			runner of the batches, null to send them one after the other on the session connection
+	 * @throws MainException	if the metadata cannot be read
+	 */
+	public void loadMetadata(List<String> tableNames, TaskRunner runner) throws MainException {
+		keyColumns.clear();
+		// The metadata may be shared with the exports of other contexts on the same schema.
+		// The lock only keeps two of them from loading it at once, the others read the metadata loaded last.
+		synchronized (metadata) {
+			if (metadata.isLoaded(tableNames)) {
+				logger.info("Metadata of " + tableNames.size() + " tables reused");
+			} else if (runner == null || runner.getPermits() < 2) {
+				metadata.load(dbConnection, tableNames);
+			} else {
+				metadata.load(pool, dbConnection, tableNames, runner);
+			}
+		}
+	}
+
 	public List<String> getAllColumns(String tableName) throws MainException {
 		List<String> allCols = new ArrayList<String>();
-		try {
-			ResultSet rs = dbConnection.getMetaData().getColumns(null, null, tableName, null);
-			while(rs.next()) {
-				allCols.add(rs.getString("COLUMN_NAME"));
-			}
-			return allCols;
-		} catch (SQLException e) {
-			e.printStackTrace();
-			throw new MainException("Failed to get all columns for " + tableName);
+		List<MetadataCache.ColumnMetadata> cols = getColumnMetadata(tableName);
+		for(int i=0; i<cols.size(); i++){
+			allCols.add(cols.get(i).getName());
 		}
+		return allCols;
 	}
 
 	public List<ColumnDetail> getDetailsOfColumns(String tableName) throws MainException {
 
 		try {
-			DatabaseMetaData dbMetadata = dbConnection.getMetaData();
-			ResultSet results = dbMetadata.getColumns(null, null, tableName, null);
+			List<MetadataCache.ColumnMetadata> results = getColumnMetadata(tableName);
 
 			List<ColumnDetail> columns = new ArrayList<ColumnDetail>();
 			List<String> uniqueCols    = getUniqueColumns(tableName);
@@ -110,15 +176,13 @@ public class DBAccess {
 			}
 
 			// process the columns of the table
-			while (results.next()) {
-				String colName      = results.getString("COLUMN_NAME");
-				boolean colNullable = results.getInt("NULLABLE") == DatabaseMetaData.columnNullable ? true : false;
+			for (int i = 0; i < results.size(); i++) {
+				MetadataCache.ColumnMetadata result = results.get(i);
+				String colName      = result.getName();
 				boolean colUnique   = uniqueCols.contains(colName);
-				int colSize         = results.getInt("COLUMN_SIZE");
-				int colSQLType      = results.getInt("DATA_TYPE");
-				String colDefault   = results.getString("COLUMN_DEF");
 				Map<String,String> refTableToCol = foreignKeyToRefTableAndCol.get(colName);
-				ColumnDetail column = new ColumnDetail(tableName, colName, refTableToCol, colDefault, colNullable, colUnique, colSize, colSQLType);
+				ColumnDetail column = new ColumnDetail(tableName, colName, refTableToCol, result.getDefaultValue(), result.isNullable(), colUnique, result.getSize(), result.getSqlType());
+				column.setIsUnsigned(result.isUnsigned());
 				columns.add(column);
 			}
 
@@ -130,7 +194,35 @@ public class DBAccess {
 		}
 	}
 
+	/*
+	 * Columns of a table, from the metadata read in batches if it has been read
+	 * */
+	private List<MetadataCache.ColumnMetadata> getColumnMetadata(String tableName) throws MainException {
+		List<MetadataCache.ColumnMetadata> cols = metadata.getColumns(tableName);
+		if (cols != null) {
+			return cols;
+		}
+		cols = new ArrayList<MetadataCache.ColumnMetadata>();
+		try {
+			ResultSet rs = dbConnection.getMetaData().getColumns(null, null, tableName, null);
+			try {
+				while (rs.next()) {
+					cols.add(new MetadataCache.ColumnMetadata(rs));
+				}
+			} finally {
+				rs.close();
+			}
+			return cols;
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw new MainException("Failed to get all columns for " + tableName);
+		}
+	}
 	private List<String> getUniqueColumns(String tableName) throws MainException {
+		List<String> cached = metadata.getUniqueColumns(tableName);
+		if (cached != null) {
+			return cached;
+		}
 		List<String> uniqueCols = new ArrayList<String>();
 		try {
 			ResultSet rs = dbConnection.getMetaData().getIndexInfo(null, null, tableName, true, true);
@@ -145,6 +237,10 @@ public class DBAccess {
 	}
 
 	public List<String> getPrimaryKeys(String tableName) throws MainException {
+		List<String> cached = metadata.getPrimaryKeys(tableName);
+		if (cached != null) {
+			return new ArrayList<String>(cached);
+		}
 		List<String> primaryKeys = new ArrayList<String>();
 		try {
 			ResultSet rs = dbConnection.getMetaData().getPrimaryKeys(null, null, tableName);
@@ -158,7 +254,125 @@ public class DBAccess {
 		}
 	}
 
+	/**
+	 * Estimated number of rows of a table, as kept by the server in information_schema.TABLES
+	 * @param tableName			name of the table
+	 * @return					the estimated number of rows, or -1 if the server does not know it
+	 * @throws MainException	if the statistics cannot be read
+	 */
+	public long getTableRowCount(String tableName) throws MainException {
+		String query = "SELECT TABLE_ROWS FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?";
+		return queryStatistic(query, tableName, null);
+	}
+
+	/**
+	 * Cardinality of the most selective index whose first column is the given column,
+	 * as kept by the server in information_schema.STATISTICS
+	 * @param tableName			name of the table
+	 * @param columnName		first column of the index
+	 * @return					the estimated number of distinct values of the column, or -1 if it is not indexed
+	 * @throws MainException	if the statistics cannot be read
+	 */
+	public long getIndexCardinality(String tableName, String columnName) throws MainException {
+		String query = "SELECT MAX(CARDINALITY) FROM information_schema.STATISTICS WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND SEQ_IN_INDEX = 1 AND COLUMN_NAME = ?";
+		return queryStatistic(query, tableName, columnName);
+	}
+
+	private long queryStatistic(String query, String tableName, String columnName) throws MainException {
+		try {
+			PreparedStatement stmt = statementCache.prepare(query);
+			stmt.setString(1, tableName);
+			if (columnName != null) {
+				stmt.setString(2, columnName);
+			}
+			ResultSet rs = stmt.executeQuery();
+			try {
+				if (!rs.next()) {
+					return -1;
+				}
+				long value = rs.getLong(1);
+				return rs.wasNull() ? -1 : value;
+			} finally {
+				rs.close();
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw new MainException("Failed to get the statistics of " + tableName + " : " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Values of a column which split the rows of a table into ranges of about the same size.
+	 * The range of an integer column is split evenly between its minimum and maximum, the values
+	 * of other columns are sampled from the index at regular offsets.
+	 * @param tableName			name of the table
+	 * @param columnName		column to split, which should be the first column of an index
+	 * @param rangeCount		number of ranges wanted
+	 * @return					increasing values at which a range starts, fewer if the column has few values
+	 * @throws MainException	if the values cannot be read
+	 */
+	public List<Object> getRangeBounds(String tableName, String columnName, int rangeCount) throws MainException {
+		List<Object> bounds = new ArrayList<Object>();
+		String query = null;
+		try {
+			if (isIntegerColumn(tableName, columnName)) {
+				query = "SELECT MIN(" + columnName + "), MAX(" + columnName + ") FROM " + tableName;
+				ResultSet rs = executeQuery(query);
+				try {
+					if (!rs.next() || rs.getBigDecimal(1) == null)
+						return bounds;
+					BigDecimal min = rs.getBigDecimal(1);
+					BigDecimal width = rs.getBigDecimal(2).subtract(min);
+					for (int i = 1; i < rangeCount; i++) {
+						BigDecimal bound = min.add(width.multiply(BigDecimal.valueOf(i)).divideToIntegralValue(BigDecimal.valueOf(rangeCount)));
+						if (bound.compareTo(min) > 0 && (bounds.isEmpty() || bound.compareTo((BigDecimal) bounds.get(bounds.size() - 1)) > 0))
+							bounds.add(bound);
+					}
+				} finally {
+					rs.close();
+				}
+			} else {
+				long rowCount = getTableRowCount(tableName);
+				query = "SELECT " + columnName + " FROM " + tableName + " WHERE " + columnName + " IS NOT NULL ORDER BY " + columnName + " LIMIT 1 OFFSET ?";
+				PreparedStatement stmt = statementCache.prepare(query);
+				for (int i = 1; i < rangeCount; i++) {
+					stmt.setLong(1, rowCount * i / rangeCount);
+					ResultSet rs = stmt.executeQuery();
+					try {
+						if (!rs.next())
+							break;
+						Object bound = rs.getObject(1);
+						if (bounds.isEmpty() || !bound.equals(bounds.get(bounds.size() - 1)))
+							bounds.add(bound);
+					} finally {
+						rs.close();
+					}
+				}
+			}
+			logger.info("Range bounds of " + tableName + "." + columnName + " : " + bounds);
+			return bounds;
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw new MainException("Exception when executing the query : " + query + "\nException message : " +e.getMessage());
+		}
+	}
+
+	private boolean isIntegerColumn(String tableName, String columnName) throws MainException {
+		List<MetadataCache.ColumnMetadata> cols = getColumnMetadata(tableName);
+		for (int i = 0; i < cols.size(); i++) {
+			if (cols.get(i).getName().equals(columnName)) {
+				int type = cols.get(i).getSqlType();
+				return type == Types.TINYINT || type == Types.SMALLINT || type == Types.INTEGER || type == Types.BIGINT;
+			}
+		}
+		return false;
+	}
+
 	public boolean isBeingReferenced(String tableName) throws MainException {
+		Boolean cached = metadata.isReferenced(tableName);
+		if (cached != null) {
+			return cached;
+		}
 		CachedRowSet crs;
 		try {
 			crs = new CachedRowSetImpl();
@@ -175,6 +389,10 @@ public class DBAccess {
 	}
 
 	public CachedRowSet getForeignKeys(String tableName) throws MainException {
+		CachedRowSet cached = metadata.getForeignKeys(tableName);
+		if (cached != null) {
+			return cached;
+		}
 		CachedRowSet crs;
 		try {
 			crs = new CachedRowSetImpl();
@@ -192,9 +410,7 @@ public class DBAccess {
 		CachedRowSet crs;
 		List<String> FKNames = new ArrayList<String>();
 		try {
-			crs = new CachedRowSetImpl();
-			ResultSet rs = dbConnection.getMetaData().getImportedKeys(dbConnection.getCatalog(), null, tableName);
-			crs.populate(rs);
+			crs = getForeignKeys(tableName);
 			while(crs.next()){
 				FKNames.add(crs.getString("FKCOLUMN_NAME"));
 			}
@@ -206,11 +422,12 @@ public class DBAccess {
 	}
 
 	public ResultSet joinTables(Map<String, List<String>> selectClause, List<List<String>> fromTables, List<NodeRelationship> whereClause, Map<String,List<String>> orderBy, List<String> nodeTables) throws MainException {
-		String query = "", fromClause = "";
+		StringBuilder query = new StringBuilder();
+		StringBuilder fromClause = new StringBuilder();
 
 		// Process SELECT and FROM clause at the same time
-		query += "SELECT ";
-		fromClause += " FROM ";
+		query.append("SELECT ");
+		fromClause.append(" FROM ");
 		Iterator<List<String>>listItr = fromTables.iterator();
 		while (listItr.hasNext()) {
 			List<String> table       = listItr.next();
@@ -223,49 +440,49 @@ public class DBAccess {
 			boolean isSameName = (originalTableName.equals(tableName));
 			while (columnsItr.hasNext()) {
 				String column = columnsItr.next();
-				query += tableName + "." + column;
+				query.append(tableName).append(".").append(column);
 				// if table name is different from original table name
 				if (!isSameName)
-					query += " AS " + tableName + column + " ";
+					query.append(" AS ").append(tableName).append(column).append(" ");
 				if (columnsItr.hasNext())
-					query += ",";
+					query.append(",");
 			}
 
 			// Add columns into FROM clause
 			if (isSameName)
-				fromClause += tableName;
+				fromClause.append(tableName);
 			else
-				fromClause += originalTableName + " AS " + tableName;
+				fromClause.append(originalTableName).append(" AS ").append(tableName);
 
 			// if it is not the last table
 			if (listItr.hasNext()) {
-				query += ",";
-				fromClause += ",";
+				query.append(",");
+				fromClause.append(",");
 			}
 		}
-		query += fromClause;
+		query.append(fromClause);
 
 		// process where clause
-		query += " WHERE ";
+		query.append(" WHERE ");
 		Iterator<NodeRelationship> nrItr = whereClause.iterator();
 		while (nrItr.hasNext()) {
 			NodeRelationship nodeRel = nrItr.next();
 			List<String> cols1 = nodeRel.getCols1();
 			List<String> cols2 = nodeRel.getCols2();
 			for(int i=0; i<cols1.size(); i++){
-				query += nodeRel.getTable1() + "." + cols1.get(i) + "=" + nodeRel.getTable2() + "." + cols2.get(i);
+				query.append(nodeRel.getTable1()).append(".").append(cols1.get(i)).append("=").append(nodeRel.getTable2()).append(".").append(cols2.get(i));
 				if(i!=cols1.size()-1){
-					query += " AND ";
+					query.append(" AND ");
 				}
 			}
 
 			// if it is not the last where clause
 			if (nrItr.hasNext())
-				query += " AND ";
+				query.append(" AND ");
 		}
 
 		// process order by clause
-		query += " ORDER BY ";
+		query.append(" ORDER BY ");
 		Iterator<String> stringItr = nodeTables.iterator();
 		while (stringItr.hasNext()) {
 			String table = stringItr.next();
@@ -273,66 +490,293 @@ public class DBAccess {
 			Iterator<String> colItr = columnsToOrder.iterator();
 			while (colItr.hasNext()) {
 				String column = colItr.next();
-				query += table + "." + column;
+				query.append(table).append(".").append(column);
 				// if it is not the last column of the last table to order by
 				if (colItr.hasNext() || stringItr.hasNext())
-					query += ",";
-				else
-					query += ";";
+					query.append(",");
 			}
 		}
 
 		logger.info("Query to execute : " + query);
-		return executeQuery(query);
+		return executeQuery(query.toString());
+	}
 
+	/**
+	 * Joins the given tables into memory
+	 * @param fromTables		tables to join
+	 * @param whereClause		join conditions
+	 * @param selectClause		columns to select of each table, null to select all of them
+	 * @return					the joined rows
+	 * @throws MainException	if the query fails
+	 */
+	public CachedRowSet joinTables(List<String> fromTables, List<NodeRelationship> whereClause, Map<String,List<String>> selectClause) throws MainException {
+
+		String query = buildJoinQuery(fromTables, whereClause, selectClause);
+		logger.info("Query to execute : " + query);
+		try{
+			CachedRowSet crs = new CachedRowSetImpl();
+			ResultSet results = executeQuery(query);
+			try{
+				crs.populate(results);
+			}finally{
+				results.close();
+			}
+			return crs;
+		}catch(SQLException ex){
+			throw new MainException(""+ex.getMessage());
+		}
 	}
 
-	public CachedRowSet joinTables(List<String> fromTables, List<NodeRelationship> whereClause, Map<String,List<String>> orderBy) throws MainException {
+	/**
+	 * Streams the join of the given tables over the session connection.
+	 * No other query can run on the session connection until the stream is closed.
+	 * @param fromTables		tables to join
+	 * @param whereClause		join conditions
+	 * @param selectClause		columns to select of each table, null to select all of them
+	 * @return					forward-only stream of the joined rows
+	 * @throws MainException	if the query fails
+	 */
+	public DataStream streamJoin(List<String> fromTables, List<NodeRelationship> whereClause, Map<String,List<String>> selectClause) throws MainException {
+		String query = buildJoinQuery(fromTables, whereClause, selectClause);
+		logger.info("Query to stream : " + query);
+		return streamQuery(dbConnection, query, false);
+	}
 
-		String query = "";
+	/**
+	 * Streams the join of the given tables ordered by the key of one of them, over a dedicated connection.
+	 * @param fromTables		tables to join
+	 * @param whereClause		join conditions
+	 * @param selectClause		columns to select of each table, null to select all of them
+	 * @param orderTable		table whose columns order the rows
+	 * @param orderCols			columns of 'orderTable' to order the rows by
+	 * @return					forward-only stream of the joined rows
+	 * @throws MainException	if the query fails
+	 */
+	public DataStream streamJoin(List<String> fromTables, List<NodeRelationship> whereClause, Map<String,List<String>> selectClause, String orderTable, List<String> orderCols) throws MainException {
+		List<String> orderTables = new ArrayList<String>();
+		orderTables.add(orderTable);
+		List<List<String>> orderColsOfTables = new ArrayList<List<String>>();
+		orderColsOfTables.add(orderCols);
+		return streamJoin(fromTables, whereClause, selectClause, orderTables, orderColsOfTables);
+	}
 
-		// Process SELECT and FROM clause at the same time
-		query += "SELECT DISTINCT * FROM " + fromTables.get(0);
+	/**
+	 * Streams the join of the given tables ordered by the columns of several tables
+	 * @param fromTables		tables to join
+	 * @param whereClause		join conditions
+	 * @param selectClause		columns to select of each table, null to select all of them
+	 * @param orderTables		tables of the ORDER BY, in order
+	 * @param orderCols			columns of the ORDER BY of each table
+	 * @return					the joined rows, read from a dedicated connection
+	 * @throws MainException	if the query fails
+	 */
+	public DataStream streamJoin(List<String> fromTables, List<NodeRelationship> whereClause, Map<String,List<String>> selectClause, List<String> orderTables, List<List<String>> orderCols) throws MainException {
+		StringBuilder query = new StringBuilder(buildJoinQuery(fromTables, whereClause, selectClause));
+		String separator = " ORDER BY ";
+		for(int i=0; i<orderTables.size(); i++){
+			List<String> cols = orderCols.get(i);
+			for(int j=0; j<cols.size(); j++){
+				query.append(separator).append(orderTables.get(i)).append(".").append(cols.get(j));
+				separator = ", ";
+			}
+		}
+		logger.info("Query to stream : " + query);
+		return openStream(query.toString());
+	}
+
+	/**
+	 * Joins the given tables for the tuples of one table with the given keys only,
+	 * i.e. with <code>(k1, k2) IN ((?, ?), ...)</code> added to the join conditions.
+	 * @param fromTables		tables to join
+	 * @param whereClause		join conditions
+	 * @param selectClause		columns to select of each table, null to select all of them
+	 * @param keyTable			table whose keys select the rows
+	 * @param keyCols			key columns of 'keyTable'
+	 * @param keyVals			key values of the selected tuples, in the order of the key columns
+	 * @return					the joined rows
+	 * @throws MainException	if the query fails
+	 */
+	public DataStream joinTablesForKeys(List<String> fromTables, List<NodeRelationship> whereClause, Map<String,List<String>> selectClause, String keyTable, List<String> keyCols, List<List<String>> keyVals) throws MainException {
+		String query = buildJoinQuery(fromTables, whereClause, selectClause) + " AND " + buildKeyListCondition(keyTable, keyCols, keyVals.size());
+		logger.debug("Query to execute : " + query + " (" + keyVals.size() + " keys)");
+		try {
+			PreparedStatement stmt = statementCache.prepare(query);
+			int param = 1;
+			for(int i=0; i<keyVals.size(); i++){
+				List<String> vals = keyVals.get(i);
+				for(int j=0; j<vals.size(); j++){
+					stmt.setString(param++, vals.get(j));
+				}
+			}
+			// The statement stays in the cache, only the result set is closed with the stream
+			return new DataStream(stmt.executeQuery());
+		} catch(SQLException e){
+			e.printStackTrace();
+			throw new MainException("Exception when executing the query : " + query + "\nException message : " +e.getMessage());
+		}
+	}
+
+	private String buildKeyListCondition(String keyTable, List<String> keyCols, int keyCount) {
+		StringBuilder condition = new StringBuilder();
+		String tuple;
+		if(keyCols.size()==1){
+			condition.append(keyTable).append(".").append(keyCols.get(0));
+			tuple = "?";
+		}else{
+			condition.append("(");
+			StringBuilder params = new StringBuilder("(");
+			for(int i=0; i<keyCols.size(); i++){
+				if(i>0){
+					condition.append(", ");
+					params.append(", ");
+				}
+				condition.append(keyTable).append(".").append(keyCols.get(i));
+				params.append("?");
+			}
+			condition.append(")");
+			tuple = params.append(")").toString();
+		}
+		condition.append(" IN (");
+		for(int i=0; i<keyCount; i++){
+			if(i>0){
+				condition.append(", ");
+			}
+			condition.append(tuple);
+		}
+		return condition.append(")").toString();
+	}
+
+	/*
+	 * Selects the given columns only. DISTINCT is left out if the selected columns hold the primary key
+	 * of every joined table, since the rows are then unique already.
+	 * */
+	private String buildJoinQuery(List<String> fromTables, List<NodeRelationship> whereClause, Map<String,List<String>> selectClause) throws MainException {
+		if(selectClause == null){
+			return "SELECT DISTINCT *" + buildJoinFrom(fromTables, whereClause);
+		}
+		StringBuilder query = new StringBuilder("SELECT ");
+		if(!isKeyOfJoin(fromTables, whereClause, selectClause)){
+			query.append("DISTINCT ");
+		}
+		String separator = "";
+		for(Map.Entry<String, List<String>> entry : selectClause.entrySet()){
+			List<String> cols = entry.getValue();
+			for(int i=0; i<cols.size(); i++){
+				query.append(separator).append(entry.getKey()).append(".").append(cols.get(i));
+				separator = ", ";
+			}
+		}
+		return query.append(buildJoinFrom(fromTables, whereClause)).toString();
+	}
+
+	/*
+	 * Whether the selected columns hold the primary key of each joined table. A key column which is not
+	 * selected is held as well if a join condition makes it equal to a selected column.
+	 * */
+	private boolean isKeyOfJoin(List<String> fromTables, List<NodeRelationship> whereClause, Map<String,List<String>> selectClause) throws MainException {
+		for(int i=0; i<fromTables.size(); i++){
+			String tableName = fromTables.get(i);
+			List<String> pks = getKeyColumns(tableName);
+			if(pks.isEmpty()){
+				return false;
+			}
+			for(int j=0; j<pks.size(); j++){
+				if(!isSelected(tableName, pks.get(j), whereClause, selectClause)){
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private boolean isSelected(String tableName, String colName, List<NodeRelationship> whereClause, Map<String,List<String>> selectClause) {
+		List<String> selected = selectClause.get(tableName);
+		if(selected != null && selected.contains(colName)){
+			return true;
+		}
+		for(int i=0; i<whereClause.size(); i++){
+			NodeRelationship nodeRel = whereClause.get(i);
+			int index1 = nodeRel.getCols1().indexOf(colName);
+			if(nodeRel.getOriginalTable1().equals(tableName) && index1 >= 0){
+				List<String> selected2 = selectClause.get(nodeRel.getOriginalTable2());
+				if(selected2 != null && selected2.contains(nodeRel.getCols2().get(index1))){
+					return true;
+				}
+			}
+			int index2 = nodeRel.getCols2().indexOf(colName);
+			if(nodeRel.getOriginalTable2().equals(tableName) && index2 >= 0){
+				List<String> selected1 = selectClause.get(nodeRel.getOriginalTable1());
+				if(selected1 != null && selected1.contains(nodeRel.getCols1().get(index2))){
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Primary key of a table, read once for all the queries that are built
+	 * */
+	private List<String> getKeyColumns(String tableName) throws MainException {
+		List<String> pks = keyColumns.get(tableName);
+		if(pks == null){
+			pks = getPrimaryKeys(tableName);
+			keyColumns.put(tableName, pks);
+		}
+		return pks;
+	}
+
+	/*
+	 * Whether the rows of the given columns are unique without DISTINCT, i.e. all the columns belong
+	 * to the table and hold its primary key
+	 * */
+	private boolean isKeyOfTable(String tableName, List<String> tables, List<String> colNames) throws MainException {
+		if(tables.size() != 1 || !tables.get(0).equals(tableName)){
+			return false;
+		}
+		List<String> pks = getKeyColumns(tableName);
+		return !pks.isEmpty() && colNames.containsAll(pks);
+	}
+
+	/*
+	 * FROM and WHERE clauses of the join of the given tables
+	 * */
+	private String buildJoinFrom(List<String> fromTables, List<NodeRelationship> whereClause) {
+		StringBuilder query = new StringBuilder();
+
+		query.append(" FROM ").append(fromTables.get(0));
 		for(int i=1; i<fromTables.size(); i++){
-			query += ", " + fromTables.get(i);
+			query.append(", ").append(fromTables.get(i));
 		}
 
 		// process where clause
-		query += " WHERE ";
+		query.append(" WHERE ");
 		Iterator<NodeRelationship> nrItr = whereClause.iterator();
 		while (nrItr.hasNext()) {
 			NodeRelationship nodeRel = nrItr.next();
 			List<String> cols1 = nodeRel.getCols1();
 			List<String> cols2 = nodeRel.getCols2();
 			for(int i=0; i<cols1.size(); i++){
-				query += nodeRel.getOriginalTable1() + "." + cols1.get(i) + "=" + nodeRel.getOriginalTable2() + "." + cols2.get(i);
+				query.append(nodeRel.getOriginalTable1()).append(".").append(cols1.get(i)).append("=").append(nodeRel.getOriginalTable2()).append(".").append(cols2.get(i));
 				if(i!=cols1.size()-1){
-					query += " AND ";
+					query.append(" AND ");
 				}
 			}
 
 			// if it is not the last where clause
 			if (nrItr.hasNext())
-				query += " AND ";
-		}
-
-		logger.info("Query to execute : " + query);
-		try{
-			CachedRowSet crs = new CachedRowSetImpl();
-			ResultSet results = executeQuery(query);
-			crs.populate(results);
-			return crs;
-		}catch(SQLException ex){
-			throw new MainException(""+ex.getMessage());
+				query.append(" AND ");
 		}
+		return query.toString();
 	}
 
+	/*
+	 * Runs a query with its cached statement. The result set is closed when the same query is run again.
+	 * */
 	private ResultSet executeQuery(String query) throws MainException {
 
 		try {
-			Statement stmt = dbConnection.createStatement();
-			ResultSet results = stmt.executeQuery(query);
-			return results;
+			return statementCache.prepare(query).executeQuery();
 
 		} catch(SQLException e){
 			e.printStackTrace();
@@ -342,71 +786,97 @@ public class DBAccess {
 
 	}
 
-	public CachedRowSet getData(String tableName, List<ColumnDetail> cols, List<ColumnDetail> orderByCols) throws MainException {
-		try{
-			Statement stmt = null;
-			ResultSet results = null;
+	/**
+	 * Whether a stream can be opened without waiting for a connection of the pool.
+	 * The streams of a snapshot are read on the session connection, so they never wait.
+	 * @return	true if a stream can be opened at once
+	 */
+	public boolean canOpenStream() {
+		return inSnapshot || pool.getFreeCount() > 0;
+	}
+
+	/*
+	 * Streams a query from a dedicated connection. A dedicated connection would not read the snapshot
+	 * of this access, so in a snapshot the rows are read into memory from the session connection instead.
+	 * The generator neither streams, merges nor uses outer unions while a snapshot is open, so this only
+	 * happens for a caller which streams in a snapshot of its own.
+	 * */
+	private DataStream openStream(String query) throws MainException {
+		if (!inSnapshot)
+			return streamQuery(pool.borrow(), query, true);
+		try {
 			CachedRowSet crs = new CachedRowSetImpl();
-			
-			List<String> tables = new ArrayList<String>();
-			//Print select clause
-			String query = "SELECT DISTINCT ";
-			Iterator<ColumnDetail> colsItr = cols.iterator();
-			while(colsItr.hasNext()){
-				ColumnDetail col = colsItr.next();
-				String colTable = col.getTableName();
-				if(!tables.contains(colTable)){
-					tables.add(colTable);
-				}
-				String colName = col.getName();
-				query += colTable +"." + colName;
-				if(colsItr.hasNext()) query+=", ";
-			}
-			query += " FROM ";
-			Iterator<String> tablesItr = tables.iterator();
-			while(tablesItr.hasNext()){
-				String tName = tablesItr.next();
-				query += tName;
-				if(tablesItr.hasNext()) query+=", ";
-			}
-			
-			boolean isFirst = true;
-			if(tables.size()>1){
-				query += " WHERE ";
-				
-				List<String> pks = this.getPrimaryKeys(tableName);
-				for(int i=0; i<pks.size(); i++){
-					String pkCol = pks.get(i);
-					for(int j=0; j<tables.size(); j++){
-						String tName = tables.get(j);
-						if(!tName.equals(tableName)){
-							if(isFirst){
-								query += tableName +"."+pkCol+"="+tName+"."+pkCol;
-							}else{
-								query += ", "+ tableName +"."+pkCol+"="+tName+"."+pkCol;
-							}
-						}
-					}
-				}
+			ResultSet results = executeQuery(query);
+			try {
+				crs.populate(results);
+			} finally {
+				results.close();
 			}
-			query += " ORDER BY ";
-			int n = orderByCols.size();
-			for(int i=0; i<n; i++){
-				ColumnDetail col = orderByCols.get(i);
-				String tName = col.getTableName();
-				String colName = col.getName();
-				query += tName +"."+colName;
-				if(i<n-1){
-					query+=", ";
-				}
+			return new DataStream(crs);
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw new MainException("Exception when reading the query : " + query + "\nException message : " +e.getMessage());
+		}
+	}
 
+	/**
+	 * Runs a query with a forward-only, read-only statement whose rows are streamed
+	 * by the MySQL driver one at a time instead of being read into memory.
+	 * @param connection		connection to run the query on
+	 * @param query				the query
+	 * @param ownsConnection	if the connection should be closed with the stream
+	 * @return					the stream of rows
+	 * @throws MainException	if the query fails
+	 */
+	private DataStream streamQuery(Connection connection, String query, boolean ownsConnection) throws MainException {
+		try {
+			Statement stmt = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			stmt.setFetchSize(Integer.MIN_VALUE);
+			ResultSet results = stmt.executeQuery(query);
+			return new DataStream(results, stmt, ownsConnection ? connection : null);
+
+		} catch(SQLException e){
+			e.printStackTrace();
+			if (ownsConnection) {
+				try {
+					connection.close();
+				} catch (SQLException closeEx) {
+					closeEx.printStackTrace();
+				}
 			}
-			query += ";";
+			throw new MainException("Exception when streaming the query : " + query + "\nException message : " +e.getMessage());
+		}
+	}
+
+	public CachedRowSet getData(String tableName, List<ColumnDetail> cols, List<ColumnDetail> orderByCols) throws MainException {
+		return getData(tableName, cols, orderByCols, null);
+	}
+
+	/**
+	 * Reads the data of a table whose first ORDER BY column is in the given range
+	 * @param tableName			name of the table
+	 * @param cols				columns to select
+	 * @param orderByCols		columns to order the rows by
+	 * @param range				range of the first ORDER BY column, null for all the rows
+	 * @return					the rows of the range
+	 * @throws MainException	if the query fails
+	 */
+	public CachedRowSet getData(String tableName, List<ColumnDetail> cols, List<ColumnDetail> orderByCols, KeyRange range) throws MainException {
+		try{
+			CachedRowSet crs = new CachedRowSetImpl();
+
+			String query = buildDataQuery(tableName, cols, orderByCols, range);
 			logger.info("Get data query: " +query);
-			stmt = dbConnection.createStatement();
-			results = stmt.executeQuery(query);
-			crs.populate(results);
-			stmt.close();
+			PreparedStatement stmt = statementCache.prepare(query);
+			if(range != null){
+				range.bind(stmt, 1);
+			}
+			ResultSet results = stmt.executeQuery();
+			try{
+				crs.populate(results);
+			}finally{
+				results.close();
+			}
 			return crs;
 			//return results;
 		}catch(SQLException ex){
@@ -419,29 +889,269 @@ public class DBAccess {
 		}
 	}
 
+	/**
+	 * Streams the data of a table over a connection of its own, so that the
+	 * session connection stays free for the queries issued while the rows are read.
+	 * @param tableName			name of the table
+	 * @param cols				columns to select
+	 * @param orderByCols		columns to order the rows by
+	 * @return					forward-only stream of the rows
+	 * @throws MainException	if the query fails
+	 */
+	public DataStream streamData(String tableName, List<ColumnDetail> cols, List<ColumnDetail> orderByCols) throws MainException {
+		String query = buildDataQuery(tableName, cols, orderByCols);
+		logger.info("Stream data query: " +query);
+		return openStream(query);
+	}
+
+	private String buildDataQuery(String tableName, List<ColumnDetail> cols, List<ColumnDetail> orderByCols) throws MainException {
+		return buildDataQuery(tableName, cols, orderByCols, null);
+	}
+
+	private String buildDataQuery(String tableName, List<ColumnDetail> cols, List<ColumnDetail> orderByCols, KeyRange range) throws MainException {
+		//Print select clause
+		StringBuilder query = new StringBuilder("SELECT ");
+		if(!isKeyOfTable(tableName, getTablesOfColumns(cols), getNamesOfColumns(cols))){
+			query.append("DISTINCT ");
+		}
+		Iterator<ColumnDetail> colsItr = cols.iterator();
+		while(colsItr.hasNext()){
+			ColumnDetail col = colsItr.next();
+			query.append(col.getTableName()).append(".").append(col.getName());
+			if(colsItr.hasNext()) query.append(", ");
+		}
+		query.append(buildDataFrom(tableName, cols, range));
+		query.append(" ORDER BY ");
+		int n = orderByCols.size();
+		for(int i=0; i<n; i++){
+			ColumnDetail col = orderByCols.get(i);
+			query.append(col.getTableName()).append(".").append(col.getName());
+			if(i<n-1){
+				query.append(", ");
+			}
+
+		}
+		return query.toString();
+	}
+
+	/*
+	 * FROM and WHERE clauses of the data of a table whose columns may come from several tables.
+	 * The tables are joined on the primary key of the table, and the rows are limited to 'range' if not null.
+	 * */
+	private String buildDataFrom(String tableName, List<ColumnDetail> cols, KeyRange range) throws MainException {
+		List<String> tables = getTablesOfColumns(cols);
+		StringBuilder query = new StringBuilder(" FROM ");
+		Iterator<String> tablesItr = tables.iterator();
+		while(tablesItr.hasNext()){
+			query.append(tablesItr.next());
+			if(tablesItr.hasNext()) query.append(", ");
+		}
+
+		List<String> conditions = new ArrayList<String>();
+		if(tables.size()>1){
+			List<String> pks = this.getPrimaryKeys(tableName);
+			for(int i=0; i<pks.size(); i++){
+				String pkCol = pks.get(i);
+				for(int j=0; j<tables.size(); j++){
+					String tName = tables.get(j);
+					if(!tName.equals(tableName)){
+						conditions.add(tableName + "." + pkCol + "=" + tName + "." + pkCol);
+					}
+				}
+			}
+		}
+		if(range != null){
+			conditions.add(range.toCondition());
+		}
+		for(int i=0; i<conditions.size(); i++){
+			query.append(i == 0 ? " WHERE " : " AND ").append(conditions.get(i));
+		}
+		return query.toString();
+	}
+
+	private List<String> getTablesOfColumns(List<ColumnDetail> cols) {
+		List<String> tables = new ArrayList<String>();
+		for(int i=0; i<cols.size(); i++){
+			String colTable = cols.get(i).getTableName();
+			if(!tables.contains(colTable)){
+				tables.add(colTable);
+			}
+		}
+		return tables;
+	}
+
+	private List<String> getNamesOfColumns(List<ColumnDetail> cols) {
+		List<String> names = new ArrayList<String>();
+		for(int i=0; i<cols.size(); i++){
+			names.add(cols.get(i).getName());
+		}
+		return names;
+	}
+
+	/**
+	 * Streams the rows of an outer union over a dedicated connection
+	 * @param union				the branches of the union
+	 * @return					forward-only stream of the rows, in the order of the union
+	 * @throws MainException	if the query fails
+	 */
+	public DataStream streamOuterUnion(OuterUnionQuery union) throws MainException {
+		String query = buildOuterUnionQuery(union);
+		logger.info("Outer union query to stream : " + query);
+		return openStream(query);
+	}
+
+	private String buildOuterUnionQuery(OuterUnionQuery union) throws MainException {
+		StringBuilder query = new StringBuilder();
+		List<OuterUnionQuery.Branch> branches = union.getBranches();
+		for(int i=0; i<branches.size(); i++){
+			OuterUnionQuery.Branch branch = branches.get(i);
+			if(i>0){
+				query.append(" UNION ALL ");
+			}
+			query.append(isUniqueBranch(branch) ? "(SELECT " : "(SELECT DISTINCT ").append(branch.getNodeSeq()).append(" AS ").append(OuterUnionQuery.NODE_SEQ);
+			query.append(", ").append(branch.getBranchSeq()).append(" AS ").append(OuterUnionQuery.BRANCH_SEQ);
+			appendSortSlots(query, "k", branch.getKeyCols(), union.getKeySlotCount());
+			appendSortSlots(query, "s", branch.getSortCols(), union.getSortSlotCount());
+			for(int j=0; j<union.getValueSlotCount(); j++){
+				query.append(", ");
+				if(j<branch.getValueCols().size()){
+					ColumnDetail col = branch.getValueCols().get(j);
+					query.append("CAST(").append(col.getTableName()).append(".").append(col.getName()).append(" AS CHAR)");
+				}else{
+					query.append("NULL");
+				}
+				query.append(" AS ").append(OuterUnionQuery.valueSlot(j));
+			}
+			if(branch.isEntity()){
+				query.append(buildDataFrom(branch.getTableName(), branch.getFromCols(), null));
+			}else{
+				query.append(buildJoinFrom(branch.getFromTables(), branch.getJoins()));
+			}
+			query.append(")");
+		}
+
+		query.append(" ORDER BY ").append(OuterUnionQuery.NODE_SEQ);
+		for(int i=0; i<union.getKeySlotCount(); i++){
+			query.append(", k").append(i).append("_n, k").append(i).append("_s");
+		}
+		query.append(", ").append(OuterUnionQuery.BRANCH_SEQ);
+		for(int i=0; i<union.getSortSlotCount(); i++){
+			query.append(", s").append(i).append("_n, s").append(i).append("_s");
+		}
+		return query.toString();
+	}
+
+	/*
+	 * Whether the rows of a branch of an outer union are unique without DISTINCT
+	 * */
+	private boolean isUniqueBranch(OuterUnionQuery.Branch branch) throws MainException {
+		if(branch.isEntity()){
+			return isKeyOfTable(branch.getTableName(), getTablesOfColumns(branch.getFromCols()), getNamesOfColumns(branch.getKeyCols()));
+		}
+		Map<String, List<String>> selectClause = new HashMap<String, List<String>>();
+		List<ColumnDetail> selectCols = new ArrayList<ColumnDetail>(branch.getKeyCols());
+		selectCols.addAll(branch.getValueCols());
+		for(int i=0; i<selectCols.size(); i++){
+			ColumnDetail col = selectCols.get(i);
+			List<String> cols = selectClause.get(col.getTableName());
+			if(cols == null){
+				cols = new ArrayList<String>();
+				selectClause.put(col.getTableName(), cols);
+			}
+			cols.add(col.getName());
+		}
+		return isKeyOfJoin(branch.getFromTables(), branch.getJoins(), selectClause);
+	}
+
+	/*
+	 * Each sort slot has a numeric and a character column, so that numbers are not sorted as strings
+	 * when the slot holds columns of different types in different branches
+	 * */
+	private void appendSortSlots(StringBuilder query, String prefix, List<ColumnDetail> cols, int slotCount) {
+		for(int i=0; i<slotCount; i++){
+			String numeric = "NULL";
+			String chars = "NULL";
+			if(i<cols.size()){
+				ColumnDetail col = cols.get(i);
+				String colName = col.getTableName() + "." + col.getName();
+				if(OuterUnionQuery.isNumeric(col.getSqlType())){
+					numeric = colName;
+				}else{
+					chars = "CAST(" + colName + " AS CHAR)";
+				}
+			}
+			query.append(", ").append(numeric).append(" AS ").append(prefix).append(i).append("_n");
+			query.append(", ").append(chars).append(" AS ").append(prefix).append(i).append("_s");
+		}
+	}
+
 	public CachedRowSet getSelectedData(String tableName, List<String> cols) throws MainException{
+		return getSelectedData(tableName, cols, null);
+	}
+
+	/**
+	 * Reads the given columns of the rows of a table whose first column is in the given range
+	 * @param tableName			name of the table
+	 * @param cols				columns to select and order by
+	 * @param range				range of the first column, null for all the rows
+	 * @return					the rows of the range
+	 * @throws MainException	if the query fails
+	 */
+	public CachedRowSet getSelectedData(String tableName, List<String> cols, KeyRange range) throws MainException{
 		try{
 			CachedRowSet crs = new CachedRowSetImpl();
 
-			String query = "SELECT DISTINCT " + cols.get(0);
-			for(int i=1; i<cols.size(); i++){
-				query += ", "+cols.get(i);
+			String query = buildSelectedDataQuery(tableName, cols, range);
+			PreparedStatement stmt = statementCache.prepare(query);
+			if(range != null){
+				range.bind(stmt, 1);
 			}
-			query += " FROM " +tableName;
-
-			query += " ORDER BY "+cols.get(0);
-			for(int i=1; i<cols.size(); i++){
-				query += ", " + cols.get(i);
+			ResultSet results = stmt.executeQuery();
+			try{
+				crs.populate(results);
+			}finally{
+				results.close();
 			}
-			query += ";";
-			Statement stmt = dbConnection.createStatement();
-			ResultSet results = stmt.executeQuery(query);
-			crs.populate(results);
-			stmt.close();
 			return crs;
 			//return results;
 		}catch(SQLException ex){
 			throw new MainException("Exception when retrieving primary keys data from table " + tableName + " : " + ex.getMessage());
 		}
 	}
+
+	/**
+	 * Streams the given columns of a table over the session connection.
+	 * No other query can run on the session connection until the stream is closed.
+	 * @param tableName			name of the table
+	 * @param cols				columns to select and order by
+	 * @return					forward-only stream of the rows
+	 * @throws MainException	if the query fails
+	 */
+	public DataStream streamSelectedData(String tableName, List<String> cols) throws MainException {
+		String query = buildSelectedDataQuery(tableName, cols);
+		return streamQuery(dbConnection, query, false);
+	}
+
+	private String buildSelectedDataQuery(String tableName, List<String> cols) throws MainException {
+		return buildSelectedDataQuery(tableName, cols, null);
+	}
+
+	private String buildSelectedDataQuery(String tableName, List<String> cols, KeyRange range) throws MainException {
+		List<String> tables = new ArrayList<String>();
+		tables.add(tableName);
+		StringBuilder query = new StringBuilder(isKeyOfTable(tableName, tables, cols) ? "SELECT " : "SELECT DISTINCT ").append(cols.get(0));
+		for(int i=1; i<cols.size(); i++){
+			query.append(", ").append(cols.get(i));
+		}
+		query.append(" FROM ").append(tableName);
+		if(range != null){
+			query.append(" WHERE ").append(range.toCondition());
+		}
+
+		query.append(" ORDER BY ").append(cols.get(0));
+		for(int i=1; i<cols.size(); i++){
+			query.append(", ").append(cols.get(i));
+		}
+		return query.toString();
+	}
 }
@@ -1,9 +1,5 @@
 package database;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.SQLException;
-
 import org.apache.log4j.Logger;
 
 import main.MainException;
@@ -12,6 +8,11 @@ import main.MainException;
  * The DBConnector is a class which the DB use to deal with connection with
  * database.
  * 
+ * <p>
+ * Each connection opened by the connector gives a {@link DBContext} of its own, which
+ * holds the connection pool of the session until it is closed.
+ * </p>
+ * 
  * @author Francis Pang
  * @since 2013-09-15
  * @version 2013-09-23
@@ -19,29 +20,8 @@ import main.MainException;
 public class DBConnector {
 	
 	private static Logger logger = Logger.getLogger(DBConnector.class);
-	private static volatile DBConnector singDbConnector = null;	//Singleton Database connector
-	private Connection dbConnection;
 
-	private DBConnector() {}	//To encapsulate the Singleton constructor
-	
-	/**
-	 * gets an instance of the DBConnector. Create a new instance if there is no
-	 * one in the program.
-	 * 
-	 * @return instance of the DBConnector
-	 */
-	public static DBConnector getInstance() {
-		if(singDbConnector == null){
-			synchronized (DBConnector.class){
-				if(singDbConnector == null){
-					singDbConnector = new DBConnector();
-					logger.info("Singleton DB Connector created.");
-				}
-			}
-		}
-		
-		return singDbConnector;
-	}
+	private DBConnector() {}	//Only static methods
 	
 	/**
 	 * This method will open the database connection with the method with the information given.
@@ -50,10 +30,23 @@ public class DBConnector {
 	 * @param dbName
 	 * @param username
 	 * @param password
+	 * @param poolSize maximum number of connections opened to the database
+	 * @return the context of the session, to be closed by the caller
 	 * @throws MainException 
 	 */
-	public void openConnection(String address, String port, String dbName,
-			String username, String password) throws MainException {
+	public static DBContext openContext(String address, String port, String dbName,
+			String username, String password, int poolSize) throws MainException {
+		return openContext(address, port, dbName, username, password, poolSize, new MetadataCache());
+	}
+
+	/**
+	 * Opens a context which reads the metadata into the given cache, so that the metadata read
+	 * by an earlier export of the same database is used again.
+	 * @param metadata metadata cache of the database
+	 * @see #openContext(String, String, String, String, String, int)
+	 */
+	public static DBContext openContext(String address, String port, String dbName,
+			String username, String password, int poolSize, MetadataCache metadata) throws MainException {
 
 		try {
 			Class.forName("com.mysql.jdbc.Driver");
@@ -69,41 +62,22 @@ public class DBConnector {
 		/*
 		 * Form a valid connection URL in the format of jdbc:mysql://[DBaddress]:[Port Number]/[Schema name]
 		 * For example: jdbc:mysql://localhost:3306/mkyongcom
+		 * Statements are prepared on the server, so that a query which is run again is not parsed again.
+		 * Multiple statements are allowed so that independent queries can be sent in one round trip.
+		 * The driver caches the prepared statements of each pooled connection.
 		 */
-		String connectionUrl = "jdbc:mysql://" + address + ":" + port + "/" + dbName + "?zeroDateTimeBehavior=convertToNull";
-
-		//
-		try {
-			dbConnection = DriverManager.getConnection(connectionUrl, username, password);
-			new DBAccess(dbConnection);
-		} catch (SQLException e){
-			e.printStackTrace();
-			throw new MainException("Failed to connect to database");
-		} catch (MainException e){
-			e.printStackTrace();
-			throw e;
-		}
-	}
+		String connectionUrl = "jdbc:mysql://" + address + ":" + port + "/" + dbName
+				+ "?zeroDateTimeBehavior=convertToNull&useServerPrepStmts=true&allowMultiQueries=true&cachePrepStmts=true";
 
-	/**
-	 * Close the Database connection established for this session.
-	 * @throws SQLException 
-	 * 
-	 */
-	public void closeConnection() throws MainException {
-		try{
-			dbConnection.close();
-			DBAccess.getInstance().removeInstance();
-		} catch (SQLException e){
-			e.printStackTrace();
-			throw new MainException("Failed to close connection to database");
-		}
+		DBContext context = new DBContext(new ConnectionPool(connectionUrl, username, password, poolSize), metadata);
+		logger.info("Database context opened with at most " + poolSize + " connections.");
+		return context;
 	}
 	
 	/**
 	 * 
 	 */
-	private boolean isNumeric (String str){
+	private static boolean isNumeric (String str){
 		return str.matches("^\\d+$");		
 	}
 }
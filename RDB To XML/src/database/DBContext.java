@@ -0,0 +1,99 @@
+package database;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import main.MainException;
+
+/**
+ * Database resources of one export: a pool of connections to the database, the metadata
+ * read from it and the DBAccess of the session.
+ *
+ * <p>
+ * Each export opens a context of its own, so that several exports can run in one JVM.
+ * A task which queries the database in parallel with the session opens a DBAccess of its own
+ * with {@link #openDBAccess()} and closes it once done.
+ * </p>
+ */
+public class DBContext {
+
+	private ConnectionPool pool;
+	private MetadataCache metadata;
+	private DBAccess dbAccess;
+
+	/**
+	 * @param pool				pool of connections to the database of the export
+	 * @throws MainException	if the session connection cannot be opened
+	 */
+	public DBContext(ConnectionPool pool) throws MainException {
+		this(pool, new MetadataCache());
+	}
+
+	/**
+	 * @param pool				pool of connections to the database of the export
+	 * @param metadata			metadata of the database, shared with the contexts of earlier exports
+	 * 							of the same database
+	 * @throws MainException	if the session connection cannot be opened
+	 */
+	public DBContext(ConnectionPool pool, MetadataCache metadata) throws MainException {
+		this.pool     = pool;
+		this.metadata = metadata;
+		try {
+			this.dbAccess = openDBAccess();
+		} catch (MainException e) {
+			pool.close();
+			throw e;
+		}
+	}
+
+	public ConnectionPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Access of the session, shared by the builders and generators of the export
+	 */
+	public DBAccess getDBAccess() {
+		return dbAccess;
+	}
+
+	/**
+	 * Opens an access with a connection of its own, which shares the metadata of the session
+	 * @return					the access, to be closed by the caller
+	 * @throws MainException	if no connection can be borrowed from the pool
+	 */
+	public DBAccess openDBAccess() throws MainException {
+		return new DBAccess(pool, metadata);
+	}
+
+	/**
+	 * Starts a snapshot of the database read by the session and by the given number of workers.
+	 * The number of workers is limited by the size of the pool.
+	 * @param workerCount		number of accesses which read in parallel with the session
+	 * @return					the snapshot, to be closed by the caller
+	 * @throws MainException	if the snapshot cannot be started
+	 */
+	public ConsistentSnapshot openSnapshot(int workerCount) throws MainException {
+		int count = Math.min(workerCount, pool.getMaxSize() - 1);
+		List<DBAccess> workers = new ArrayList<DBAccess>();
+		try {
+			for (int i = 0; i < count; i++) {
+				workers.add(openDBAccess());
+			}
+		} catch (MainException e) {
+			for (int i = 0; i < workers.size(); i++) {
+				workers.get(i).close();
+			}
+			throw e;
+		}
+		return new ConsistentSnapshot(dbAccess, workers);
+	}
+
+	/**
+	 * Closes the session and the connections of the pool
+	 */
+	public void close() {
+		dbAccess.close();
+		pool.close();
+	}
+}
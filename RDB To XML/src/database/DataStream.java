@@ -0,0 +1,86 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import main.MainException;
+
+/**
+ * The result of a query, together with the statement and connection it has been read from.
+ *
+ * <p>
+ * A streamed result set is forward-only and holds its statement, and maybe a
+ * dedicated connection, open until it has been read. Closing the stream releases
+ * all of them. A result set which has already been copied into memory can be
+ * wrapped as well, so that callers handle both the same way.
+ * </p>
+ */
+public class DataStream {
+
+	private ResultSet results;
+	private Statement statement;
+	private Connection ownedConnection;
+
+	/**
+	 * Wraps a result set that does not depend on an open statement, e.g. a CachedRowSet
+	 * @param results	the result set
+	 */
+	public DataStream(ResultSet results) {
+		this(results, null, null);
+	}
+
+	/**
+	 * @param results			the result set
+	 * @param statement			statement that produced the result set
+	 * @param ownedConnection	connection opened for this stream only, null if the connection is shared
+	 */
+	DataStream(ResultSet results, Statement statement, Connection ownedConnection) {
+		this.results         = results;
+		this.statement       = statement;
+		this.ownedConnection = ownedConnection;
+	}
+
+	public ResultSet getResultSet() {
+		return results;
+	}
+
+	/**
+	 * Closes the result set, its statement and the connection opened for the stream.
+	 * Each of them is closed even if the ones before fail, so that the connection is returned to its pool.
+	 * @throws MainException	with the first error, if any of them cannot be closed
+	 */
+	public void close() throws MainException {
+		SQLException error = null;
+		try {
+			try {
+				results.close();
+			} catch (SQLException e) {
+				error = e;
+			}
+		} finally {
+			try {
+				try {
+					if (statement != null)
+						statement.close();
+				} catch (SQLException e) {
+					if (error == null)
+						error = e;
+				}
+			} finally {
+				try {
+					if (ownedConnection != null)
+						ownedConnection.close();
+				} catch (SQLException e) {
+					if (error == null)
+						error = e;
+				}
+			}
+		}
+		if (error != null) {
+			error.printStackTrace();
+			throw new MainException("Failed to close the data stream : " + error.getMessage());
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package database;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Range of the values of the first ORDER BY column of a scan.
+ *
+ * <p>
+ * The ranges made by {@link #split(String, List)} cover all the rows of the scan without
+ * overlapping, in the order of the column: the first range also holds the NULLs, which
+ * MySQL sorts first. The rows of the ranges read one after the other are thus the rows
+ * of the whole scan, in the same order.
+ * </p>
+ */
+public class KeyRange {
+
+	private String column;
+	private Object lower;
+	private Object upper;
+
+	/**
+	 * @param column	qualified name of the column
+	 * @param lower		lowest value of the range, null for the first range
+	 * @param upper		lowest value above the range, null for the last range
+	 */
+	public KeyRange(String column, Object lower, Object upper) {
+		this.column = column;
+		this.lower  = lower;
+		this.upper  = upper;
+	}
+
+	/**
+	 * Splits the values of a column at the given bounds
+	 * @param column	qualified name of the column
+	 * @param bounds	increasing values at which a range starts
+	 * @return			one more range than bounds
+	 */
+	public static List<KeyRange> split(String column, List<Object> bounds) {
+		List<KeyRange> ranges = new ArrayList<KeyRange>();
+		Object lower = null;
+		for (int i = 0; i < bounds.size(); i++) {
+			ranges.add(new KeyRange(column, lower, bounds.get(i)));
+			lower = bounds.get(i);
+		}
+		ranges.add(new KeyRange(column, lower, null));
+		return ranges;
+	}
+
+	/**
+	 * Condition selecting the rows of the range, with a parameter for each bound
+	 */
+	public String toCondition() {
+		if (lower == null && upper == null)
+			return "1=1";
+		if (lower == null)
+			return "(" + column + " IS NULL OR " + column + " < ?)";
+		if (upper == null)
+			return column + " >= ?";
+		return column + " >= ? AND " + column + " < ?";
+	}
+
+	/**
+	 * Sets the parameters of the condition
+	 * @param stmt			statement of the scan
+	 * @param param			index of the first parameter of the condition
+	 * @return				index of the parameter after the condition
+	 * @throws SQLException	if a parameter cannot be set
+	 */
+	public int bind(PreparedStatement stmt, int param) throws SQLException {
+		if (lower != null)
+			stmt.setObject(param++, lower);
+		if (upper != null)
+			stmt.setObject(param++, upper);
+		return param;
+	}
+
+	@Override
+	public String toString() {
+		return column + " in [" + lower + ", " + upper + ")";
+	}
+}
@@ -0,0 +1,300 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import javax.sql.rowset.CachedRowSet;
+
+import main.MainException;
+import main.TaskRunner;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Metadata of the tables of a schema, read with a few round trips instead of several per table.
+ *
+ * <p>
+ * The columns of all the tables are read with one call to <code>DatabaseMetaData.getColumns</code>.
+ * The primary keys, unique columns, foreign keys and references of the tables are read from
+ * information_schema with one query of each kind per table, and the queries of
+ * {@link #TABLES_PER_BATCH} tables are sent in one {@link QueryBatch}. The result sets keep the
+ * column names and the order of the matching <code>DatabaseMetaData</code> calls.
+ * </p>
+ *
+ * <p>
+ * The cache may be shared by the exports running at once on the same schema. A load reads the
+ * metadata into new maps, which replace the previous ones at once when they are complete, so an
+ * export reading the cache sees either the old or the new metadata of a table, never a half-read one.
+ * </p>
+ */
+public class MetadataCache {
+
+	/** Number of tables whose queries are sent in one round trip **/
+	public static final int TABLES_PER_BATCH = 50;
+
+	private volatile Tables tables;
+	private Logger logger = Logger.getLogger(MetadataCache.class);
+
+	public MetadataCache() {
+		this.tables = new Tables(new ArrayList<String>());
+	}
+
+	/**
+	 * Reads the metadata of the given tables, replacing what has been read before
+	 * @param connection		connection of the schema
+	 * @param tableNames		tables of the schema
+	 * @throws MainException	if the metadata cannot be read
+	 */
+	public void load(Connection connection, List<String> tableNames) throws MainException {
+		Tables loaded = new Tables(tableNames);
+		loadColumns(loaded, connection);
+		int batches = 0;
+		for (int first = 0; first < tableNames.size(); first += TABLES_PER_BATCH) {
+			List<String> tables = tableNames.subList(first, Math.min(first + TABLES_PER_BATCH, tableNames.size()));
+			readBatch(loaded, tables, buildBatch(tables).execute(connection));
+			batches++;
+		}
+		this.tables = loaded;
+		logger.info("Metadata of " + tableNames.size() + " tables read in " + batches + " batches");
+	}
+
+	/**
+	 * Reads the metadata of the given tables, with the batches sent at once over connections of the pool
+	 * @param pool				pool of connections to the schema
+	 * @param connection		connection which reads the columns
+	 * @param tableNames		tables of the schema
+	 * @param runner			runner of the batches, whose permits are the connections free in the pool
+	 * @throws MainException	if the metadata cannot be read
+	 */
+	public void load(final ConnectionPool pool, Connection connection, List<String> tableNames, TaskRunner runner) throws MainException {
+		Tables loaded = new Tables(tableNames);
+		List<List<String>> batchTables = new ArrayList<List<String>>();
+		List<Callable<List<CachedRowSet>>> tasks = new ArrayList<Callable<List<CachedRowSet>>>();
+		for (int first = 0; first < tableNames.size(); first += TABLES_PER_BATCH) {
+			List<String> tables = tableNames.subList(first, Math.min(first + TABLES_PER_BATCH, tableNames.size()));
+			final QueryBatch batch = buildBatch(tables);
+			batchTables.add(tables);
+			tasks.add(new Callable<List<CachedRowSet>>() {
+				public List<CachedRowSet> call() throws Exception {
+					Connection batchConnection = pool.borrow();
+					try {
+						return batch.execute(batchConnection);
+					} finally {
+						batchConnection.close();
+					}
+				}
+			});
+		}
+		loadColumns(loaded, connection);
+		List<List<CachedRowSet>> results = runner.runAll(tasks);
+		for (int i = 0; i < results.size(); i++) {
+			readBatch(loaded, batchTables.get(i), results.get(i));
+		}
+		this.tables = loaded;
+		logger.info("Metadata of " + tableNames.size() + " tables read in " + tasks.size() + " batches on up to " + runner.getPermits() + " connections");
+	}
+
+	private QueryBatch buildBatch(List<String> tables) {
+		QueryBatch batch = new QueryBatch();
+		for (int i = 0; i < tables.size(); i++) {
+			String table = QueryBatch.quote(tables.get(i));
+			batch.add("SELECT COLUMN_NAME FROM information_schema.KEY_COLUMN_USAGE WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = " + table
+					+ " AND CONSTRAINT_NAME = 'PRIMARY' ORDER BY COLUMN_NAME");
+			batch.add("SELECT COLUMN_NAME FROM information_schema.STATISTICS WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = " + table
+					+ " AND NON_UNIQUE = 0 ORDER BY INDEX_NAME, SEQ_IN_INDEX");
+			batch.add("SELECT REFERENCED_TABLE_NAME AS PKTABLE_NAME, REFERENCED_COLUMN_NAME AS PKCOLUMN_NAME, TABLE_NAME AS FKTABLE_NAME,"
+					+ " COLUMN_NAME AS FKCOLUMN_NAME, ORDINAL_POSITION AS KEY_SEQ, CONSTRAINT_NAME AS FK_NAME"
+					+ " FROM information_schema.KEY_COLUMN_USAGE WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = " + table
+					+ " AND REFERENCED_TABLE_NAME IS NOT NULL ORDER BY REFERENCED_TABLE_NAME, ORDINAL_POSITION, CONSTRAINT_NAME");
+			batch.add("SELECT COUNT(*) FROM information_schema.KEY_COLUMN_USAGE WHERE REFERENCED_TABLE_SCHEMA = DATABASE() AND REFERENCED_TABLE_NAME = " + table);
+		}
+		return batch;
+	}
+
+	private void readBatch(Tables loaded, List<String> tables, List<CachedRowSet> results) throws MainException {
+		try {
+			for (int i = 0; i < tables.size(); i++) {
+				String tableName = tables.get(i);
+				loaded.primaryKeys.put(tableName, readColumnNames(results.get(4 * i)));
+				loaded.uniqueColumns.put(tableName, readColumnNames(results.get(4 * i + 1)));
+				loaded.foreignKeys.put(tableName, results.get(4 * i + 2));
+				CachedRowSet references = results.get(4 * i + 3);
+				loaded.referenced.put(tableName, references.next() && references.getInt(1) > 0);
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw new MainException("Exception when reading the metadata of the tables : " + e.getMessage());
+		}
+	}
+
+	public void clear() {
+		tables = new Tables(new ArrayList<String>());
+	}
+
+	/**
+	 * Whether the metadata of exactly the given tables has been read, so that it can be used again
+	 * @param tableNames	tables of the schema, in any order
+	 * @return				true if the last load read the given tables
+	 */
+	public boolean isLoaded(List<String> tableNames) {
+		Set<String> loadedTables = tables.names;
+		return !loadedTables.isEmpty() && loadedTables.equals(new HashSet<String>(tableNames));
+	}
+
+	/**
+	 * Columns of a table
+	 * @return	the columns in the order of the table, null if the table has not been read
+	 */
+	public List<ColumnMetadata> getColumns(String tableName) {
+		return tables.columns.get(tableName);
+	}
+
+	/**
+	 * Primary key of a table
+	 * @return	the key columns ordered by name, null if the table has not been read
+	 */
+	public List<String> getPrimaryKeys(String tableName) {
+		return tables.primaryKeys.get(tableName);
+	}
+
+	/**
+	 * Columns of the unique indexes of a table
+	 * @return	the columns, null if the table has not been read
+	 */
+	public List<String> getUniqueColumns(String tableName) {
+		return tables.uniqueColumns.get(tableName);
+	}
+
+	/**
+	 * Foreign keys of a table, with the columns of <code>DatabaseMetaData.getImportedKeys</code> used by the export
+	 * @return	a copy of the foreign keys with a cursor of its own, null if the table has not been read
+	 * @throws MainException	if the copy cannot be created
+	 */
+	public synchronized CachedRowSet getForeignKeys(String tableName) throws MainException {
+		CachedRowSet crs = tables.foreignKeys.get(tableName);
+		if (crs == null)
+			return null;
+		try {
+			CachedRowSet shared = (CachedRowSet) crs.createShared();
+			shared.beforeFirst();
+			return shared;
+		} catch (SQLException e) {
+			throw new MainException("Cannot copy the foreign keys of " + tableName + " : " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Whether a foreign key of another table references a table
+	 * @return	null if the table has not been read
+	 */
+	public Boolean isReferenced(String tableName) {
+		return tables.referenced.get(tableName);
+	}
+
+	private void loadColumns(Tables loaded, Connection connection) throws MainException {
+		try {
+			ResultSet rs = connection.getMetaData().getColumns(null, null, "%", null);
+			try {
+				while (rs.next()) {
+					String tableName = rs.getString("TABLE_NAME");
+					List<ColumnMetadata> tableColumns = loaded.columns.get(tableName);
+					if (tableColumns == null) {
+						tableColumns = new ArrayList<ColumnMetadata>();
+						loaded.columns.put(tableName, tableColumns);
+					}
+					tableColumns.add(new ColumnMetadata(rs));
+				}
+			} finally {
+				rs.close();
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw new MainException("Exception when retrieving the columns of the tables : " + e.getMessage());
+		}
+	}
+
+	private static List<String> readColumnNames(CachedRowSet crs) throws SQLException {
+		List<String> names = new ArrayList<String>();
+		while (crs.next()) {
+			names.add(crs.getString(1));
+		}
+		return names;
+	}
+
+	/*
+	 * Metadata of the tables read by one load. The maps are only written before the load publishes them.
+	 * */
+	private static class Tables {
+		private Set<String> names;
+		private Map<String, List<ColumnMetadata>> columns;
+		private Map<String, List<String>> primaryKeys;
+		private Map<String, List<String>> uniqueColumns;
+		private Map<String, CachedRowSet> foreignKeys;
+		private Map<String, Boolean> referenced;
+
+		private Tables(List<String> tableNames) {
+			this.names         = new HashSet<String>(tableNames);
+			this.columns       = new HashMap<String, List<ColumnMetadata>>();
+			this.primaryKeys   = new HashMap<String, List<String>>();
+			this.uniqueColumns = new HashMap<String, List<String>>();
+			this.foreignKeys   = new HashMap<String, CachedRowSet>();
+			this.referenced    = new HashMap<String, Boolean>();
+		}
+	}
+
+	/**
+	 * A row of <code>DatabaseMetaData.getColumns</code>
+	 */
+	public static class ColumnMetadata {
+		private String name;
+		private boolean isNullable;
+		private int size;
+		private int sqlType;
+		private boolean isUnsigned;
+		private String defaultValue;
+
+		ColumnMetadata(ResultSet rs) throws SQLException {
+			this.name         = rs.getString("COLUMN_NAME");
+			this.isNullable   = rs.getInt("NULLABLE") == DatabaseMetaData.columnNullable;
+			this.size         = rs.getInt("COLUMN_SIZE");
+			this.sqlType      = rs.getInt("DATA_TYPE");
+			// e.g. BIGINT UNSIGNED, which the driver reports as a BIGINT
+			String typeName   = rs.getString("TYPE_NAME");
+			this.isUnsigned   = typeName != null && typeName.toUpperCase().contains("UNSIGNED");
+			this.defaultValue = rs.getString("COLUMN_DEF");
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public boolean isNullable() {
+			return isNullable;
+		}
+
+		public int getSize() {
+			return size;
+		}
+
+		public int getSqlType() {
+			return sqlType;
+		}
+
+		public boolean isUnsigned() {
+			return isUnsigned;
+		}
+
+		public String getDefaultValue() {
+			return defaultValue;
+		}
+	}
+}
@@ -0,0 +1,213 @@
+package database;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import xml.NodeRelationship;
+
+/**
+ * Description of a sorted outer union: several SELECTs whose rows are returned by one query.
+ *
+ * <p>
+ * Every branch is tagged with the sequence number of its ORASS node and its own
+ * sequence number within the node (0 for the data of the node, then one per
+ * relationship). The rows are ordered by the node, then by the key of the
+ * tuple they belong to, then by the branch and the other sort columns of the
+ * branch. Keys and sort columns are put in typed slots, so a slot holding an
+ * integer key in one branch and a string key in another is still ordered
+ * correctly. The values are converted to characters by the server, which only gives the text
+ * of the JDBC driver for some types, see {@link #hasExactValues()}.
+ * </p>
+ */
+public class OuterUnionQuery {
+
+	public static final String NODE_SEQ = "node_seq";
+	public static final String BRANCH_SEQ = "branch_seq";
+
+	private List<Branch> branches;
+	private int keySlotCount;
+	private int sortSlotCount;
+	private int valueSlotCount;
+
+	public OuterUnionQuery() {
+		branches       = new ArrayList<Branch>();
+		keySlotCount   = 0;
+		sortSlotCount  = 0;
+		valueSlotCount = 0;
+	}
+
+	/**
+	 * Adds the data of a table, as read by DBAccess.getData
+	 * @param nodeSeq		sequence number of the node
+	 * @param tableName		table of the node
+	 * @param fromCols		columns of the data, which may come from several tables
+	 * @param keyCols		key columns of the table
+	 * @param sortCols		other columns to order the rows of a tuple by
+	 * @param valueCols		columns whose values are returned
+	 */
+	public void addEntityBranch(int nodeSeq, String tableName, List<ColumnDetail> fromCols, List<ColumnDetail> keyCols, List<ColumnDetail> sortCols, List<ColumnDetail> valueCols) {
+		Branch branch = new Branch(nodeSeq, 0, keyCols, sortCols, valueCols);
+		branch.tableName = tableName;
+		branch.fromCols  = fromCols;
+		addBranch(branch);
+	}
+
+	/**
+	 * Adds a relationship of a table
+	 * @param nodeSeq		sequence number of the node
+	 * @param branchSeq		sequence number of the relationship within the node, from 1
+	 * @param fromTables	tables of the join
+	 * @param joins			join conditions
+	 * @param keyCols		key columns of the table of the node
+	 * @param valueCols		columns whose values are returned
+	 */
+	public void addRelationshipBranch(int nodeSeq, int branchSeq, List<String> fromTables, List<NodeRelationship> joins, List<ColumnDetail> keyCols, List<ColumnDetail> valueCols) {
+		Branch branch = new Branch(nodeSeq, branchSeq, keyCols, new ArrayList<ColumnDetail>(), valueCols);
+		branch.fromTables = fromTables;
+		branch.joins      = joins;
+		addBranch(branch);
+	}
+
+	private void addBranch(Branch branch) {
+		branches.add(branch);
+		keySlotCount   = Math.max(keySlotCount, branch.keyCols.size());
+		sortSlotCount  = Math.max(sortSlotCount, branch.sortCols.size());
+		valueSlotCount = Math.max(valueSlotCount, branch.valueCols.size());
+	}
+
+	public List<Branch> getBranches() {
+		return branches;
+	}
+
+	public int getKeySlotCount() {
+		return keySlotCount;
+	}
+
+	public int getSortSlotCount() {
+		return sortSlotCount;
+	}
+
+	public int getValueSlotCount() {
+		return valueSlotCount;
+	}
+
+	/**
+	 * Name of the column holding the value at 'index' in the value columns of a branch
+	 */
+	public static String valueSlot(int index) {
+		return "v" + index;
+	}
+
+	/**
+	 * Whether every value is converted by the server to the text the JDBC driver reads for it,
+	 * so that the tuple IDs registered from the driver's text are found and the values are printed
+	 * as in the export of each table. This holds for integer and character columns only : the driver
+	 * appends ".0" to temporal values, and formats floating and decimal numbers in its own way.
+	 */
+	public boolean hasExactValues() {
+		for (int i = 0; i < branches.size(); i++) {
+			List<ColumnDetail> valueCols = branches.get(i).valueCols;
+			for (int j = 0; j < valueCols.size(); j++) {
+				if (!isExactAsChar(valueCols.get(j).getSqlType()))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	static boolean isExactAsChar(int sqlType) {
+		switch (sqlType) {
+		case Types.TINYINT:
+		case Types.SMALLINT:
+		case Types.INTEGER:
+		case Types.BIGINT:
+		case Types.CHAR:
+		case Types.VARCHAR:
+		case Types.LONGVARCHAR:
+		case Types.NCHAR:
+		case Types.NVARCHAR:
+		case Types.LONGNVARCHAR:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	static boolean isNumeric(int sqlType) {
+		switch (sqlType) {
+		case Types.TINYINT:
+		case Types.SMALLINT:
+		case Types.INTEGER:
+		case Types.BIGINT:
+		case Types.DECIMAL:
+		case Types.NUMERIC:
+		case Types.REAL:
+		case Types.FLOAT:
+		case Types.DOUBLE:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	public static class Branch {
+		private int nodeSeq;
+		private int branchSeq;
+		private List<ColumnDetail> keyCols;
+		private List<ColumnDetail> sortCols;
+		private List<ColumnDetail> valueCols;
+		private String tableName;
+		private List<ColumnDetail> fromCols;
+		private List<String> fromTables;
+		private List<NodeRelationship> joins;
+
+		private Branch(int nodeSeq, int branchSeq, List<ColumnDetail> keyCols, List<ColumnDetail> sortCols, List<ColumnDetail> valueCols) {
+			this.nodeSeq   = nodeSeq;
+			this.branchSeq = branchSeq;
+			this.keyCols   = keyCols;
+			this.sortCols  = sortCols;
+			this.valueCols = valueCols;
+		}
+
+		public int getNodeSeq() {
+			return nodeSeq;
+		}
+
+		public int getBranchSeq() {
+			return branchSeq;
+		}
+
+		public boolean isEntity() {
+			return branchSeq == 0;
+		}
+
+		public List<ColumnDetail> getKeyCols() {
+			return keyCols;
+		}
+
+		public List<ColumnDetail> getSortCols() {
+			return sortCols;
+		}
+
+		public List<ColumnDetail> getValueCols() {
+			return valueCols;
+		}
+
+		public String getTableName() {
+			return tableName;
+		}
+
+		public List<ColumnDetail> getFromCols() {
+			return fromCols;
+		}
+
+		public List<String> getFromTables() {
+			return fromTables;
+		}
+
+		public List<NodeRelationship> getJoins() {
+			return joins;
+		}
+	}
+}
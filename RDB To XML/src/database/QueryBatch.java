@@ -0,0 +1,97 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.rowset.CachedRowSet;
+
+import main.MainException;
+
+import com.sun.rowset.CachedRowSetImpl;
+
+/**
+ * Independent queries sent to the server in a single round trip.
+ *
+ * <p>
+ * The queries are joined into one multi-statement string, which the MySQL driver
+ * accepts on connections opened with <code>allowMultiQueries=true</code>. The
+ * result sets come back in the order of the queries and are copied into memory.
+ * </p>
+ */
+public class QueryBatch {
+
+	private List<String> queries;
+
+	public QueryBatch() {
+		this.queries = new ArrayList<String>();
+	}
+
+	/**
+	 * Adds a query to the batch
+	 * @param query	a query which returns one result set, without a trailing semicolon
+	 */
+	public void add(String query) {
+		queries.add(query);
+	}
+
+	public int size() {
+		return queries.size();
+	}
+
+	/**
+	 * Runs the queries of the batch in one round trip
+	 * @param connection		connection to run the queries on
+	 * @return					the result of each query, in the order the queries have been added
+	 * @throws MainException	if a query fails
+	 */
+	public List<CachedRowSet> execute(Connection connection) throws MainException {
+		List<CachedRowSet> results = new ArrayList<CachedRowSet>(queries.size());
+		if (queries.isEmpty())
+			return results;
+		StringBuilder batch = new StringBuilder();
+		for (int i = 0; i < queries.size(); i++) {
+			if (i > 0)
+				batch.append(";\n");
+			batch.append(queries.get(i));
+		}
+		Statement stmt = null;
+		try {
+			stmt = connection.createStatement();
+			boolean isResultSet = stmt.execute(batch.toString());
+			while (isResultSet || stmt.getUpdateCount() != -1) {
+				if (isResultSet) {
+					CachedRowSet crs = new CachedRowSetImpl();
+					crs.populate(stmt.getResultSet());
+					results.add(crs);
+				}
+				isResultSet = stmt.getMoreResults();
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+			throw new MainException("Exception when executing a batch of " + queries.size() + " queries : " + e.getMessage());
+		} finally {
+			if (stmt != null) {
+				try {
+					stmt.close();
+				} catch (SQLException closeEx) {
+					closeEx.printStackTrace();
+				}
+			}
+		}
+		if (results.size() != queries.size())
+			throw new MainException("A batch of " + queries.size() + " queries returned " + results.size() + " results");
+		return results;
+	}
+
+	/**
+	 * Quotes a value as an SQL string literal
+	 * @param value	the value
+	 * @return		the literal, with quotes and backslashes escaped
+	 */
+	public static String quote(String value) {
+		return "'" + value.replace("\\", "\\\\").replace("'", "''") + "'";
+	}
+}
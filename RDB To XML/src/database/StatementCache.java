@@ -0,0 +1,73 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Prepared statements of one connection, kept by their SQL text.
+ *
+ * <p>
+ * A query which is run again with the same SQL text reuses its statement, so that the
+ * server parses and plans each shape of query once. The least recently used statement
+ * is closed when more than {@link #MAX_STATEMENTS} are open. A result set read from a
+ * cached statement is closed when the statement is run again, so it must be read first.
+ * </p>
+ */
+public class StatementCache {
+
+	public static final int MAX_STATEMENTS = 64;
+
+	private Connection connection;
+	private Map<String, PreparedStatement> statements;
+
+	public StatementCache(Connection connection) {
+		this.connection = connection;
+		this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true);
+	}
+
+	/**
+	 * Returns the forward-only, read-only statement of a query, preparing it the first time
+	 * @param query				SQL text of the query
+	 * @return					the prepared statement, with its parameters cleared
+	 * @throws SQLException		if the statement cannot be prepared
+	 */
+	public PreparedStatement prepare(String query) throws SQLException {
+		PreparedStatement stmt = statements.get(query);
+		if (stmt != null) {
+			stmt.clearParameters();
+			return stmt;
+		}
+		stmt = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		statements.put(query, stmt);
+		if (statements.size() > MAX_STATEMENTS) {
+			Iterator<PreparedStatement> eldest = statements.values().iterator();
+			PreparedStatement evicted = eldest.next();
+			eldest.remove();
+			evicted.close();
+		}
+		return stmt;
+	}
+
+	public int size() {
+		return statements.size();
+	}
+
+	/**
+	 * Closes all the statements of the cache
+	 */
+	public void close() {
+		for (PreparedStatement stmt : statements.values()) {
+			try {
+				stmt.close();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
+		statements.clear();
+	}
+}
@@ -13,6 +13,7 @@ import java.util.Vector;
 import javax.sql.rowset.CachedRowSet;
 
 import main.MainException;
+import main.TaskRunner;
 import database.ColumnDetail;
 import database.DBAccess;
 
@@ -27,9 +28,19 @@ public class ERDBuilder {
 	private List<List<String>> cycles;
 	private List<List<String>> relationshipInCycle;
 
-	public ERDBuilder() throws MainException {
-		dbAccess            = DBAccess.getInstance();
+	public ERDBuilder(DBAccess dbAccess) throws MainException {
+		this(dbAccess, null);
+	}
+
+	/**
+	 * @param dbAccess			access to the database
+	 * @param runner			runner of the metadata queries, null to send them one after the other
+	 * @throws MainException	if the metadata cannot be read
+	 */
+	public ERDBuilder(DBAccess dbAccess, TaskRunner runner) throws MainException {
+		this.dbAccess       = dbAccess;
 		tableNames          = dbAccess.getTableNames();
+		dbAccess.loadMetadata(tableNames, runner);
 		entityTypes         = new HashMap<String, ErdNode>();
 		relationshipTypes   = new HashMap<String, ErdNode>(); 
 		cycles			    = new ArrayList<List<String>>();
@@ -0,0 +1,167 @@
+package main;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import database.MetadataCache;
+
+/**
+ * One XML export run without the user interface: a database, the root entity of the
+ * document, the order of its n-ary relationships and the output file.
+ *
+ * <p>
+ * The export takes the steps of the user interface. The entities of the cycles are split
+ * in the same way, and an n-ary relationship without an order of the job keeps the order
+ * given by the ORA-SS builder.
+ * </p>
+ */
+public class ExportJob {
+
+	private String address;
+	private String port;
+	private String dbName;
+	private String username;
+	private String password;
+	private String rootEntity;
+	private String xmlFileName;
+	private Map<String, List<String>> naryOrders;
+	private int priority;
+
+	/**
+	 * @param address		address of the database server
+	 * @param port			port of the database server
+	 * @param dbName		name of the database
+	 * @param username
+	 * @param password
+	 * @param rootEntity	entity at the root of the document
+	 * @param xmlFileName	path of the XML file, without the extension
+	 */
+	public ExportJob(String address, String port, String dbName, String username, String password,
+			String rootEntity, String xmlFileName) {
+		this.address     = address;
+		this.port        = port;
+		this.dbName      = dbName;
+		this.username    = username;
+		this.password    = password;
+		this.rootEntity  = rootEntity;
+		this.xmlFileName = xmlFileName;
+		this.naryOrders  = null;
+		this.priority    = 0;
+	}
+
+	/**
+	 * Key of the database of a job. Jobs with the same key share the connection cap and the metadata.
+	 */
+	public static String getDatabaseKey(String address, String port, String dbName) {
+		return address + ":" + port + "/" + dbName;
+	}
+
+	public String getDatabaseKey() {
+		return getDatabaseKey(address, port, dbName);
+	}
+
+	public String getDBName() {
+		return dbName;
+	}
+
+	public String getRootEntity() {
+		return rootEntity;
+	}
+
+	public String getXMLFileName() {
+		return xmlFileName;
+	}
+
+	public Map<String, List<String>> getNaryOrders() {
+		return naryOrders;
+	}
+
+	/**
+	 * @param naryOrders	order of the entities of each n-ary relationship, by relationship name.
+	 * 						The root entity comes first in the relationships which contain it.
+	 */
+	public void setNaryOrders(Map<String, List<String>> naryOrders) {
+		this.naryOrders = naryOrders;
+	}
+
+	public int getPriority() {
+		return priority;
+	}
+
+	/**
+	 * @param priority	jobs with a higher priority are started first
+	 */
+	public void setPriority(int priority) {
+		this.priority = priority;
+	}
+
+	/**
+	 * Runs the export
+	 * @param settings			settings of the export
+	 * @param metadata			metadata cache of the database, shared with the other jobs of the database
+	 * @throws MainException	if the export fails
+	 */
+	public void export(ExportSettings settings, MetadataCache metadata) throws MainException {
+		RDBToXML r = new RDBToXML(settings);
+		r.connectToDB(address, port, dbName, username, password, metadata);
+		try {
+			r.translateToERD();
+			if (!r.getERDEntityTypes().containsKey(rootEntity))
+				throw new MainException("Entity " + rootEntity + " not found in " + dbName + ".");
+			splitCycles(r);
+			r.translateToORASS();
+
+			Map<String, List<String>> nary = r.getNaryRels();
+			if (naryOrders != null) {
+				for (Map.Entry<String, List<String>> order : naryOrders.entrySet()) {
+					if (!nary.containsKey(order.getKey()))
+						throw new MainException("N-ary relationship " + order.getKey() + " not found in " + dbName + ".");
+					nary.put(order.getKey(), order.getValue());
+				}
+			}
+			for (List<String> order : nary.values()) {
+				if (order.contains(rootEntity) && !order.get(0).equals(rootEntity))
+					throw new MainException(rootEntity + " must be the root of the n-ary relation, because it is the most important entity");
+			}
+			if (!nary.isEmpty())
+				r.setOrders(nary);
+			r.buildORASS(r.getERDEntityTypes().get(rootEntity));
+			r.translateToXML(dbName, xmlFileName, nary);
+		} finally {
+			r.closeConnection();
+		}
+	}
+
+	/*
+	 * Splits the entities of the cycles as the user interface does : the entities after the one
+	 * kept in a cycle which does not depend on the root, and all the entities but the root in a
+	 * cycle which contains the root
+	 * */
+	private void splitCycles(RDBToXML r) throws MainException {
+		Set<String> splitThis = new LinkedHashSet<String>();
+		List<List<String>> cycles = r.checkCycle();
+		for (int i = 0; i < cycles.size(); i++) {
+			List<String> cycle = cycles.get(i);
+			if (cycle.get(0).equals("0")) {
+				splitThis.addAll(cycle.subList(2, cycle.size()));
+			} else if (cycle.contains(rootEntity)) {
+				for (int j = 0; j < cycle.size(); j++) {
+					if (!cycle.get(j).equals(rootEntity))
+						splitThis.add(cycle.get(j));
+				}
+			}
+		}
+		if (splitThis.contains(rootEntity))
+			throw new MainException(rootEntity + " is split in a cycle and cannot be the root.");
+		for (String entity : splitThis) {
+			r.setEntityToBeSplitted(entity);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return getDatabaseKey() + " (" + rootEntity + ") -> " + xmlFileName;
+	}
+}
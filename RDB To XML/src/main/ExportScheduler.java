@@ -0,0 +1,293 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.apache.log4j.Logger;
+
+import database.MetadataCache;
+
+/**
+ * Runs many export jobs in one JVM.
+ *
+ * <p>
+ * At most <code>maxJobs</code> jobs run at once, and the jobs of one database hold at most
+ * its connection cap. A job is given the free connections of its database up to the pool size
+ * of the settings, and waits while fewer than {@link #MIN_JOB_CONNECTIONS} are free.
+ * </p>
+ *
+ * <p>
+ * When a job ends, the next job is the startable job with the highest priority. Among jobs of
+ * the same priority, the job of the database with the fewest running jobs goes first, so that
+ * one database with many jobs does not hold back the others, and then the job submitted first.
+ * </p>
+ *
+ * <p>
+ * The jobs of one database share the metadata read by the first of them, and all the jobs
+ * run on the code already compiled by the JIT for the earlier jobs.
+ * </p>
+ */
+public class ExportScheduler {
+
+	/** Number of connections a job needs: the session and one stream **/
+	public static final int MIN_JOB_CONNECTIONS = 2;
+
+	private static Logger logger = Logger.getLogger(ExportScheduler.class);
+
+	private ExportSettings settings;
+	private int maxJobs;
+	private int defaultConnectionCap;
+	private Map<String, Integer> connectionCaps;
+	private Map<String, Integer> usedConnections;
+	private Map<String, Integer> runningJobs;
+	private Map<String, MetadataCache> metadataCaches;
+	private List<ScheduledJob> pending;
+	private int running;
+	private long submitted;
+	private boolean shutdown;
+	private ExecutorService executor;
+
+	/**
+	 * @param settings					settings of the jobs. The pool size of each job is the number of
+	 * 									connections it is given.
+	 * @param maxJobs					maximum number of jobs running at once
+	 * @param connectionsPerDatabase	connection cap of a database without a cap of its own
+	 */
+	public ExportScheduler(ExportSettings settings, int maxJobs, int connectionsPerDatabase) {
+		this.settings             = settings;
+		this.maxJobs              = Math.max(1, maxJobs);
+		this.defaultConnectionCap = Math.max(MIN_JOB_CONNECTIONS, connectionsPerDatabase);
+		this.connectionCaps       = new HashMap<String, Integer>();
+		this.usedConnections      = new HashMap<String, Integer>();
+		this.runningJobs          = new HashMap<String, Integer>();
+		this.metadataCaches       = new HashMap<String, MetadataCache>();
+		this.pending              = new ArrayList<ScheduledJob>();
+		this.running              = 0;
+		this.submitted            = 0;
+		this.shutdown             = false;
+		this.executor             = TaskRunner.newExecutor(settings.isVirtualThreads(), this.maxJobs);
+	}
+
+	/**
+	 * Sets the maximum number of connections the jobs of a database hold at once
+	 * @param databaseKey	key of the database, see {@link ExportJob#getDatabaseKey()}
+	 * @param cap			maximum number of connections
+	 */
+	public synchronized void setConnectionCap(String databaseKey, int cap) {
+		connectionCaps.put(databaseKey, Math.max(MIN_JOB_CONNECTIONS, cap));
+		dispatch();
+	}
+
+	/**
+	 * Queues a job, which is started once its database has free connections
+	 * @param job				the job
+	 * @return					the result of the job, which throws the MainException of a failed export
+	 * @throws MainException	if the scheduler has been shut down
+	 */
+	public synchronized Future<Void> submit(ExportJob job) throws MainException {
+		if (shutdown)
+			throw new MainException("The export scheduler has been shut down.");
+		ScheduledJob scheduled = new ScheduledJob(new JobCall(job), submitted++);
+		pending.add(scheduled);
+		dispatch();
+		return scheduled;
+	}
+
+	/**
+	 * Waits for the jobs submitted so far
+	 * @throws MainException	if interrupted while waiting
+	 */
+	public synchronized void awaitCompletion() throws MainException {
+		try {
+			while (running > 0 || !pending.isEmpty()) {
+				wait();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MainException("Interrupted while waiting for the export jobs.");
+		}
+	}
+
+	/**
+	 * Refuses new jobs, waits for the submitted ones and stops the threads of the scheduler
+	 * @throws MainException	if interrupted while waiting
+	 */
+	public void shutdown() throws MainException {
+		synchronized (this) {
+			shutdown = true;
+		}
+		try {
+			awaitCompletion();
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Runs one job on the given number of connections
+	 * @param job				the job
+	 * @param jobSettings		settings of the job, whose pool size is the number of connections of the job
+	 * @param metadata			metadata cache of the database of the job
+	 * @throws MainException	if the export fails
+	 */
+	protected void runJob(ExportJob job, ExportSettings jobSettings, MetadataCache metadata) throws MainException {
+		job.export(jobSettings, metadata);
+	}
+
+	/*
+	 * Starts the pending jobs while there is a free thread and a database with free connections
+	 * */
+	private synchronized void dispatch() {
+		while (running < maxJobs) {
+			ScheduledJob next = null;
+			for (int i = 0; i < pending.size(); i++) {
+				ScheduledJob candidate = pending.get(i);
+				if (getFreeConnections(candidate.databaseKey) >= MIN_JOB_CONNECTIONS
+						&& (next == null || isBefore(candidate, next)))
+					next = candidate;
+			}
+			if (next == null)
+				return;
+
+			pending.remove(next);
+			next.call.connections = Math.max(MIN_JOB_CONNECTIONS, Math.min(settings.getPoolSize(), getFreeConnections(next.databaseKey)));
+			next.started = true;
+			add(usedConnections, next.databaseKey, next.call.connections);
+			add(runningJobs, next.databaseKey, 1);
+			running++;
+			logger.info("Export job started on " + next.call.connections + " connections : " + next.call.job);
+			executor.execute(next);
+		}
+	}
+
+	/*
+	 * Releases the connections of a started job once its thread has left it
+	 * */
+	private synchronized void finished(ScheduledJob job) {
+		add(usedConnections, job.databaseKey, -job.call.connections);
+		add(runningJobs, job.databaseKey, -1);
+		running--;
+		dispatch();
+		notifyAll();
+	}
+
+	/*
+	 * Drops a job cancelled before it started. A started job keeps its connections until it has returned.
+	 * */
+	private synchronized void cancelled(ScheduledJob job) {
+		if (job.started)
+			return;
+		pending.remove(job);
+		notifyAll();
+	}
+
+	/*
+	 * Order of the pending jobs : priority, then fewest running jobs of the database, then submission
+	 * */
+	private boolean isBefore(ScheduledJob job, ScheduledJob other) {
+		int priority      = job.call.job.getPriority();
+		int otherPriority = other.call.job.getPriority();
+		if (priority != otherPriority)
+			return priority > otherPriority;
+		int share      = get(runningJobs, job.databaseKey);
+		int otherShare = get(runningJobs, other.databaseKey);
+		if (share != otherShare)
+			return share < otherShare;
+		return job.sequence < other.sequence;
+	}
+
+	private int getFreeConnections(String databaseKey) {
+		Integer cap = connectionCaps.get(databaseKey);
+		return (cap == null ? defaultConnectionCap : cap) - get(usedConnections, databaseKey);
+	}
+
+	private synchronized MetadataCache getMetadataCache(String databaseKey) {
+		MetadataCache metadata = metadataCaches.get(databaseKey);
+		if (metadata == null) {
+			metadata = new MetadataCache();
+			metadataCaches.put(databaseKey, metadata);
+		}
+		return metadata;
+	}
+
+	private static int get(Map<String, Integer> counts, String key) {
+		Integer count = counts.get(key);
+		return count == null ? 0 : count;
+	}
+
+	private static void add(Map<String, Integer> counts, String key, int delta) {
+		counts.put(key, get(counts, key) + delta);
+	}
+
+	/**
+	 * Export of a job on the connections it is given when started
+	 */
+	private class JobCall implements Callable<Void> {
+
+		private ExportJob job;
+		private int connections;
+
+		JobCall(ExportJob job) {
+			this.job         = job;
+			this.connections = 0;
+		}
+
+		public Void call() throws MainException {
+			ExportSettings jobSettings = settings.copy();
+			jobSettings.setPoolSize(connections);
+			try {
+				runJob(job, jobSettings, getMetadataCache(job.getDatabaseKey()));
+			} catch (MainException e) {
+				logger.error("Export job failed : " + job + " : " + e.getMessage());
+				throw e;
+			}
+			logger.info("Export job done : " + job);
+			return null;
+		}
+	}
+
+	/**
+	 * A submitted job, which holds the connections of its database once started
+	 */
+	private class ScheduledJob extends FutureTask<Void> {
+
+		private JobCall call;
+		private String databaseKey;
+		private long sequence;
+		private boolean started;
+
+		ScheduledJob(JobCall call, long sequence) {
+			super(call);
+			this.call        = call;
+			this.databaseKey = call.job.getDatabaseKey();
+			this.sequence    = sequence;
+			this.started     = false;
+		}
+
+		/*
+		 * The connections are released when the thread leaves the job, and not when it is done:
+		 * a job cancelled while it runs is done at once, but still uses its connections until it returns.
+		 * A job cancelled after it has been dispatched does not run, and is released here too.
+		 * */
+		@Override
+		public void run() {
+			try {
+				super.run();
+			} finally {
+				finished(this);
+			}
+		}
+
+		@Override
+		protected void done() {
+			if (isCancelled())
+				cancelled(this);
+		}
+	}
+}
@@ -0,0 +1,304 @@
+package main;
+
+import java.io.File;
+
+/**
+ * Settings of an XML export.
+ *
+ * <p>
+ * The default settings are read from the system properties prefixed with
+ * <code>rdbtoxml.</code>, e.g. <code>-Drdbtoxml.mappedRegistryThreshold=5000000</code>.
+ * </p>
+ */
+public class ExportSettings {
+
+	private static final String PREFIX = "rdbtoxml.";
+
+	/** Number of tuples of a table after which its tuple IDs are kept in a memory-mapped file. 0 to disable. **/
+	private long mappedRegistryThreshold;
+	/** Directory of the temporary files created during an export **/
+	private File tempDirectory;
+	/** Whether table data is streamed from forward-only result sets instead of being copied into memory **/
+	private boolean streaming;
+	/** Whether tuple IDs are assigned while scanning the table data, instead of in a separate key scan **/
+	private boolean singleScan;
+	/** Whether each relationship is joined once for all the tuples of a table, instead of once per tuple **/
+	private boolean relationshipPrefetch;
+	/** Whether relationships are streamed in the order of the parent tuples and merged with them **/
+	private boolean mergeJoin;
+	/** Number of parent tuples whose relationships are read with one IN list query. 0 to disable. **/
+	private int batchSize;
+	/** Whether each root subtree whose tables are ordered by key is exported with one outer union query **/
+	private boolean outerUnion;
+	/** Whether the strategy of each relationship is chosen from the table statistics instead of the settings above **/
+	private boolean edgePlanner;
+	/** Number of rows of a relationship up to which the planner prefetches it **/
+	private long prefetchRowLimit;
+	/** Maximum number of connections an export opens to the database **/
+	private int poolSize;
+	/** Number of connections which read the table data in parallel, in one consistent snapshot. 0 to read it on the session connection only. **/
+	private int extractionThreads;
+	/** Estimated number of rows of a table from which its scans are split into key ranges read in parallel. 0 to disable. **/
+	private long partitionRows;
+	/** Number of threads which print the tables of the document in parallel. 0 to print them one after the other. **/
+	private int printThreads;
+	/** Whether the rows are fetched, printed and written to the file by three threads connected by bounded queues **/
+	private boolean pipeline;
+	/** Whether the blocking tasks of the export run on virtual threads, when the JVM has them **/
+	private boolean virtualThreads;
+	/** Number of connections which read the metadata batches at once. 0 to read them on the session connection only. **/
+	private int metadataThreads;
+	/** Whether the XML schema is written by a thread of its own while the data is exported **/
+	private boolean concurrentSchema;
+
+	public ExportSettings() {
+		mappedRegistryThreshold = 0;
+		tempDirectory           = new File(System.getProperty("java.io.tmpdir"));
+		streaming               = false;
+		singleScan              = false;
+		relationshipPrefetch    = true;
+		mergeJoin               = false;
+		batchSize               = 0;
+		outerUnion              = false;
+		edgePlanner             = false;
+		prefetchRowLimit        = 1000000;
+		poolSize                = 8;
+		extractionThreads       = 0;
+		partitionRows           = 1000000;
+		printThreads            = 0;
+		pipeline                = false;
+		virtualThreads          = false;
+		metadataThreads         = 0;
+		concurrentSchema        = true;
+	}
+
+	/**
+	 * Creates the settings given by the system properties
+	 * @return	settings of an export
+	 */
+	public static ExportSettings fromSystemProperties() {
+		ExportSettings settings = new ExportSettings();
+		settings.setMappedRegistryThreshold(getLong("mappedRegistryThreshold", settings.getMappedRegistryThreshold()));
+		settings.setStreaming(getBoolean("streaming", settings.isStreaming()));
+		settings.setSingleScan(getBoolean("singleScan", settings.isSingleScan()));
+		settings.setRelationshipPrefetch(getBoolean("relationshipPrefetch", settings.isRelationshipPrefetch()));
+		settings.setMergeJoin(getBoolean("mergeJoin", settings.isMergeJoin()));
+		settings.setBatchSize((int) getLong("batchSize", settings.getBatchSize()));
+		settings.setOuterUnion(getBoolean("outerUnion", settings.isOuterUnion()));
+		settings.setEdgePlanner(getBoolean("edgePlanner", settings.isEdgePlanner()));
+		settings.setPrefetchRowLimit(getLong("prefetchRowLimit", settings.getPrefetchRowLimit()));
+		settings.setPoolSize((int) getLong("poolSize", settings.getPoolSize()));
+		settings.setExtractionThreads((int) getLong("extractionThreads", settings.getExtractionThreads()));
+		settings.setPartitionRows(getLong("partitionRows", settings.getPartitionRows()));
+		settings.setPrintThreads((int) getLong("printThreads", settings.getPrintThreads()));
+		settings.setPipeline(getBoolean("pipeline", settings.isPipeline()));
+		settings.setVirtualThreads(getBoolean("virtualThreads", settings.isVirtualThreads()));
+		settings.setMetadataThreads((int) getLong("metadataThreads", settings.getMetadataThreads()));
+		settings.setConcurrentSchema(getBoolean("concurrentSchema", settings.isConcurrentSchema()));
+		String tempDir = System.getProperty(PREFIX + "tempDir");
+		if (tempDir != null)
+			settings.setTempDirectory(new File(tempDir));
+		return settings;
+	}
+
+	/**
+	 * Copies the settings, so that the copy can be changed for one export
+	 * @return	a copy of the settings
+	 */
+	public ExportSettings copy() {
+		ExportSettings copy = new ExportSettings();
+		copy.mappedRegistryThreshold = mappedRegistryThreshold;
+		copy.tempDirectory           = tempDirectory;
+		copy.streaming               = streaming;
+		copy.singleScan              = singleScan;
+		copy.relationshipPrefetch    = relationshipPrefetch;
+		copy.mergeJoin               = mergeJoin;
+		copy.batchSize               = batchSize;
+		copy.outerUnion              = outerUnion;
+		copy.edgePlanner             = edgePlanner;
+		copy.prefetchRowLimit        = prefetchRowLimit;
+		copy.poolSize                = poolSize;
+		copy.extractionThreads       = extractionThreads;
+		copy.partitionRows           = partitionRows;
+		copy.printThreads            = printThreads;
+		copy.pipeline                = pipeline;
+		copy.virtualThreads          = virtualThreads;
+		copy.metadataThreads         = metadataThreads;
+		copy.concurrentSchema        = concurrentSchema;
+		return copy;
+	}
+
+	public long getMappedRegistryThreshold() {
+		return mappedRegistryThreshold;
+	}
+
+	public void setMappedRegistryThreshold(long threshold) {
+		this.mappedRegistryThreshold = threshold;
+	}
+
+	public boolean isMappedRegistryEnabled() {
+		return mappedRegistryThreshold > 0;
+	}
+
+	public File getTempDirectory() {
+		return tempDirectory;
+	}
+
+	public void setTempDirectory(File tempDirectory) {
+		this.tempDirectory = tempDirectory;
+	}
+
+	public boolean isStreaming() {
+		return streaming;
+	}
+
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	public boolean isSingleScan() {
+		return singleScan;
+	}
+
+	public void setSingleScan(boolean singleScan) {
+		this.singleScan = singleScan;
+	}
+
+	public boolean isRelationshipPrefetch() {
+		return relationshipPrefetch;
+	}
+
+	public void setRelationshipPrefetch(boolean relationshipPrefetch) {
+		this.relationshipPrefetch = relationshipPrefetch;
+	}
+
+	public boolean isMergeJoin() {
+		return mergeJoin;
+	}
+
+	public void setMergeJoin(boolean mergeJoin) {
+		this.mergeJoin = mergeJoin;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public boolean isOuterUnion() {
+		return outerUnion;
+	}
+
+	public void setOuterUnion(boolean outerUnion) {
+		this.outerUnion = outerUnion;
+	}
+
+	public boolean isEdgePlanner() {
+		return edgePlanner;
+	}
+
+	public void setEdgePlanner(boolean edgePlanner) {
+		this.edgePlanner = edgePlanner;
+	}
+
+	public long getPrefetchRowLimit() {
+		return prefetchRowLimit;
+	}
+
+	public void setPrefetchRowLimit(long prefetchRowLimit) {
+		this.prefetchRowLimit = prefetchRowLimit;
+	}
+
+	public int getPoolSize() {
+		return poolSize;
+	}
+
+	public void setPoolSize(int poolSize) {
+		this.poolSize = poolSize;
+	}
+
+	public int getExtractionThreads() {
+		return extractionThreads;
+	}
+
+	public void setExtractionThreads(int extractionThreads) {
+		this.extractionThreads = extractionThreads;
+	}
+
+	public boolean isParallelExtraction() {
+		return extractionThreads > 0;
+	}
+
+	public long getPartitionRows() {
+		return partitionRows;
+	}
+
+	public void setPartitionRows(long partitionRows) {
+		this.partitionRows = partitionRows;
+	}
+
+	public int getPrintThreads() {
+		return printThreads;
+	}
+
+	public void setPrintThreads(int printThreads) {
+		this.printThreads = printThreads;
+	}
+
+	public boolean isParallelPrinting() {
+		return printThreads > 0;
+	}
+
+	public boolean isPipeline() {
+		return pipeline;
+	}
+
+	public void setPipeline(boolean pipeline) {
+		this.pipeline = pipeline;
+	}
+
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+
+	public int getMetadataThreads() {
+		return metadataThreads;
+	}
+
+	public void setMetadataThreads(int metadataThreads) {
+		this.metadataThreads = metadataThreads;
+	}
+
+	public boolean isConcurrentSchema() {
+		return concurrentSchema;
+	}
+
+	public void setConcurrentSchema(boolean concurrentSchema) {
+		this.concurrentSchema = concurrentSchema;
+	}
+
+	private static boolean getBoolean(String name, boolean defaultValue) {
+		String value = System.getProperty(PREFIX + name);
+		if (value == null)
+			return defaultValue;
+		return Boolean.parseBoolean(value.trim());
+	}
+
+	private static long getLong(String name, long defaultValue) {
+		String value = System.getProperty(PREFIX + name);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+}
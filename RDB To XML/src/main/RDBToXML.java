@@ -1,11 +1,19 @@
 package main;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import xml.XMLDataGenerator;
 import xml.XMLSchemaGenerator;
 import database.DBConnector;
+import database.DBContext;
+import database.MetadataCache;
 import erd.ERDBuilder;
 import erd.ErdNode;
 import orass.ORASSBuilder;
@@ -13,18 +21,37 @@ import orass.ORASSNode;
 
 public class RDBToXML {
 	
-	private DBConnector dbc = DBConnector.getInstance();
+	private DBContext context;
 	private ERDBuilder erdb;
 	private ORASSBuilder orassb;
 	private List<ORASSNode> orassRoot;
+	private ExportSettings settings;
+	
+	public RDBToXML() {
+		this(ExportSettings.fromSystemProperties());
+	}
+	
+	public RDBToXML(ExportSettings settings) {
+		this.settings = settings;
+	}
 	
 	public void connectToDB(String address, String port, String dbName, String username, String password) throws MainException {	
-		dbc.openConnection(address, port, dbName, username, password);
+		connectToDB(address, port, dbName, username, password, new MetadataCache());
+	}
+	
+	public void connectToDB(String address, String port, String dbName, String username, String password, MetadataCache metadata) throws MainException {	
+		closeConnection();
+		context = DBConnector.openContext(address, port, dbName, username, password, settings.getPoolSize(), metadata);
 	}
 	
 	// ERD
 	public void translateToERD() throws MainException {
-		erdb = new ERDBuilder();
+		TaskRunner runner = null;
+		if (settings.getMetadataThreads() > 0) {
+			// The session connection is kept for the other queries
+			runner = new TaskRunner(settings.isVirtualThreads(), Math.min(settings.getMetadataThreads(), settings.getPoolSize() - 1));
+		}
+		erdb = new ERDBuilder(context.getDBAccess(), runner);
 		erdb.buildERD();
 	}
 	
@@ -46,7 +73,7 @@ public class RDBToXML {
 	
 	// ORA-SS
 	public void translateToORASS() throws MainException {
-		orassb = new ORASSBuilder(erdb.getEntityTypes(), erdb.getRelationshipTypes());
+		orassb = new ORASSBuilder(context.getDBAccess(), erdb.getEntityTypes(), erdb.getRelationshipTypes());
 	}
 	
 	public void buildORASS(ErdNode root) throws MainException {
@@ -63,16 +90,84 @@ public class RDBToXML {
 	
 	// XML
 	public void translateToXML(String dbName, String xmlFileName, Map<String, List<String>> nrels) throws MainException {
-		
+		// Both generators only read the ORA-SS tree and the n-ary relationships
+		Map<String, List<String>> sharedNrels = freeze(nrels);
 		XMLSchemaGenerator schemaGen = new XMLSchemaGenerator();
-		schemaGen.generate(dbName, xmlFileName, orassRoot, nrels);
-		
-		XMLDataGenerator dataGen = new XMLDataGenerator();
-		dataGen.generate(dbName, xmlFileName, orassRoot, nrels);
-		dbc.closeConnection();	
+		XMLDataGenerator dataGen = new XMLDataGenerator(context, settings);
+		if (!settings.isConcurrentSchema()) {
+			schemaGen.generate(dbName, xmlFileName, orassRoot, sharedNrels);
+			dataGen.generate(dbName, xmlFileName, orassRoot, sharedNrels);
+			closeConnection();
+			return;
+		}
+
+		FutureTask<Void> schema = startSchema(schemaGen, dbName, xmlFileName, sharedNrels);
+		try {
+			dataGen.generate(dbName, xmlFileName, orassRoot, sharedNrels);
+		} catch (MainException e) {
+			// An error of the data export is thrown in place of an error of the schema
+			try {
+				waitForSchema(schema);
+			} catch (MainException schemaError) {
+				schemaError.printStackTrace();
+			}
+			closeConnection();
+			throw e;
+		}
+		try {
+			waitForSchema(schema);
+		} finally {
+			closeConnection();
+		}
 	}	
+
+	/*
+	 * Writes the XML schema on a thread of its own. The schema is built from the ORA-SS tree only,
+	 * so it does not use the database connections of the data export.
+	 * */
+	private FutureTask<Void> startSchema(final XMLSchemaGenerator schemaGen, final String dbName, final String xmlFileName, final Map<String, List<String>> nrels) {
+		FutureTask<Void> schema = new FutureTask<Void>(new Callable<Void>() {
+			public Void call() throws MainException {
+				schemaGen.generate(dbName, xmlFileName, orassRoot, nrels);
+				return null;
+			}
+		});
+		Thread thread = new Thread(schema, "xsd-writer");
+		thread.setDaemon(true);
+		thread.start();
+		return schema;
+	}
+
+	private void waitForSchema(FutureTask<Void> schema) throws MainException {
+		try {
+			schema.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MainException("Interrupted while writing the XML schema.");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof MainException)
+				throw (MainException) e.getCause();
+			throw new MainException("Failed to write the XML schema : " + e.getCause());
+		}
+	}
+
+	/*
+	 * Read-only copy of the n-ary relationships, shared by the generators
+	 * */
+	private Map<String, List<String>> freeze(Map<String, List<String>> nrels) {
+		if (nrels == null)
+			return null;
+		Map<String, List<String>> frozen = new LinkedHashMap<String, List<String>>();
+		for (Map.Entry<String, List<String>> nrel : nrels.entrySet()) {
+			frozen.put(nrel.getKey(), Collections.unmodifiableList(new ArrayList<String>(nrel.getValue())));
+		}
+		return Collections.unmodifiableMap(frozen);
+	}
 	
 	public void closeConnection() throws MainException {
-		dbc.closeConnection();
+		if (context != null) {
+			context.close();
+			context = null;
+		}
 	}
 }
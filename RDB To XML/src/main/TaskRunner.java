@@ -0,0 +1,169 @@
+package main;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Runs blocking tasks, e.g. queries, on many threads at once.
+ *
+ * <p>
+ * On a JVM with virtual threads each task gets a virtual thread of its own, so that
+ * hundreds of tasks waiting for the database cost no more than a few platform threads.
+ * The virtual thread executor is looked up by reflection, so the export still runs on
+ * older JVMs, where a pool of platform threads is used instead. At most
+ * <code>permits</code> tasks run at once, usually the number of free connections.
+ * </p>
+ */
+public class TaskRunner {
+
+	private static Logger logger = Logger.getLogger(TaskRunner.class);
+	private static volatile Boolean hasVirtualThreads = null;
+
+	private boolean useVirtualThreads;
+	private int permits;
+
+	/**
+	 * @param useVirtualThreads		whether virtual threads are used when the JVM has them
+	 * @param permits				maximum number of tasks running at once
+	 */
+	public TaskRunner(boolean useVirtualThreads, int permits) {
+		this.useVirtualThreads = useVirtualThreads;
+		this.permits           = Math.max(1, permits);
+	}
+
+	public int getPermits() {
+		return permits;
+	}
+
+	/**
+	 * Runs the tasks and waits for all of them
+	 * @param tasks				the tasks
+	 * @return					the result of each task, in the order of the tasks
+	 * @throws MainException	the first error of a task, in the order of the tasks
+	 */
+	public <T> List<T> runAll(List<Callable<T>> tasks) throws MainException {
+		List<T> results = new ArrayList<T>(tasks.size());
+		if (tasks.size() == 1) {
+			results.add(call(tasks.get(0)));
+			return results;
+		}
+		final Semaphore running = new Semaphore(permits);
+		ExecutorService executor = newExecutor(useVirtualThreads, Math.min(permits, tasks.size()));
+		List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+		try {
+			for (int i = 0; i < tasks.size(); i++) {
+				final Callable<T> task = tasks.get(i);
+				futures.add(executor.submit(new Callable<T>() {
+					public T call() throws Exception {
+						running.acquire();
+						try {
+							return task.call();
+						} finally {
+							running.release();
+						}
+					}
+				}));
+			}
+			for (int i = 0; i < futures.size(); i++) {
+				results.add(getResult(futures.get(i)));
+			}
+			return results;
+		} finally {
+			shutdownAndWait(executor, futures);
+		}
+	}
+
+	/**
+	 * Cancels the tasks which have not ended, and waits until the threads of the executor have left them.
+	 * A task blocked in a query may ignore the interruption, and the caller may release what the task
+	 * still reads, e.g. the connections or the mapped tuple ID files, so this waits until it returns.
+	 * @param executor	the executor, which is shut down
+	 * @param futures	the tasks submitted to the executor
+	 */
+	public static void shutdownAndWait(ExecutorService executor, List<? extends Future<?>> futures) {
+		for (int i = 0; i < futures.size(); i++) {
+			futures.get(i).cancel(true);
+		}
+		executor.shutdownNow();
+		boolean interrupted = false;
+		try {
+			while (!executor.isTerminated()) {
+				try {
+					if (!executor.awaitTermination(60, TimeUnit.SECONDS))
+						logger.info("Waiting for the tasks which are still running");
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Executor of blocking tasks
+	 * @param useVirtualThreads		whether a virtual thread per task is used when the JVM has them
+	 * @param threadCount			number of platform threads otherwise
+	 * @return						the executor, to be shut down by the caller
+	 */
+	public static ExecutorService newExecutor(boolean useVirtualThreads, int threadCount) {
+		if (useVirtualThreads) {
+			ExecutorService executor = newVirtualThreadExecutor();
+			if (executor != null)
+				return executor;
+		}
+		return Executors.newFixedThreadPool(Math.max(1, threadCount));
+	}
+
+	/*
+	 * Executors.newVirtualThreadPerTaskExecutor() of Java 21, or null on older JVMs
+	 * */
+	private static ExecutorService newVirtualThreadExecutor() {
+		if (Boolean.FALSE.equals(hasVirtualThreads))
+			return null;
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			ExecutorService executor = (ExecutorService) factory.invoke(null);
+			hasVirtualThreads = Boolean.TRUE;
+			return executor;
+		} catch (Exception e) {
+			logger.info("Virtual threads are not available, platform threads are used");
+			hasVirtualThreads = Boolean.FALSE;
+			return null;
+		}
+	}
+
+	private static <T> T call(Callable<T> task) throws MainException {
+		try {
+			return task.call();
+		} catch (MainException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new MainException("Task failed : " + e);
+		}
+	}
+
+	private static <T> T getResult(Future<T> result) throws MainException {
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MainException("Interrupted while waiting for a task.");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof MainException)
+				throw (MainException) e.getCause();
+			throw new MainException("Task failed : " + e.getCause());
+		}
+	}
+}
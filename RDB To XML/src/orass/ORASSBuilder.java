@@ -24,11 +24,11 @@ public class ORASSBuilder{
 	private DBAccess dbCache;
 	private Logger logger = Logger.getLogger(ORASSBuilder.class);
 	
-	public ORASSBuilder(Map<String, ErdNode> erdEntities, Map<String, ErdNode> erdRels) throws MainException{
+	public ORASSBuilder(DBAccess dbAccess, Map<String, ErdNode> erdEntities, Map<String, ErdNode> erdRels) throws MainException{
 		entities = erdEntities;
 		rels = erdRels;
 		nodes = new HashMap<String, ORASSNode>();
-		dbCache = DBAccess.getInstance();
+		dbCache = dbAccess;
 		//isaRels = new HashMap<ORASSNode, ORASSNode>();
 		processedNodes = new ArrayList<String>();
 		erdnodes = new HashMap<String, ErdNode>();
@@ -0,0 +1,139 @@
+package xml;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import main.ExportSettings;
+import main.MainException;
+
+import org.apache.log4j.Logger;
+
+import database.DBAccess;
+
+/**
+ * Chooses how the references of each relationship are read, from the table and index statistics of the server.
+ *
+ * <p>
+ * The cost of a strategy is estimated in rows read, with a fixed cost for each query sent.
+ * A join for each parent tuple is chosen when the parent table is small and the join column is indexed.
+ * Otherwise the relationship is prefetched if it fits in {@link ExportSettings#getPrefetchRowLimit()} rows,
+ * merged if the parent table is printed in key order, and read in batches if the join column is indexed.
+ * A batch holds consecutive tuples of the key scan, so it is only read for a parent table printed in key order :
+ * otherwise almost every parent tuple would read a batch of its own, and a join for each tuple is cheaper.
+ * </p>
+ */
+public class EdgePlanner {
+
+	/** Cost of sending one query, in rows read **/
+	static final long QUERY_COST = 100;
+	/** Number of parent tuples of a batch if no batch size is set **/
+	public static final int DEFAULT_BATCH_SIZE = 500;
+
+	private DBAccess dbCache;
+	private ExportSettings settings;
+	private Map<String, Long> rowCounts;
+	private Logger logger = Logger.getLogger(EdgePlanner.class);
+
+	public EdgePlanner(DBAccess dbCache, ExportSettings settings) {
+		this.dbCache   = dbCache;
+		this.settings  = settings;
+		this.rowCounts = new HashMap<String, Long>();
+	}
+
+	/**
+	 * Chooses the strategy of a relationship
+	 * @param edgeName			name of the relationship in the log
+	 * @param parentTable		original table of the parent node
+	 * @param fromTables		tables joined by the relationship
+	 * @param nodeRels			join conditions of the relationship
+	 * @param isOrderedByKey	whether the parent table is printed in the order of its primary key
+	 * @param canMerge			whether the relationship can be streamed, false in a snapshot
+	 * @return					the chosen strategy
+	 * @throws MainException	if the statistics cannot be read
+	 */
+	public EdgeStrategy plan(String edgeName, String parentTable, List<String> fromTables, List<NodeRelationship> nodeRels, boolean isOrderedByKey, boolean canMerge) throws MainException {
+		long parentRows = getRowCount(parentTable);
+		long joinRows = 0;
+		for (int i = 0; i < fromTables.size(); i++) {
+			if (!fromTables.get(i).equals(parentTable))
+				joinRows = Math.max(joinRows, getRowCount(fromTables.get(i)));
+		}
+		if (parentRows < 0 || joinRows < 0) {
+			logger.info("Plan of " + edgeName + ": " + EdgeStrategy.PREFETCH + " (no statistics)");
+			return EdgeStrategy.PREFETCH;
+		}
+
+		long cardinality = getJoinCardinality(parentTable, nodeRels);
+		EdgeStrategy strategy = choose(parentRows, joinRows, cardinality, settings.getPrefetchRowLimit(), isOrderedByKey, canMerge);
+		logger.info("Plan of " + edgeName + ": " + strategy + " (parent rows: " + parentRows + ", relationship rows: " + joinRows + ", join cardinality: " + cardinality
+				+ ", queries: " + getQueryCount(strategy, parentRows, getBatchSize(), isOrderedByKey) + ")");
+		return strategy;
+	}
+
+	/*
+	 * Strategy of a relationship from the statistics, see the class comment
+	 * */
+	static EdgeStrategy choose(long parentRows, long joinRows, long cardinality, long prefetchRowLimit, boolean isOrderedByKey, boolean canMerge) {
+		if (cardinality > 0 && parentRows * (QUERY_COST + joinRows / cardinality) < joinRows)
+			return EdgeStrategy.JOIN;
+		if (joinRows <= prefetchRowLimit)
+			return EdgeStrategy.PREFETCH;
+		if (isOrderedByKey && canMerge)
+			return EdgeStrategy.MERGE;
+		// Without an index every batch or join would scan the relationship
+		if (cardinality <= 0)
+			return EdgeStrategy.PREFETCH;
+		return isOrderedByKey ? EdgeStrategy.BATCH : EdgeStrategy.JOIN;
+	}
+
+	/**
+	 * Number of queries a strategy sends for the tuples of the parent table
+	 * @param strategy			the strategy
+	 * @param parentRows		number of tuples of the parent table
+	 * @param batchSize			number of parent tuples of a batch
+	 * @param isOrderedByKey	whether the parent table is printed in the order of its primary key
+	 * @return					the number of queries, at worst for batches of a parent printed in another order
+	 */
+	static long getQueryCount(EdgeStrategy strategy, long parentRows, int batchSize, boolean isOrderedByKey) {
+		if (strategy == EdgeStrategy.JOIN)
+			return parentRows;
+		if (strategy == EdgeStrategy.BATCH)
+			return isOrderedByKey ? (parentRows + batchSize - 1) / batchSize : parentRows;
+		return 1;
+	}
+
+	/**
+	 * Number of parent tuples of a batch
+	 * @return	the batch size of the settings, or {@link #DEFAULT_BATCH_SIZE} if none is set
+	 */
+	public int getBatchSize() {
+		return settings.getBatchSize() > 0 ? settings.getBatchSize() : DEFAULT_BATCH_SIZE;
+	}
+
+	private long getRowCount(String tableName) throws MainException {
+		Long rowCount = rowCounts.get(tableName);
+		if (rowCount == null) {
+			rowCount = dbCache.getTableRowCount(tableName);
+			rowCounts.put(tableName, rowCount);
+		}
+		return rowCount;
+	}
+
+	/*
+	 * Cardinality of the index on the columns which join the parent table to the relationship,
+	 * i.e. the number of parent tuples the relationship can be looked up by. -1 if they are not indexed.
+	 * */
+	private long getJoinCardinality(String parentTable, List<NodeRelationship> nodeRels) throws MainException {
+		for (int i = 0; i < nodeRels.size(); i++) {
+			NodeRelationship rel = nodeRels.get(i);
+			if (rel.getOriginalTable1().equals(parentTable) && !rel.getOriginalTable2().equals(parentTable)) {
+				return dbCache.getIndexCardinality(rel.getOriginalTable2(), rel.getCols2().get(0));
+			}
+			if (rel.getOriginalTable2().equals(parentTable) && !rel.getOriginalTable1().equals(parentTable)) {
+				return dbCache.getIndexCardinality(rel.getOriginalTable1(), rel.getCols1().get(0));
+			}
+		}
+		return -1;
+	}
+}
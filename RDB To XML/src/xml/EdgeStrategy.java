@@ -0,0 +1,15 @@
+package xml;
+
+/**
+ * Ways of reading the references printed for a relationship between two ORASS nodes.
+ */
+public enum EdgeStrategy {
+	/** One join query for each tuple of the parent table **/
+	JOIN,
+	/** One join for all the tuples of the parent table, kept in a hash index **/
+	PREFETCH,
+	/** One join streamed in the order of the parent tuples and merged with them **/
+	MERGE,
+	/** One join for each batch of consecutive parent tuples, selected with an IN list **/
+	BATCH
+}
@@ -0,0 +1,31 @@
+package xml;
+
+/**
+ * Source without any rows
+ */
+public class EmptyRowSource implements RowSource {
+
+	@Override
+	public boolean next() {
+		return false;
+	}
+
+	@Override
+	public String getString(String col) {
+		return null;
+	}
+
+	@Override
+	public long getLong(String col) {
+		return 0;
+	}
+
+	@Override
+	public boolean wasNull() {
+		return true;
+	}
+
+	@Override
+	public void close() {
+	}
+}
@@ -0,0 +1,116 @@
+package xml;
+
+/**
+ * Open addressing hash map from long keys to int values.
+ *
+ * <p>
+ * Keys and values are kept in two primitive arrays so that neither a lookup nor
+ * an insertion boxes the key. The value 0 marks an empty slot, hence only
+ * non-zero values can be stored and {@link #get(long)} returns 0 for a missing key.
+ * </p>
+ */
+public class LongIntMap {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private long[] keys;
+	private int[] values;
+	private int size;
+
+	public LongIntMap() {
+		this(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * @param expectedSize	number of entries the map should hold without growing
+	 */
+	public LongIntMap(int expectedSize) {
+		int capacity = INITIAL_CAPACITY;
+		while (capacity < expectedSize * 2) {
+			capacity <<= 1;
+		}
+		keys   = new long[capacity];
+		values = new int[capacity];
+		size   = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the value mapped to a key
+	 * @param key	the key to look up
+	 * @return		the value of the key, or 0 if the key is not in the map
+	 */
+	public int get(long key) {
+		return values[findSlot(keys, values, key)];
+	}
+
+	/**
+	 * Maps a key to a value if the key is not in the map yet
+	 * @param key		the key to add
+	 * @param value		non-zero value of the key
+	 * @return			the value the key is mapped to after the call
+	 */
+	public int putIfAbsent(long key, int value) {
+		if (value == 0)
+			throw new IllegalArgumentException("LongIntMap cannot hold the value 0");
+
+		if ((size + 1) * 2 > keys.length)
+			rehash(keys.length * 2);
+
+		int slot = findSlot(keys, values, key);
+		if (values[slot] == 0) {
+			keys[slot]   = key;
+			values[slot] = value;
+			size++;
+		}
+		return values[slot];
+	}
+
+	/*
+	 * Slot accessors used to copy the map. A slot is empty when its value is 0.
+	 * */
+	int slotCount() {
+		return keys.length;
+	}
+
+	long keyAt(int slot) {
+		return keys[slot];
+	}
+
+	int valueAt(int slot) {
+		return values[slot];
+	}
+
+	private void rehash(int capacity) {
+		long[] newKeys = new long[capacity];
+		int[] newValues = new int[capacity];
+		for (int i = 0; i < keys.length; i++) {
+			if (values[i] != 0) {
+				int slot = findSlot(newKeys, newValues, keys[i]);
+				newKeys[slot]   = keys[i];
+				newValues[slot] = values[i];
+			}
+		}
+		keys   = newKeys;
+		values = newValues;
+	}
+
+	private static int findSlot(long[] keys, int[] values, long key) {
+		int mask = keys.length - 1;
+		int slot = mix(key) & mask;
+		while (values[slot] != 0 && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	static int mix(long key) {
+		key ^= (key >>> 33);
+		key *= 0xff51afd7ed558ccdL;
+		key ^= (key >>> 33);
+		return (int) key;
+	}
+}
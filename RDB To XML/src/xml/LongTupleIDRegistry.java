@@ -0,0 +1,127 @@
+package xml;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import main.MainException;
+
+/**
+ * Registry of the tuple IDs of a table whose primary key is a single integer column.
+ *
+ * <p>
+ * The key is read from the result set with <code>getLong</code> and mapped to the
+ * position of the tuple with a {@link LongIntMap}, so neither the registration nor
+ * the lookup of a tuple creates a string or a list for its key.
+ * </p>
+ */
+public class LongTupleIDRegistry extends TupleIDRegistry {
+
+	private LongIntMap ordinals;
+	private long[] keysByOrdinal;
+
+	public LongTupleIDRegistry(String tableName) {
+		super(tableName);
+		ordinals = new LongIntMap();
+	}
+
+	@Override
+	public int size() {
+		return ordinals.size();
+	}
+
+	/**
+	 * Registers the primary key of a tuple and gives it the next tuple ID.
+	 * @param key	primary key value of the tuple
+	 * @return		the ID of the tuple
+	 */
+	public String register(long key) {
+		int size = ordinals.size();
+		int ordinal = ordinals.putIfAbsent(key, size + 1);
+		if (ordinals.size() != size)
+			keysByOrdinal = null;
+		return toID(ordinal);
+	}
+
+	/**
+	 * Returns the ID of the tuple with the given primary key
+	 * @param key	primary key value of the tuple
+	 * @return		the ID of the tuple, or an empty string if no such tuple is registered
+	 */
+	public String getID(long key) {
+		return toID(getOrdinal(key));
+	}
+
+	/**
+	 * Returns the position of the tuple with the given primary key in the key scan
+	 * @param key	primary key value of the tuple
+	 * @return		the position of the tuple, starting from 1. 0 if no such tuple is registered
+	 */
+	public int getOrdinal(long key) {
+		return ordinals.get(key);
+	}
+
+	/**
+	 * Reads the key from the cursor with getLong, without building a string for it
+	 */
+	@Override
+	public String getID(RowCursor data, List<String> keyCols) throws MainException {
+		return toID(getOrdinal(data, keyCols));
+	}
+
+	@Override
+	public int getOrdinal(RowCursor data, List<String> keyCols) throws MainException {
+		if (keyCols.size() != 1)
+			return super.getOrdinal(data, keyCols);
+		long key = data.getLong(data.indexOf(keyCols.get(0)));
+		return data.wasNull() ? 0 : getOrdinal(key);
+	}
+
+	@Override
+	public TupleIDRegistry toMappedRegistry(File directory) throws IOException {
+		MappedLongTupleIDRegistry mapped = new MappedLongTupleIDRegistry(getTableName(), directory, ordinals.size() * 2L);
+		for (int i = 0; i < ordinals.slotCount(); i++) {
+			if (ordinals.valueAt(i) != 0)
+				mapped.put(ordinals.keyAt(i), ordinals.valueAt(i));
+		}
+		return mapped;
+	}
+
+	@Override
+	public String register(List<String> keyVals) {
+		return register(Long.parseLong(keyVals.get(0)));
+	}
+
+	/**
+	 * Returns the primary key of the tuple at a given position of the key scan
+	 * @param ordinal	position of the tuple, starting from 1
+	 * @return			the primary key of the tuple
+	 */
+	public long getKey(int ordinal) {
+		if (keysByOrdinal == null) {
+			keysByOrdinal = new long[ordinals.size()];
+			for (int i = 0; i < ordinals.slotCount(); i++) {
+				if (ordinals.valueAt(i) != 0)
+					keysByOrdinal[ordinals.valueAt(i) - 1] = ordinals.keyAt(i);
+			}
+		}
+		return keysByOrdinal[ordinal - 1];
+	}
+
+	@Override
+	public List<String> getKeyVals(int ordinal, int keyColumnCount) {
+		return Collections.singletonList(Long.toString(getKey(ordinal)));
+	}
+
+	@Override
+	public int getOrdinal(List<String> keyVals) {
+		if (keyVals.size() != 1 || keyVals.get(0) == null)
+			return 0;
+		try {
+			return getOrdinal(Long.parseLong(keyVals.get(0)));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,233 @@
+package xml;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import main.MainException;
+
+/**
+ * Forward-only cursor over the rows of a table which also keeps the previous and the next row.
+ *
+ * <p>
+ * XMLDataGenerator compares a row with its neighbours to know when a tuple starts
+ * and ends. The cursor reads one row ahead of the current one and remembers the
+ * row before it, so the underlying rows only have to be read forward and can come
+ * from a streamed result set, a CachedRowSet or a RowSpool.
+ * </p>
+ *
+ * <p>
+ * The three rows are preallocated slots which are reused as the cursor moves, and
+ * the key of the current row is returned as a view over its slot, so moving the
+ * cursor and comparing rows does not create any objects apart from the values
+ * read from the rows. Columns are addressed by the index returned by indexOf.
+ * </p>
+ */
+public class LookaheadCursor {
+
+	private RowSource results;
+	private String[] columns;
+	private int[] keyIndexes;
+	private String longKeyCol;
+	private Map<String, Integer> columnIndexes;
+
+	private Row previous;
+	private Row current;
+	private Row next;
+	private boolean hasPrevious;
+	private boolean hasCurrent;
+	private boolean hasNext;
+	private boolean isStarted;
+	private List<String> keyView;
+
+	/**
+	 * @param results		rows of the table
+	 * @param keyCols		primary key columns of the table
+	 * @param valueCols		other columns that are read from the rows
+	 * @param isLongKey		if the key is a single integer column to be read with getLong
+	 */
+	public LookaheadCursor(RowSource results, List<String> keyCols, List<String> valueCols, boolean isLongKey) {
+		List<String> allCols = new ArrayList<String>(keyCols);
+		for (int i = 0; i < valueCols.size(); i++) {
+			if (!allCols.contains(valueCols.get(i)))
+				allCols.add(valueCols.get(i));
+		}
+
+		this.results       = results;
+		this.columns       = allCols.toArray(new String[allCols.size()]);
+		this.columnIndexes = new HashMap<String, Integer>();
+		for (int i = 0; i < columns.length; i++) {
+			columnIndexes.put(columns[i], i);
+		}
+		this.keyIndexes = new int[keyCols.size()];
+		for (int i = 0; i < keyIndexes.length; i++) {
+			keyIndexes[i] = i;
+		}
+		this.longKeyCol = isLongKey ? keyCols.get(0) : null;
+		this.previous   = new Row(columns.length);
+		this.current    = new Row(columns.length);
+		this.next       = new Row(columns.length);
+		this.isStarted  = false;
+		this.keyView    = new KeyView();
+	}
+
+	/**
+	 * Moves to the next row
+	 * @return	false if there are no more rows
+	 */
+	public boolean next() throws MainException {
+		if (!isStarted) {
+			hasNext   = read(next);
+			isStarted = true;
+		}
+		Row spare = previous;
+		previous    = current;
+		hasPrevious = hasCurrent;
+		current     = next;
+		hasCurrent  = hasNext;
+		next        = spare;
+		if (!hasCurrent) {
+			hasNext = false;
+			return false;
+		}
+		hasNext = read(next);
+		return true;
+	}
+
+	/**
+	 * @return	true if the current row is not the last row
+	 */
+	public boolean hasNext() {
+		return hasNext;
+	}
+
+	/**
+	 * @return	true if the current row is not the first row
+	 */
+	public boolean hasPrevious() {
+		return hasPrevious;
+	}
+
+	/**
+	 * Index of a column read by the cursor
+	 * @param col	name of the column
+	 * @return		the index to read the column with
+	 */
+	public int indexOf(String col) {
+		Integer index = columnIndexes.get(col);
+		if (index == null)
+			throw new IllegalArgumentException("Column " + col + " is not read by the cursor");
+		return index;
+	}
+
+	/**
+	 * Value of a column in the current row
+	 * @return	the value, null if it is SQL NULL
+	 */
+	public String getString(int index) {
+		return current.values[index];
+	}
+
+	public String getString(String col) {
+		return getString(indexOf(col));
+	}
+
+	/**
+	 * Value of a column in the previous row
+	 * @return	the value, null if it is SQL NULL
+	 */
+	public String getPreviousString(int index) {
+		return previous.values[index];
+	}
+
+	public String getPreviousString(String col) {
+		return getPreviousString(indexOf(col));
+	}
+
+	/**
+	 * @return	true if the column has the same value in the previous and the current row
+	 */
+	public boolean isSameAsPrevious(int index) {
+		return hasPrevious && isSameValue(previous.values[index], current.values[index]);
+	}
+
+	/**
+	 * @return	true if the cursor reads the key as a long
+	 */
+	public boolean isLongKey() {
+		return longKeyCol != null;
+	}
+
+	/**
+	 * Key of the current row, when the cursor reads the key as a long
+	 */
+	public long getLongKey() {
+		return current.longKey;
+	}
+
+	/**
+	 * Key values of the current row, in the order of the key columns.
+	 * The list is a view over the current row and changes when the cursor moves.
+	 */
+	public List<String> getKeyVals() {
+		return keyView;
+	}
+
+	/**
+	 * @return	true if the next row has the same key as the current row
+	 */
+	public boolean isNextKeySame() {
+		if (!hasNext)
+			return false;
+		if (longKeyCol != null)
+			return next.longKey == current.longKey;
+		for (int i = 0; i < keyIndexes.length; i++) {
+			if (!isSameValue(next.values[keyIndexes[i]], current.values[keyIndexes[i]]))
+				return false;
+		}
+		return true;
+	}
+
+	static boolean isSameValue(String val1, String val2) {
+		return val1 == null ? val2 == null : val1.equals(val2);
+	}
+
+	/**
+	 * Reads the next row of the source into 'row'
+	 * @return	false if there are no more rows
+	 */
+	private boolean read(Row row) throws MainException {
+		if (!results.next())
+			return false;
+		for (int i = 0; i < columns.length; i++) {
+			row.values[i] = results.getString(columns[i]);
+		}
+		if (longKeyCol != null)
+			row.longKey = results.getLong(longKeyCol);
+		return true;
+	}
+
+	private static class Row {
+		private String[] values;
+		private long longKey;
+
+		private Row(int columnCount) {
+			values = new String[columnCount];
+		}
+	}
+
+	private class KeyView extends AbstractList<String> {
+
+		@Override
+		public String get(int index) {
+			return current.values[keyIndexes[index]];
+		}
+
+		@Override
+		public int size() {
+			return keyIndexes.length;
+		}
+	}
+}
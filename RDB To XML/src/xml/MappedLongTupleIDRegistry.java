@@ -0,0 +1,177 @@
+package xml;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Registry of the tuple IDs of a table with a single integer key, kept in a memory-mapped file.
+ *
+ * <p>
+ * The hash table has the same layout as {@link LongIntMap}, but its slots are
+ * stored outside the heap: each slot takes 16 bytes, the key followed by the
+ * position of the tuple (0 for an empty slot). The table is rebuilt in a file of
+ * twice the size when it is three quarters full.
+ * </p>
+ */
+public class MappedLongTupleIDRegistry extends LongTupleIDRegistry {
+
+	private static final int SLOT_SIZE = 16;
+	private static final int MIN_CAPACITY = 1 << 16;
+
+	private File directory;
+	private MappedRegion slots;
+	private MappedRegion ordinalIndex;
+	private long capacity;
+	private int size;
+
+	/**
+	 * @param tableName			name of the ORASS node
+	 * @param directory			directory of the mapped file
+	 * @param expectedSize		number of tuples the registry should hold without growing
+	 * @throws IOException		if the mapped file cannot be created
+	 */
+	public MappedLongTupleIDRegistry(String tableName, File directory, long expectedSize) throws IOException {
+		super(tableName);
+		this.directory = directory;
+		this.capacity  = MIN_CAPACITY;
+		while (capacity * 3 / 4 < expectedSize) {
+			capacity <<= 1;
+		}
+		this.slots = createSlots(capacity);
+		this.size  = 0;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean isMapped() {
+		return true;
+	}
+
+	@Override
+	public String register(long key) {
+		if ((size + 1) > capacity * 3 / 4)
+			grow();
+		long slot = findSlot(slots, capacity, key);
+		int ordinal = slots.getInt(slot + 8);
+		if (ordinal == 0) {
+			ordinal = ++size;
+			closeOrdinalIndex();
+			slots.putLong(slot, key);
+			slots.putInt(slot + 8, ordinal);
+		}
+		return toID(ordinal);
+	}
+
+	@Override
+	public int getOrdinal(long key) {
+		return slots.getInt(findSlot(slots, capacity, key) + 8);
+	}
+
+	/**
+	 * Adds a tuple with a known position, used when moving an on-heap registry to the mapped file
+	 */
+	void put(long key, int ordinal) {
+		long slot = findSlot(slots, capacity, key);
+		if (slots.getInt(slot + 8) == 0) {
+			slots.putLong(slot, key);
+			slots.putInt(slot + 8, ordinal);
+			size++;
+		}
+	}
+
+	@Override
+	public long getKey(int ordinal) {
+		if (ordinalIndex == null)
+			ordinalIndex = buildOrdinalIndex();
+		return ordinalIndex.getLong((ordinal - 1) * 8L);
+	}
+
+	@Override
+	public List<String> getKeyVals(int ordinal, int keyColumnCount) {
+		return Collections.singletonList(Long.toString(getKey(ordinal)));
+	}
+
+	@Override
+	public void close() {
+		slots.close();
+		closeOrdinalIndex();
+	}
+
+	/**
+	 * Maps the position of each tuple to its key
+	 */
+	private MappedRegion buildOrdinalIndex() {
+		try {
+			long bytes = Math.max(size * 8L, 8L);
+			int chunkShift = Math.min(64 - Long.numberOfLeadingZeros(bytes - 1), 30);
+			MappedRegion index = new MappedRegion(directory, getTableName() + "_ordinals", chunkShift);
+			index.ensureCapacity(bytes);
+			for (long i = 0; i < capacity; i++) {
+				long pos = i * SLOT_SIZE;
+				int ordinal = slots.getInt(pos + 8);
+				if (ordinal != 0)
+					index.putLong((ordinal - 1) * 8L, slots.getLong(pos));
+			}
+			return index;
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot create the key index of " + getTableName() + " : " + e.getMessage());
+		}
+	}
+
+	private void closeOrdinalIndex() {
+		if (ordinalIndex != null) {
+			ordinalIndex.close();
+			ordinalIndex = null;
+		}
+	}
+
+	private void grow() {
+		long newCapacity = capacity << 1;
+		try {
+			MappedRegion newSlots = createSlots(newCapacity);
+			for (long i = 0; i < capacity; i++) {
+				long pos = i * SLOT_SIZE;
+				int ordinal = slots.getInt(pos + 8);
+				if (ordinal != 0) {
+					long key = slots.getLong(pos);
+					long newSlot = findSlot(newSlots, newCapacity, key);
+					newSlots.putLong(newSlot, key);
+					newSlots.putInt(newSlot + 8, ordinal);
+				}
+			}
+			slots.close();
+			slots    = newSlots;
+			capacity = newCapacity;
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot grow the tuple ID file of " + getTableName() + " : " + e.getMessage());
+		}
+	}
+
+	private MappedRegion createSlots(long slotCount) throws IOException {
+		long bytes = slotCount * SLOT_SIZE;
+		int chunkShift = Math.min(63 - Long.numberOfLeadingZeros(bytes), 30);
+		MappedRegion region = new MappedRegion(directory, getTableName() + "_ids", chunkShift);
+		region.ensureCapacity(bytes);
+		return region;
+	}
+
+	/**
+	 * @return	byte position of the slot holding 'key', or of the empty slot where it should be inserted
+	 */
+	private static long findSlot(MappedRegion slots, long capacity, long key) {
+		long mask = capacity - 1;
+		long slot = (LongIntMap.mix(key) & 0xffffffffL) & mask;
+		while (true) {
+			long pos = slot * SLOT_SIZE;
+			if (slots.getInt(pos + 8) == 0 || slots.getLong(pos) == key)
+				return pos;
+			slot = (slot + 1) & mask;
+		}
+	}
+}
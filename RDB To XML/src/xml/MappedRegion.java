@@ -0,0 +1,180 @@
+package xml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A temporary file accessed through memory-mapped chunks.
+ *
+ * <p>
+ * A single mapping cannot be larger than 2 GB, so the file is mapped in chunks
+ * of a fixed power of 2 size and addressed with a long offset. Chunks are mapped
+ * when the region grows, which also extends the file with zeros. All reads use
+ * absolute positions, so a region which is no longer written to can be read by
+ * several threads. The file is deleted when the region is closed.
+ * </p>
+ *
+ * <p>
+ * Java has no public API to unmap a buffer, and a mapped file cannot be deleted on Windows.
+ * The chunks are therefore unmapped with the cleaner of the JDK when it can be reached by
+ * reflection. Otherwise they stay mapped until they are garbage collected, and the file is
+ * only deleted on exit, if at all on Windows.
+ * </p>
+ */
+class MappedRegion {
+
+	/* Unsafe.invokeCleaner of Java 9 and later, null before Java 9 */
+	private static final Object UNSAFE;
+	private static final Method INVOKE_CLEANER;
+
+	static {
+		Object unsafe = null;
+		Method invokeCleaner = null;
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			unsafe = field.get(null);
+		} catch (Exception e) {
+			// before Java 9, the cleaner of each buffer is used
+			invokeCleaner = null;
+		}
+		UNSAFE         = unsafe;
+		INVOKE_CLEANER = invokeCleaner;
+	}
+
+	private File path;
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private int chunkShift;
+	private long chunkMask;
+	private List<MappedByteBuffer> chunks;
+
+	/**
+	 * @param directory		directory to create the file in
+	 * @param prefix		prefix of the file name
+	 * @param chunkShift	log2 of the size of a chunk, at most 30
+	 * @throws IOException	if the file cannot be created
+	 */
+	MappedRegion(File directory, String prefix, int chunkShift) throws IOException {
+		this.path       = File.createTempFile(prefix, ".map", directory);
+		this.path.deleteOnExit();
+		this.file       = new RandomAccessFile(path, "rw");
+		this.channel    = file.getChannel();
+		this.chunkShift = chunkShift;
+		this.chunkMask  = (1L << chunkShift) - 1;
+		this.chunks     = new ArrayList<MappedByteBuffer>();
+	}
+
+	/**
+	 * Maps enough chunks for the region to hold 'size' bytes
+	 */
+	void ensureCapacity(long size) throws IOException {
+		while (((long) chunks.size() << chunkShift) < size) {
+			long start = (long) chunks.size() << chunkShift;
+			chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, start, 1L << chunkShift));
+		}
+	}
+
+	long capacity() {
+		return (long) chunks.size() << chunkShift;
+	}
+
+	long getLong(long pos) {
+		return chunk(pos).getLong(offset(pos));
+	}
+
+	void putLong(long pos, long value) {
+		chunk(pos).putLong(offset(pos), value);
+	}
+
+	int getInt(long pos) {
+		return chunk(pos).getInt(offset(pos));
+	}
+
+	void putInt(long pos, int value) {
+		chunk(pos).putInt(offset(pos), value);
+	}
+
+	byte getByte(long pos) {
+		return chunk(pos).get(offset(pos));
+	}
+
+	void putBytes(long pos, byte[] bytes) {
+		int written = 0;
+		while (written < bytes.length) {
+			ByteBuffer chunk = chunk(pos + written).duplicate();
+			int offset = offset(pos + written);
+			int length = (int) Math.min(bytes.length - written, (1L << chunkShift) - offset);
+			chunk.position(offset);
+			chunk.put(bytes, written, length);
+			written += length;
+		}
+	}
+
+	void getBytes(long pos, byte[] bytes) {
+		int read = 0;
+		while (read < bytes.length) {
+			ByteBuffer chunk = chunk(pos + read).duplicate();
+			int offset = offset(pos + read);
+			int length = (int) Math.min(bytes.length - read, (1L << chunkShift) - offset);
+			chunk.position(offset);
+			chunk.get(bytes, read, length);
+			read += length;
+		}
+	}
+
+	/**
+	 * Unmaps the chunks and deletes the file. The region must not be read any more,
+	 * since reading an unmapped chunk would crash the JVM.
+	 */
+	void close() {
+		for (int i = 0; i < chunks.size(); i++) {
+			unmap(chunks.get(i));
+		}
+		chunks.clear();
+		try {
+			channel.close();
+			file.close();
+		} catch (IOException e) {
+			// the file is deleted on exit anyway
+		}
+		path.delete();
+	}
+
+	/*
+	 * Releases the mapping of a buffer at once instead of when it is garbage collected
+	 * */
+	private static void unmap(MappedByteBuffer buffer) {
+		try {
+			if (INVOKE_CLEANER != null) {
+				INVOKE_CLEANER.invoke(UNSAFE, buffer);
+				return;
+			}
+			Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			Object cleaner = cleanerMethod.invoke(buffer);
+			if (cleaner != null)
+				cleaner.getClass().getMethod("clean").invoke(cleaner);
+		} catch (Exception e) {
+			// the buffer stays mapped until it is garbage collected
+		}
+	}
+
+	private MappedByteBuffer chunk(long pos) {
+		return chunks.get((int) (pos >>> chunkShift));
+	}
+
+	private int offset(long pos) {
+		return (int) (pos & chunkMask);
+	}
+}
@@ -0,0 +1,243 @@
+package xml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.List;
+
+/**
+ * Registry of the tuple IDs of a table, kept in memory-mapped files.
+ *
+ * <p>
+ * The encoded keys are appended to a data file as their UTF-8 length followed by
+ * their bytes. The hash table is kept in a second file whose 16 byte slots hold
+ * the hash of the key, the position of the tuple (0 for an empty slot) and the
+ * offset of the key in the data file.
+ * </p>
+ */
+public class MappedTupleIDRegistry extends TupleIDRegistry {
+
+	private static final int SLOT_SIZE = 16;
+	private static final int MIN_CAPACITY = 1 << 16;
+	private static final int DATA_CHUNK_SHIFT = 26;
+
+	private File directory;
+	private MappedRegion slots;
+	private MappedRegion data;
+	private MappedRegion ordinalIndex;
+	private long capacity;
+	private long dataEnd;
+	private int size;
+
+	/**
+	 * @param tableName			name of the ORASS node
+	 * @param directory			directory of the mapped files
+	 * @param expectedSize		number of tuples the registry should hold without growing
+	 * @throws IOException		if the mapped files cannot be created
+	 */
+	public MappedTupleIDRegistry(String tableName, File directory, long expectedSize) throws IOException {
+		super(tableName);
+		this.directory = directory;
+		this.capacity  = MIN_CAPACITY;
+		while (capacity * 3 / 4 < expectedSize) {
+			capacity <<= 1;
+		}
+		this.slots   = createSlots(capacity);
+		this.data    = new MappedRegion(directory, tableName + "_keys", DATA_CHUNK_SHIFT);
+		this.dataEnd = 0;
+		this.size    = 0;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean isMapped() {
+		return true;
+	}
+
+	@Override
+	public String register(List<String> keyVals) {
+		return toID(put(toBytes(encodeKey(keyVals)), 0));
+	}
+
+	@Override
+	public int getOrdinal(List<String> keyVals) {
+		byte[] key = toBytes(encodeKey(keyVals));
+		return slots.getInt(findSlot(slots, capacity, key, hash(key)) + 4);
+	}
+
+	/**
+	 * Adds an encoded key. If 'ordinal' is 0 the key gets the next position.
+	 * @return	the position of the key
+	 */
+	int put(byte[] key, int ordinal) {
+		if ((size + 1) > capacity * 3 / 4)
+			grow();
+
+		int hash = hash(key);
+		long slot = findSlot(slots, capacity, key, hash);
+		int current = slots.getInt(slot + 4);
+		if (current != 0)
+			return current;
+
+		if (ordinal == 0)
+			ordinal = size + 1;
+		size++;
+		closeOrdinalIndex();
+		slots.putInt(slot, hash);
+		slots.putInt(slot + 4, ordinal);
+		slots.putLong(slot + 8, append(key));
+		return ordinal;
+	}
+
+	@Override
+	public List<String> getKeyVals(int ordinal, int keyColumnCount) {
+		if (ordinalIndex == null)
+			ordinalIndex = buildOrdinalIndex();
+		long offset = ordinalIndex.getLong((ordinal - 1) * 8L);
+		byte[] key = new byte[data.getInt(offset)];
+		data.getBytes(offset + 4, key);
+		return decodeKey(toString(key), keyColumnCount);
+	}
+
+	@Override
+	public void close() {
+		slots.close();
+		data.close();
+		closeOrdinalIndex();
+	}
+
+	/**
+	 * Maps the position of each tuple to the offset of its key in the data file
+	 */
+	private MappedRegion buildOrdinalIndex() {
+		try {
+			long bytes = Math.max(size * 8L, 8L);
+			int chunkShift = Math.min(64 - Long.numberOfLeadingZeros(bytes - 1), 30);
+			MappedRegion index = new MappedRegion(directory, getTableName() + "_ordinals", chunkShift);
+			index.ensureCapacity(bytes);
+			for (long i = 0; i < capacity; i++) {
+				long pos = i * SLOT_SIZE;
+				int ordinal = slots.getInt(pos + 4);
+				if (ordinal != 0)
+					index.putLong((ordinal - 1) * 8L, slots.getLong(pos + 8));
+			}
+			return index;
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot create the key index of " + getTableName() + " : " + e.getMessage());
+		}
+	}
+
+	private void closeOrdinalIndex() {
+		if (ordinalIndex != null) {
+			ordinalIndex.close();
+			ordinalIndex = null;
+		}
+	}
+
+	/**
+	 * Appends a key to the data file. Records are aligned on 4 bytes so that their length never spans two chunks.
+	 * @return	the offset of the record
+	 */
+	private long append(byte[] key) {
+		long offset = dataEnd;
+		long end = offset + 4 + key.length;
+		try {
+			data.ensureCapacity(end);
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot extend the key file of " + getTableName() + " : " + e.getMessage());
+		}
+		data.putInt(offset, key.length);
+		data.putBytes(offset + 4, key);
+		dataEnd = (end + 3) & ~3L;
+		return offset;
+	}
+
+	private void grow() {
+		long newCapacity = capacity << 1;
+		try {
+			MappedRegion newSlots = createSlots(newCapacity);
+			long mask = newCapacity - 1;
+			for (long i = 0; i < capacity; i++) {
+				long pos = i * SLOT_SIZE;
+				if (slots.getInt(pos + 4) != 0) {
+					// the keys are distinct, so only an empty slot has to be found
+					long slot = (TupleIDRegistry.mix(slots.getInt(pos)) & 0xffffffffL) & mask;
+					while (newSlots.getInt(slot * SLOT_SIZE + 4) != 0) {
+						slot = (slot + 1) & mask;
+					}
+					long newPos = slot * SLOT_SIZE;
+					newSlots.putInt(newPos, slots.getInt(pos));
+					newSlots.putInt(newPos + 4, slots.getInt(pos + 4));
+					newSlots.putLong(newPos + 8, slots.getLong(pos + 8));
+				}
+			}
+			slots.close();
+			slots    = newSlots;
+			capacity = newCapacity;
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot grow the tuple ID file of " + getTableName() + " : " + e.getMessage());
+		}
+	}
+
+	private MappedRegion createSlots(long slotCount) throws IOException {
+		long bytes = slotCount * SLOT_SIZE;
+		int chunkShift = Math.min(63 - Long.numberOfLeadingZeros(bytes), 30);
+		MappedRegion region = new MappedRegion(directory, getTableName() + "_ids", chunkShift);
+		region.ensureCapacity(bytes);
+		return region;
+	}
+
+	/**
+	 * @return	byte position of the slot holding 'key', or of the empty slot where it should be inserted
+	 */
+	private long findSlot(MappedRegion table, long tableCapacity, byte[] key, int hash) {
+		long mask = tableCapacity - 1;
+		long slot = (TupleIDRegistry.mix(hash) & 0xffffffffL) & mask;
+		while (true) {
+			long pos = slot * SLOT_SIZE;
+			if (table.getInt(pos + 4) == 0)
+				return pos;
+			if (table.getInt(pos) == hash && isSameKey(table.getLong(pos + 8), key))
+				return pos;
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private boolean isSameKey(long offset, byte[] key) {
+		if (data.getInt(offset) != key.length)
+			return false;
+		for (int i = 0; i < key.length; i++) {
+			if (data.getByte(offset + 4 + i) != key[i])
+				return false;
+		}
+		return true;
+	}
+
+	private static int hash(byte[] key) {
+		int hash = 1;
+		for (int i = 0; i < key.length; i++) {
+			hash = 31 * hash + key[i];
+		}
+		return hash;
+	}
+
+	private static String toString(byte[] key) {
+		try {
+			return new String(key, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e.getMessage());
+		}
+	}
+
+	static byte[] toBytes(String encodedKey) {
+		try {
+			return encodedKey.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e.getMessage());
+		}
+	}
+}
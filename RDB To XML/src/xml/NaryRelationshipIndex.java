@@ -0,0 +1,81 @@
+package xml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rows of an n-ary relationship, grouped by the tuple ID of its top entity.
+ *
+ * <p>
+ * The relationship is joined once for all the tuples of the top entity and each
+ * row is kept as the chain of the IDs of the tuples it references below the top
+ * entity, in the order of the entities of the relationship, together with the
+ * values of the relationship attributes. The chains of a tuple of the top entity
+ * are returned in the order of the join.
+ * </p>
+ */
+public class NaryRelationshipIndex {
+
+	private List<String> attributeNames;
+	private Map<String, List<Chain>> chainsByParent;
+
+	/**
+	 * @param attributeNames	names of the relationship attributes kept for each chain
+	 */
+	public NaryRelationshipIndex(List<String> attributeNames) {
+		this.attributeNames = attributeNames;
+		this.chainsByParent = new HashMap<String, List<Chain>>();
+	}
+
+	public List<String> getAttributeNames() {
+		return attributeNames;
+	}
+
+	/**
+	 * Adds a row of the relationship
+	 * @param parentID			ID of the tuple of the top entity
+	 * @param refIDs			IDs of the referenced tuples of the other entities, in the order of the entities
+	 * @param attributeVals		values of the relationship attributes, in the order of the attribute names
+	 */
+	public void add(String parentID, String[] refIDs, String[] attributeVals) {
+		List<Chain> chains = chainsByParent.get(parentID);
+		if (chains == null) {
+			chains = new ArrayList<Chain>(2);
+			chainsByParent.put(parentID, chains);
+		}
+		chains.add(new Chain(refIDs, attributeVals));
+	}
+
+	/**
+	 * Rows of the relationship of a tuple of the top entity
+	 * @param parentID	ID of the tuple of the top entity
+	 * @return			the chains in the order of the join, empty if there are none
+	 */
+	public List<Chain> get(String parentID) {
+		List<Chain> chains = chainsByParent.get(parentID);
+		if (chains == null)
+			return Collections.emptyList();
+		return chains;
+	}
+
+	public static class Chain {
+		private String[] refIDs;
+		private String[] attributeVals;
+
+		private Chain(String[] refIDs, String[] attributeVals) {
+			this.refIDs        = refIDs;
+			this.attributeVals = attributeVals;
+		}
+
+		public String getRefID(int level) {
+			return refIDs[level];
+		}
+
+		public String getAttributeVal(int index) {
+			return attributeVals[index];
+		}
+	}
+}
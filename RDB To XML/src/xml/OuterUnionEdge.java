@@ -0,0 +1,39 @@
+package xml;
+
+import orass.ORASSNode;
+
+/**
+ * Relationship printed in a tuple of an ORASS node, in the order of printing.
+ * Only relationships of kind RELATIONSHIP are read from their own branch of an outer union.
+ */
+class OuterUnionEdge {
+
+	static final int RELATIONSHIP = 0;
+	static final int NARY = 1;
+	static final int SPECIAL = 2;
+
+	private int kind;
+	private ORASSNode target;
+	private int branchSeq;
+
+	OuterUnionEdge(int kind, ORASSNode target, int branchSeq) {
+		this.kind      = kind;
+		this.target    = target;
+		this.branchSeq = branchSeq;
+	}
+
+	int getKind() {
+		return kind;
+	}
+
+	ORASSNode getTarget() {
+		return target;
+	}
+
+	/**
+	 * Sequence number of the branch of the relationship, 0 if it has no branch
+	 */
+	int getBranchSeq() {
+		return branchSeq;
+	}
+}
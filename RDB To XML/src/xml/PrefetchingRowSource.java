@@ -0,0 +1,153 @@
+package xml;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import main.MainException;
+
+/**
+ * Row source which reads another source on a thread of its own.
+ *
+ * <p>
+ * The rows are read ahead in batches and handed over through a bounded queue, so that
+ * the rows of the next batch are fetched and converted to strings while the current
+ * ones are printed, and at most <code>capacity</code> batches are held in memory.
+ * The source must not be used by any other thread until this source is closed.
+ * </p>
+ */
+public class PrefetchingRowSource implements RowSource {
+
+	public static final int BATCH_SIZE = 256;
+	public static final int DEFAULT_CAPACITY = 16;
+	/** Marks the end of the rows in the queue **/
+	private static final List<String[]> END = new ArrayList<String[]>();
+
+	private RowSource source;
+	private Map<String, Integer> columnIndexes;
+	private BlockingQueue<List<String[]>> batches;
+	private Thread reader;
+	private volatile boolean isClosed;
+	private volatile MainException failure;
+	private List<String[]> batch;
+	private int position;
+	private String[] row;
+	private boolean wasNull;
+
+	/**
+	 * Starts reading the rows of a source
+	 * @param source	the rows to read
+	 * @param columns	columns read from the rows
+	 * @param name		name of the reading thread
+	 */
+	public PrefetchingRowSource(RowSource source, List<String> columns, String name) {
+		this(source, columns, name, DEFAULT_CAPACITY);
+	}
+
+	public PrefetchingRowSource(RowSource source, final List<String> columns, String name, int capacity) {
+		this.source        = source;
+		this.columnIndexes = new HashMap<String, Integer>();
+		for (int i = 0; i < columns.size(); i++) {
+			columnIndexes.put(columns.get(i), i);
+		}
+		this.batches  = new ArrayBlockingQueue<List<String[]>>(capacity);
+		this.batch    = new ArrayList<String[]>();
+		this.position = 0;
+		this.reader   = new Thread(new Runnable() {
+			public void run() {
+				readRows(columns);
+			}
+		}, name);
+		this.reader.setDaemon(true);
+		this.reader.start();
+	}
+
+	private void readRows(List<String> columns) {
+		try {
+			List<String[]> rows = new ArrayList<String[]>(BATCH_SIZE);
+			while (!isClosed && source.next()) {
+				String[] vals = new String[columns.size()];
+				for (int i = 0; i < vals.length; i++) {
+					vals[i] = source.getString(columns.get(i));
+				}
+				rows.add(vals);
+				if (rows.size() == BATCH_SIZE) {
+					batches.put(rows);
+					rows = new ArrayList<String[]>(BATCH_SIZE);
+				}
+			}
+			if (!rows.isEmpty())
+				batches.put(rows);
+		} catch (MainException e) {
+			failure = e;
+		} catch (InterruptedException e) {
+			// closed before all the rows were read
+			return;
+		} catch (RuntimeException e) {
+			failure = new MainException("Failed to read the rows : " + e);
+		}
+		try {
+			batches.put(END);
+		} catch (InterruptedException e) {
+			// closed before all the rows were read
+		}
+	}
+
+	@Override
+	public boolean next() throws MainException {
+		while (position >= batch.size()) {
+			if (batch == END)
+				return false;
+			try {
+				batch = batches.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new MainException("Interrupted while reading the rows.");
+			}
+			position = 0;
+			if (batch == END && failure != null)
+				throw failure;
+		}
+		row = batch.get(position++);
+		return true;
+	}
+
+	@Override
+	public String getString(String col) throws MainException {
+		Integer index = columnIndexes.get(col);
+		if (index == null)
+			throw new MainException("Column " + col + " is not read ahead.");
+		wasNull = row[index] == null;
+		return row[index];
+	}
+
+	@Override
+	public long getLong(String col) throws MainException {
+		String value = getString(col);
+		return value == null ? 0 : Long.parseLong(value);
+	}
+
+	@Override
+	public boolean wasNull() {
+		return wasNull;
+	}
+
+	/**
+	 * Stops the reading thread and closes the source
+	 */
+	@Override
+	public void close() throws MainException {
+		isClosed = true;
+		reader.interrupt();
+		try {
+			reader.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		batches.clear();
+		source.close();
+	}
+}
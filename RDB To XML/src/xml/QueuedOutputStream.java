@@ -0,0 +1,148 @@
+package xml;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Stream which hands the bytes over to a thread of its own to be written.
+ *
+ * <p>
+ * The bytes are collected into chunks, and full chunks go through a bounded queue to the
+ * writing thread, so that the document is produced while the previous chunks are written
+ * and at most <code>capacity</code> chunks are held in memory. An error of the writing
+ * thread is thrown by the next call.
+ * </p>
+ */
+public class QueuedOutputStream extends OutputStream {
+
+	public static final int CHUNK_SIZE = 65536;
+	public static final int DEFAULT_CAPACITY = 16;
+	/** Marks the end of the bytes in the queue **/
+	private static final byte[] END = new byte[0];
+
+	private OutputStream out;
+	private BlockingQueue<byte[]> chunks;
+	private Thread writerThread;
+	private volatile IOException failure;
+	private byte[] chunk;
+	private int length;
+	private boolean isClosed;
+
+	public QueuedOutputStream(OutputStream out, String name) {
+		this(out, name, DEFAULT_CAPACITY);
+	}
+
+	public QueuedOutputStream(OutputStream out, String name, int capacity) {
+		this.out    = out;
+		this.chunks = new ArrayBlockingQueue<byte[]>(capacity);
+		this.chunk  = new byte[CHUNK_SIZE];
+		this.length = 0;
+		this.writerThread = new Thread(new Runnable() {
+			public void run() {
+				writeChunks();
+			}
+		}, name);
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+	}
+
+	private void writeChunks() {
+		try {
+			byte[] next = chunks.take();
+			while (next != END) {
+				if (failure == null) {
+					try {
+						out.write(next);
+					} catch (IOException e) {
+						// the remaining chunks are taken so that the producer is not blocked
+						failure = e;
+					}
+				}
+				next = chunks.take();
+			}
+		} catch (InterruptedException e) {
+			failure = new IOException("Interrupted while writing");
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		checkState();
+		chunk[length++] = (byte) b;
+		if (length == CHUNK_SIZE)
+			handOver();
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		checkState();
+		while (len > 0) {
+			int count = Math.min(len, CHUNK_SIZE - length);
+			System.arraycopy(b, off, chunk, length, count);
+			length += count;
+			off    += count;
+			len    -= count;
+			if (length == CHUNK_SIZE)
+				handOver();
+		}
+	}
+
+	/**
+	 * Hands over the bytes written so far. They are written to the underlying stream by the
+	 * writing thread, and only flushed when the stream is closed.
+	 */
+	@Override
+	public void flush() throws IOException {
+		checkState();
+		if (length > 0)
+			handOver();
+	}
+
+	/**
+	 * Writes the remaining bytes, waits for the writing thread and closes the underlying stream
+	 */
+	@Override
+	public void close() throws IOException {
+		if (isClosed)
+			return;
+		try {
+			if (length > 0)
+				handOver();
+			put(END);
+			writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while closing the stream");
+		} finally {
+			isClosed = true;
+			out.close();
+		}
+		if (failure != null)
+			throw failure;
+	}
+
+	private void handOver() throws IOException {
+		put(length == CHUNK_SIZE ? chunk : Arrays.copyOf(chunk, length));
+		chunk  = new byte[CHUNK_SIZE];
+		length = 0;
+	}
+
+	private void put(byte[] next) throws IOException {
+		try {
+			chunks.put(next);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while writing");
+		}
+	}
+
+	private void checkState() throws IOException {
+		if (isClosed)
+			throw new IOException("The stream is closed");
+		if (failure != null)
+			throw failure;
+	}
+}
@@ -0,0 +1,30 @@
+package xml;
+
+/**
+ * References of a range of consecutive parent tuples, read with one query.
+ */
+public class RelationshipBatch {
+
+	private int firstOrdinal;
+	private int lastOrdinal;
+	private RelationshipIndex index;
+
+	/**
+	 * @param firstOrdinal	position of the first parent tuple of the batch
+	 * @param lastOrdinal	position of the last parent tuple of the batch
+	 * @param index			references of the parent tuples of the batch
+	 */
+	public RelationshipBatch(int firstOrdinal, int lastOrdinal, RelationshipIndex index) {
+		this.firstOrdinal = firstOrdinal;
+		this.lastOrdinal  = lastOrdinal;
+		this.index        = index;
+	}
+
+	public boolean contains(int ordinal) {
+		return ordinal >= firstOrdinal && ordinal <= lastOrdinal;
+	}
+
+	public RelationshipIndex getIndex() {
+		return index;
+	}
+}
@@ -0,0 +1,80 @@
+package xml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rows of a relationship between two ORASS nodes, grouped by the tuple ID of the parent node.
+ *
+ * <p>
+ * The relationship is joined once for all the tuples of the parent node and each
+ * row is kept as the ID of the referenced tuple together with the values of the
+ * relationship attributes. The references of a parent tuple are returned in the
+ * order of the join.
+ * </p>
+ */
+public class RelationshipIndex {
+
+	private List<String> attributeNames;
+	private Map<String, List<Reference>> referencesByParent;
+
+	/**
+	 * @param attributeNames	names of the relationship attributes kept for each reference
+	 */
+	public RelationshipIndex(List<String> attributeNames) {
+		this.attributeNames     = attributeNames;
+		this.referencesByParent = new HashMap<String, List<Reference>>();
+	}
+
+	public List<String> getAttributeNames() {
+		return attributeNames;
+	}
+
+	/**
+	 * Adds a reference from a parent tuple
+	 * @param parentID			ID of the parent tuple
+	 * @param refID				ID of the referenced tuple
+	 * @param attributeVals		values of the relationship attributes, in the order of the attribute names
+	 */
+	public void add(String parentID, String refID, String[] attributeVals) {
+		List<Reference> references = referencesByParent.get(parentID);
+		if (references == null) {
+			references = new ArrayList<Reference>(2);
+			referencesByParent.put(parentID, references);
+		}
+		references.add(new Reference(refID, attributeVals));
+	}
+
+	/**
+	 * References from a parent tuple
+	 * @param parentID	ID of the parent tuple
+	 * @return			the references in the order of the join, empty if there are none
+	 */
+	public List<Reference> get(String parentID) {
+		List<Reference> references = referencesByParent.get(parentID);
+		if (references == null)
+			return Collections.emptyList();
+		return references;
+	}
+
+	public static class Reference {
+		private String refID;
+		private String[] attributeVals;
+
+		private Reference(String refID, String[] attributeVals) {
+			this.refID         = refID;
+			this.attributeVals = attributeVals;
+		}
+
+		public String getRefID() {
+			return refID;
+		}
+
+		public String getAttributeVal(int index) {
+			return attributeVals[index];
+		}
+	}
+}
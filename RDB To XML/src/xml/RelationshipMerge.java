@@ -0,0 +1,84 @@
+package xml;
+
+import java.util.List;
+
+import main.MainException;
+
+/**
+ * Merge join of the tuples of a parent table with the rows of one of its relationships.
+ *
+ * <p>
+ * The rows of the relationship are streamed ordered by the key of the parent
+ * table, which is also the order in which the parent tuples are printed. The
+ * parent tuples were given their IDs in the order of their keys, so the
+ * position of a tuple in the key scan tells whether a row of the relationship
+ * belongs to the current tuple, to a tuple which has already been printed or to
+ * a later one. Only the rows of the current tuple are held in memory.
+ * </p>
+ */
+public class RelationshipMerge {
+
+	private RowCursor data;
+	private TupleIDRegistry parentRegistry;
+	private List<String> parentKeyCols;
+	private TupleIDRegistry childRegistry;
+	private List<String> childKeyCols;
+	private List<String> attributeNames;
+	private boolean hasRow;
+	private boolean isStarted;
+
+	/**
+	 * @param data				rows of the relationship, ordered by the key of the parent table
+	 * @param parentRegistry	tuple IDs of the parent table
+	 * @param parentKeyCols		key columns of the parent table
+	 * @param childRegistry		tuple IDs of the referenced table
+	 * @param childKeyCols		key columns of the referenced table
+	 * @param attributeNames	relationship attributes kept for each reference
+	 */
+	public RelationshipMerge(RowCursor data, TupleIDRegistry parentRegistry, List<String> parentKeyCols,
+			TupleIDRegistry childRegistry, List<String> childKeyCols, List<String> attributeNames) {
+		this.data           = data;
+		this.parentRegistry = parentRegistry;
+		this.parentKeyCols  = parentKeyCols;
+		this.childRegistry  = childRegistry;
+		this.childKeyCols   = childKeyCols;
+		this.attributeNames = attributeNames;
+		this.isStarted      = false;
+	}
+
+	/**
+	 * Returns the references of a parent tuple. The parent tuples must be asked for
+	 * in the order of their positions, rows of skipped tuples are discarded.
+	 * @param parentID		ID of the parent tuple
+	 * @param parentOrdinal	position of the parent tuple in the key scan
+	 * @return				the references of the tuple
+	 */
+	public RelationshipIndex getReferences(String parentID, int parentOrdinal) throws MainException {
+		RelationshipIndex index = new RelationshipIndex(attributeNames);
+		if (parentOrdinal == 0)
+			return index;
+		if (!isStarted) {
+			hasRow    = data.next();
+			isStarted = true;
+		}
+		while (hasRow) {
+			int rowOrdinal = parentRegistry.getOrdinal(data, parentKeyCols);
+			if (rowOrdinal > parentOrdinal)
+				break;
+			if (rowOrdinal == parentOrdinal) {
+				String refID = childRegistry.getID(data, childKeyCols);
+				String[] attributeVals = new String[attributeNames.size()];
+				for (int i = 0; i < attributeVals.length; i++) {
+					attributeVals[i] = data.getString(attributeNames.get(i));
+				}
+				index.add(parentID, refID, attributeVals);
+			}
+			hasRow = data.next();
+		}
+		return index;
+	}
+
+	public void close() throws MainException {
+		data.close();
+	}
+}
@@ -0,0 +1,62 @@
+package xml;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import main.MainException;
+import database.DataStream;
+
+/**
+ * Rows read from a DataStream. Closing the source closes the stream.
+ */
+public class ResultSetRowSource implements RowSource {
+
+	private DataStream stream;
+	private ResultSet results;
+
+	public ResultSetRowSource(DataStream stream) {
+		this.stream  = stream;
+		this.results = stream.getResultSet();
+	}
+
+	@Override
+	public boolean next() throws MainException {
+		try {
+			return results.next();
+		} catch (SQLException e) {
+			throw new MainException("Failed to read the next row : " + e.getMessage());
+		}
+	}
+
+	@Override
+	public String getString(String col) throws MainException {
+		try {
+			return results.getString(col);
+		} catch (SQLException e) {
+			throw new MainException("Failed to read " + col + " : " + e.getMessage());
+		}
+	}
+
+	@Override
+	public long getLong(String col) throws MainException {
+		try {
+			return results.getLong(col);
+		} catch (SQLException e) {
+			throw new MainException("Failed to read " + col + " : " + e.getMessage());
+		}
+	}
+
+	@Override
+	public boolean wasNull() throws MainException {
+		try {
+			return results.wasNull();
+		} catch (SQLException e) {
+			throw new MainException("Failed to read the last value : " + e.getMessage());
+		}
+	}
+
+	@Override
+	public void close() throws MainException {
+		stream.close();
+	}
+}
@@ -0,0 +1,154 @@
+package xml;
+
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import main.MainException;
+
+/**
+ * Forward-only cursor over the rows of a relationship, with reusable value slots.
+ *
+ * <p>
+ * Columns are registered the first time they are asked for and each value is read
+ * from the source at most once per row, into a slot which is reused for the next
+ * rows. The key columns of a table are returned as a view over these slots, created
+ * once for each list of key columns, so resolving the tuple IDs of a row does not
+ * create any lists.
+ * </p>
+ */
+public class RowCursor {
+
+	private static final int INITIAL_COLUMNS = 8;
+
+	private RowSource source;
+	private Map<String, Integer> columnIndexes;
+	private String[] columns;
+	private String[] values;
+	private long[] readAt;
+	private int columnCount;
+	private long rowNumber;
+	private Map<List<String>, Key> keys;
+
+	public RowCursor(RowSource source) {
+		this.source        = source;
+		this.columnIndexes = new HashMap<String, Integer>();
+		this.columns       = new String[INITIAL_COLUMNS];
+		this.values        = new String[INITIAL_COLUMNS];
+		this.readAt        = new long[INITIAL_COLUMNS];
+		this.columnCount   = 0;
+		this.rowNumber     = 0;
+		this.keys          = new IdentityHashMap<List<String>, Key>();
+	}
+
+	/**
+	 * Moves to the next row
+	 * @return	false if there are no more rows
+	 */
+	public boolean next() throws MainException {
+		rowNumber++;
+		return source.next();
+	}
+
+	/**
+	 * Index of a column, registering it if it has not been read before
+	 * @param col	name of the column
+	 * @return		the index to read the column with
+	 */
+	public int indexOf(String col) {
+		Integer index = columnIndexes.get(col);
+		if (index != null)
+			return index;
+		if (columnCount == columns.length) {
+			int capacity = columns.length * 2;
+			String[] newColumns = new String[capacity];
+			String[] newValues  = new String[capacity];
+			long[] newReadAt    = new long[capacity];
+			System.arraycopy(columns, 0, newColumns, 0, columnCount);
+			System.arraycopy(values, 0, newValues, 0, columnCount);
+			System.arraycopy(readAt, 0, newReadAt, 0, columnCount);
+			columns = newColumns;
+			values  = newValues;
+			readAt  = newReadAt;
+		}
+		columns[columnCount] = col;
+		columnIndexes.put(col, columnCount);
+		return columnCount++;
+	}
+
+	/**
+	 * Value of a column in the current row
+	 * @return	the value, null if it is SQL NULL
+	 */
+	public String getString(int index) throws MainException {
+		if (readAt[index] != rowNumber) {
+			values[index] = source.getString(columns[index]);
+			readAt[index] = rowNumber;
+		}
+		return values[index];
+	}
+
+	public String getString(String col) throws MainException {
+		return getString(indexOf(col));
+	}
+
+	/**
+	 * Value of an integer column in the current row, read without building a string
+	 * @return	the value, 0 if it is SQL NULL, see {@link #wasNull()}
+	 */
+	public long getLong(int index) throws MainException {
+		return source.getLong(columns[index]);
+	}
+
+	/**
+	 * Whether the last value read with {@link #getLong(int)} was SQL NULL
+	 */
+	public boolean wasNull() throws MainException {
+		return source.wasNull();
+	}
+
+	/**
+	 * Values of the given key columns in the current row.
+	 * The list is a view over the current row and changes when the cursor moves.
+	 * @param keyCols	key columns, the same list object is expected for the same key
+	 * @return			the key values, in the order of the key columns
+	 */
+	public List<String> getKeyVals(List<String> keyCols) throws MainException {
+		Key key = keys.get(keyCols);
+		if (key == null) {
+			key = new Key(keyCols);
+			keys.put(keyCols, key);
+		}
+		for (int i = 0; i < key.indexes.length; i++) {
+			getString(key.indexes[i]);
+		}
+		return key;
+	}
+
+	public void close() throws MainException {
+		source.close();
+	}
+
+	private class Key extends AbstractList<String> {
+		private int[] indexes;
+
+		private Key(List<String> keyCols) {
+			indexes = new int[keyCols.size()];
+			for (int i = 0; i < indexes.length; i++) {
+				indexes[i] = RowCursor.this.indexOf(keyCols.get(i));
+			}
+		}
+
+		@Override
+		public String get(int index) {
+			return values[indexes[index]];
+		}
+
+		@Override
+		public int size() {
+			return indexes.length;
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package xml;
+
+import main.MainException;
+
+/**
+ * Forward-only source of the rows of a table, read by column name.
+ */
+public interface RowSource {
+
+	/**
+	 * Moves to the next row
+	 * @return	false if there are no more rows
+	 */
+	public boolean next() throws MainException;
+
+	/**
+	 * Value of a column in the current row
+	 * @return	the value, null if it is SQL NULL
+	 */
+	public String getString(String col) throws MainException;
+
+	/**
+	 * Value of an integer column in the current row
+	 * @return	the value, 0 if it is SQL NULL
+	 */
+	public long getLong(String col) throws MainException;
+
+	/**
+	 * Whether the last value read was SQL NULL
+	 */
+	public boolean wasNull() throws MainException;
+
+	/**
+	 * Releases the resources held by the source
+	 */
+	public void close() throws MainException;
+}
@@ -0,0 +1,186 @@
+package xml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import main.MainException;
+
+/**
+ * Temporary file holding the rows of a table between two passes over them.
+ *
+ * <p>
+ * When table data is streamed, the rows are read once to assign the tuple IDs and
+ * have to be printed afterwards, when the IDs of all the tables are known. Instead
+ * of running the query again, the rows are appended to the spool while the IDs are
+ * assigned and read back from it when the table is printed. Each value is written
+ * as a null flag followed by its UTF-8 bytes. The file is deleted when the spool
+ * is closed.
+ * </p>
+ */
+public class RowSpool {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private File path;
+	private String[] columns;
+	private Map<String, Integer> columnIndexes;
+	private DataOutputStream out;
+	private long rowCount;
+	private int readerCount;
+
+	/**
+	 * @param directory		directory to create the file in
+	 * @param columns		columns of the rows
+	 * @throws MainException	if the file cannot be created
+	 */
+	public RowSpool(File directory, List<String> columns) throws MainException {
+		this.columns       = columns.toArray(new String[columns.size()]);
+		this.columnIndexes = new HashMap<String, Integer>();
+		for (int i = 0; i < this.columns.length; i++) {
+			columnIndexes.put(this.columns[i], i);
+		}
+		this.rowCount = 0;
+		this.readerCount = 1;
+		try {
+			this.path = File.createTempFile("rows", ".spool", directory);
+			this.path.deleteOnExit();
+			this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+		} catch (IOException e) {
+			throw new MainException("Cannot create the row spool file : " + e.getMessage());
+		}
+	}
+
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Appends the current row of 'row'
+	 */
+	public void append(RowSource row) throws MainException {
+		try {
+			for (int i = 0; i < columns.length; i++) {
+				String val = row.getString(columns[i]);
+				if (val == null) {
+					out.writeBoolean(false);
+				} else {
+					byte[] bytes = val.getBytes(UTF8);
+					out.writeBoolean(true);
+					out.writeInt(bytes.length);
+					out.write(bytes);
+				}
+			}
+			rowCount++;
+		} catch (IOException e) {
+			throw new MainException("Cannot write to the row spool file : " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Sets the number of times the spool is read. The file is deleted when the last reader is closed.
+	 * @param readerCount	number of readers, 1 by default
+	 */
+	public void setReaderCount(int readerCount) {
+		this.readerCount = readerCount;
+	}
+
+	/**
+	 * Ends the writing of the spool and returns its rows in the order they have been appended
+	 */
+	public RowSource open() throws MainException {
+		try {
+			out.close();
+			return new Reader(new DataInputStream(new BufferedInputStream(new FileInputStream(path))));
+		} catch (IOException e) {
+			throw new MainException("Cannot read the row spool file : " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Deletes the file of the spool
+	 */
+	public void close() {
+		try {
+			out.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		path.delete();
+	}
+
+	private class Reader implements RowSource {
+
+		private DataInputStream in;
+		private String[] values;
+		private long rowsRead;
+		private boolean wasNull;
+
+		private Reader(DataInputStream in) {
+			this.in       = in;
+			this.values   = new String[columns.length];
+			this.rowsRead = 0;
+		}
+
+		@Override
+		public boolean next() throws MainException {
+			if (rowsRead == rowCount)
+				return false;
+			try {
+				for (int i = 0; i < values.length; i++) {
+					if (in.readBoolean()) {
+						byte[] bytes = new byte[in.readInt()];
+						in.readFully(bytes);
+						values[i] = new String(bytes, UTF8);
+					} else {
+						values[i] = null;
+					}
+				}
+			} catch (IOException e) {
+				throw new MainException("Cannot read the row spool file : " + e.getMessage());
+			}
+			rowsRead++;
+			return true;
+		}
+
+		@Override
+		public String getString(String col) throws MainException {
+			Integer index = columnIndexes.get(col);
+			if (index == null)
+				throw new MainException("Column " + col + " is not in the row spool");
+			wasNull = values[index] == null;
+			return values[index];
+		}
+
+		@Override
+		public long getLong(String col) throws MainException {
+			String val = getString(col);
+			return val == null ? 0 : Long.parseLong(val.trim());
+		}
+
+		@Override
+		public boolean wasNull() {
+			return wasNull;
+		}
+
+		@Override
+		public void close() throws MainException {
+			try {
+				in.close();
+			} catch (IOException e) {
+				throw new MainException("Cannot close the row spool file : " + e.getMessage());
+			}
+			if (--readerCount <= 0)
+				RowSpool.this.close();
+		}
+	}
+}
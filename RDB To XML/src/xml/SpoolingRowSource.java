@@ -0,0 +1,46 @@
+package xml;
+
+import main.MainException;
+
+/**
+ * Row source which appends each row it reads to a RowSpool, so that the rows
+ * can be read again from the spool once the source has been read to the end.
+ */
+public class SpoolingRowSource implements RowSource {
+
+	private RowSource source;
+	private RowSpool spool;
+
+	public SpoolingRowSource(RowSource source, RowSpool spool) {
+		this.source = source;
+		this.spool  = spool;
+	}
+
+	@Override
+	public boolean next() throws MainException {
+		if (!source.next())
+			return false;
+		spool.append(source);
+		return true;
+	}
+
+	@Override
+	public String getString(String col) throws MainException {
+		return source.getString(col);
+	}
+
+	@Override
+	public long getLong(String col) throws MainException {
+		return source.getLong(col);
+	}
+
+	@Override
+	public boolean wasNull() throws MainException {
+		return source.wasNull();
+	}
+
+	@Override
+	public void close() throws MainException {
+		source.close();
+	}
+}
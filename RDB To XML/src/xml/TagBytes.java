@@ -0,0 +1,55 @@
+package xml;
+
+/**
+ * Tags of one element of the document, encoded once so that printing an element only copies bytes.
+ */
+public class TagBytes {
+
+	private String name;
+	private byte[] open;
+	private byte[] openNil;
+	private byte[] close;
+	private byte[] openID;
+	private byte[] openRef;
+
+	/**
+	 * @param name	name of the element, i.e. a table or a column
+	 */
+	public TagBytes(String name) {
+		this.name    = name;
+		this.open    = XMLWriter.encode("<" + name + ">");
+		this.openNil = XMLWriter.encode("<" + name + " xsi:nil=\"true\">");
+		this.close   = XMLWriter.encode("</" + name + ">");
+		this.openID  = XMLWriter.encode("<" + name + " " + name + "#=\"");
+		this.openRef = XMLWriter.encode("<" + name + " " + name + "_Ref=\"");
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/** &lt;name&gt; **/
+	byte[] getOpen() {
+		return open;
+	}
+
+	/** &lt;name xsi:nil="true"&gt; **/
+	byte[] getOpenNil() {
+		return openNil;
+	}
+
+	/** &lt;/name&gt; **/
+	byte[] getClose() {
+		return close;
+	}
+
+	/** &lt;name name#=" , followed by the tuple ID **/
+	byte[] getOpenID() {
+		return openID;
+	}
+
+	/** &lt;name name_Ref=" , followed by the ID of the referenced tuple **/
+	byte[] getOpenRef() {
+		return openRef;
+	}
+}
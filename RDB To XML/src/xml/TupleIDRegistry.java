@@ -0,0 +1,259 @@
+package xml;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import main.MainException;
+
+/**
+ * Registry of the tuple IDs of one ORASS node.
+ *
+ * <p>
+ * Every tuple of a table is given the ID <i>tableName + k</i>, where k is the
+ * position of its primary key in the key scan of the table. The registry maps
+ * the primary key values of a tuple to k with an open addressing hash table, so
+ * that a lookup does not depend on the number of tuples in the table. Only the
+ * encoded key and k are stored, the ID string is built when it is requested.
+ * </p>
+ */
+public class TupleIDRegistry {
+
+	private static final int INITIAL_CAPACITY = 64;
+	private static final char NULL_VALUE = '\u0000';
+
+	private String tableName;
+	private String[] keys;
+	private int[] ordinals;
+	private int size;
+	private String[] keysByOrdinal;
+
+	public TupleIDRegistry(String tableName) {
+		this.tableName = tableName;
+		this.keys      = new String[INITIAL_CAPACITY];
+		this.ordinals  = new int[INITIAL_CAPACITY];
+		this.size      = 0;
+	}
+
+	public String getTableName() {
+		return tableName;
+	}
+
+	/**
+	 * Number of tuples registered
+	 * @return	number of tuples registered
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Whether the registry is kept in a memory-mapped file instead of the heap
+	 * @return	true if the registry is memory-mapped
+	 */
+	public boolean isMapped() {
+		return false;
+	}
+
+	/**
+	 * Copies the registry into memory-mapped files. The tuples keep their IDs.
+	 * @param directory		directory of the mapped files
+	 * @return				the mapped registry
+	 * @throws IOException	if the mapped files cannot be created
+	 */
+	public TupleIDRegistry toMappedRegistry(File directory) throws IOException {
+		MappedTupleIDRegistry mapped = new MappedTupleIDRegistry(tableName, directory, size * 2L);
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != null)
+				mapped.put(MappedTupleIDRegistry.toBytes(keys[i]), ordinals[i]);
+		}
+		return mapped;
+	}
+
+	/**
+	 * Releases the files held by the registry
+	 */
+	public void close() {
+	}
+
+	/**
+	 * Registers the primary key values of a tuple and gives it the next tuple ID.
+	 * A tuple which has already been registered keeps its ID.
+	 * @param keyVals	primary key values of the tuple, in the order of the key columns
+	 * @return			the ID of the tuple
+	 */
+	public String register(List<String> keyVals) {
+		return toID(put(encodeKey(keyVals)));
+	}
+
+	/**
+	 * Returns the ID of the tuple with the given primary key values
+	 * @param keyVals	primary key values of the tuple, in the order of the key columns
+	 * @return			the ID of the tuple, or an empty string if no such tuple is registered
+	 */
+	public String getID(List<String> keyVals) {
+		return toID(getOrdinal(keyVals));
+	}
+
+	/**
+	 * Returns the position of the tuple with the given primary key values in the key scan.
+	 * Tuples which come first in the key scan have lower positions.
+	 * @param keyVals	primary key values of the tuple, in the order of the key columns
+	 * @return			the position of the tuple, starting from 1. 0 if no such tuple is registered
+	 */
+	public int getOrdinal(List<String> keyVals) {
+		return get(encodeKey(keyVals));
+	}
+
+	/**
+	 * Returns the ID of the tuple whose key is in the current row of a cursor
+	 * @param data		cursor over rows which hold the key columns
+	 * @param keyCols	key columns of the table, the same list object for each row
+	 * @return			the ID of the tuple, or an empty string if no such tuple is registered
+	 */
+	public String getID(RowCursor data, List<String> keyCols) throws MainException {
+		return getID(data.getKeyVals(keyCols));
+	}
+
+	/**
+	 * Returns the position of the tuple whose key is in the current row of a cursor
+	 * @param data		cursor over rows which hold the key columns
+	 * @param keyCols	key columns of the table, the same list object for each row
+	 * @return			the position of the tuple, starting from 1. 0 if no such tuple is registered
+	 */
+	public int getOrdinal(RowCursor data, List<String> keyCols) throws MainException {
+		return getOrdinal(data.getKeyVals(keyCols));
+	}
+
+	/**
+	 * Returns the primary key values of the tuple at a given position of the key scan.
+	 * The lookup by position is built the first time it is needed.
+	 * @param ordinal			position of the tuple, starting from 1
+	 * @param keyColumnCount	number of key columns of the table
+	 * @return					primary key values of the tuple, in the order of the key columns
+	 */
+	public List<String> getKeyVals(int ordinal, int keyColumnCount) {
+		if (keysByOrdinal == null) {
+			keysByOrdinal = new String[size];
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] != null)
+					keysByOrdinal[ordinals[i] - 1] = keys[i];
+			}
+		}
+		return decodeKey(keysByOrdinal[ordinal - 1], keyColumnCount);
+	}
+
+	/**
+	 * Builds the tuple ID from the position of the tuple in the key scan
+	 * @param ordinal	position of the tuple, starting from 1. 0 if the tuple is not registered
+	 * @return			the tuple ID
+	 */
+	protected String toID(int ordinal) {
+		if (ordinal == 0)
+			return "";
+		return tableName + ordinal;
+	}
+
+	private int put(String key) {
+		if ((size + 1) * 2 > keys.length)
+			rehash(keys.length * 2);
+
+		int slot = findSlot(keys, key);
+		if (keys[slot] == null) {
+			keys[slot]     = key;
+			ordinals[slot] = ++size;
+			keysByOrdinal  = null;
+		}
+		return ordinals[slot];
+	}
+
+	private int get(String key) {
+		int slot = findSlot(keys, key);
+		return keys[slot] == null ? 0 : ordinals[slot];
+	}
+
+	private void rehash(int capacity) {
+		String[] newKeys  = new String[capacity];
+		int[] newOrdinals = new int[capacity];
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != null) {
+				int slot = findSlot(newKeys, keys[i]);
+				newKeys[slot]     = keys[i];
+				newOrdinals[slot] = ordinals[i];
+			}
+		}
+		keys     = newKeys;
+		ordinals = newOrdinals;
+	}
+
+	/**
+	 * Linear probing over a table whose capacity is a power of 2
+	 * @return	the slot holding 'key', or the empty slot where it should be inserted
+	 */
+	private static int findSlot(String[] table, String key) {
+		int mask = table.length - 1;
+		int slot = mix(key.hashCode()) & mask;
+		while (table[slot] != null && !table[slot].equals(key)) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	static int mix(int hash) {
+		hash ^= (hash >>> 16);
+		hash *= 0x85ebca6b;
+		hash ^= (hash >>> 13);
+		return hash;
+	}
+
+	/**
+	 * Encodes the primary key values of a tuple into a single string.
+	 * A single-column key is stored as it is, a composite key is stored with the
+	 * length of each value in front of it so that different keys never share an encoding.
+	 * @param keyVals	primary key values of a tuple
+	 * @return			the encoded key
+	 */
+	static String encodeKey(List<String> keyVals) {
+		if (keyVals.size() == 1 && keyVals.get(0) != null)
+			return keyVals.get(0);
+
+		StringBuilder encoded = new StringBuilder();
+		for (int i = 0; i < keyVals.size(); i++) {
+			String val = keyVals.get(i);
+			if (val == null) {
+				encoded.append(NULL_VALUE);
+			} else {
+				encoded.append(val.length()).append(':').append(val);
+			}
+		}
+		return encoded.toString();
+	}
+
+	/**
+	 * Decodes a key encoded by {@link #encodeKey(List)}
+	 * @param key				the encoded key
+	 * @param keyColumnCount	number of values in the key
+	 * @return					the primary key values
+	 */
+	static List<String> decodeKey(String key, int keyColumnCount) {
+		List<String> keyVals = new ArrayList<String>(keyColumnCount);
+		if (keyColumnCount == 1 && !(key.length() == 1 && key.charAt(0) == NULL_VALUE)) {
+			keyVals.add(key);
+			return keyVals;
+		}
+		int pos = 0;
+		for (int i = 0; i < keyColumnCount; i++) {
+			if (key.charAt(pos) == NULL_VALUE) {
+				keyVals.add(null);
+				pos++;
+			} else {
+				int colon  = key.indexOf(':', pos);
+				int length = Integer.parseInt(key.substring(pos, colon));
+				keyVals.add(key.substring(colon + 1, colon + 1 + length));
+				pos = colon + 1 + length;
+			}
+		}
+		return keyVals;
+	}
+}
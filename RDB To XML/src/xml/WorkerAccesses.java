@@ -0,0 +1,83 @@
+package xml;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import main.MainException;
+import database.DBAccess;
+import database.DBContext;
+
+/**
+ * Database accesses lent to the threads which print parts of the document in parallel.
+ *
+ * <p>
+ * In a consistent snapshot, the accesses of the snapshot workers are lent, one per thread.
+ * They read their streams into memory on their own connection, so a thread needs no other
+ * connection. Otherwise a thread opens an access of its own, after reserving the connections
+ * its streams may hold at once, so that threads never wait on each other for a connection
+ * while they hold some.
+ * </p>
+ */
+class WorkerAccesses {
+
+	private DBContext context;
+	private BlockingQueue<DBAccess> snapshotAccesses;
+	private Semaphore connections;
+	private int connectionCount;
+
+	/**
+	 * @param context			database context of the export
+	 * @param snapshotWorkers	accesses of the snapshot, or null if there is no snapshot
+	 */
+	WorkerAccesses(DBContext context, List<DBAccess> snapshotWorkers) {
+		this.context = context;
+		if (snapshotWorkers != null)
+			this.snapshotAccesses = new LinkedBlockingQueue<DBAccess>(snapshotWorkers);
+		// The session connection stays with the main thread
+		this.connectionCount = Math.max(1, context.getPool().getMaxSize() - 1);
+		this.connections     = new Semaphore(connectionCount);
+	}
+
+	/**
+	 * Lends an access, waiting until the connections it may need are free
+	 * @param needed			number of connections the borrower may hold at once
+	 * @return					the access, to be given back with {@link #release(DBAccess, int)}
+	 * @throws MainException	if the access cannot be opened or the thread is interrupted
+	 */
+	DBAccess acquire(int needed) throws MainException {
+		try {
+			if (snapshotAccesses != null)
+				return snapshotAccesses.take();
+			connections.acquire(reserved(needed));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MainException("Interrupted while waiting for a database connection.");
+		}
+		try {
+			return context.openDBAccess();
+		} catch (MainException e) {
+			connections.release(reserved(needed));
+			throw e;
+		}
+	}
+
+	/**
+	 * Gives back an access lent by {@link #acquire(int)}
+	 * @param access	the access
+	 * @param needed	number of connections given to acquire
+	 */
+	void release(DBAccess access, int needed) {
+		if (snapshotAccesses != null) {
+			snapshotAccesses.add(access);
+			return;
+		}
+		access.close();
+		connections.release(reserved(needed));
+	}
+
+	private int reserved(int needed) {
+		return Math.min(needed, connectionCount);
+	}
+}
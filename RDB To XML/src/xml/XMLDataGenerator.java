@@ -1,17 +1,33 @@
 package xml;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.ResultSet;
 import java.sql.SQLException;
-//import java.sql.ResultSet;
+import java.sql.Types;
 //import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 //import java.util.Set;
 //import java.util.Set;
 //import java.util.Iterator;
@@ -19,8 +35,16 @@ import javax.sql.rowset.CachedRowSet;
 //import javax.sql.rowset.JoinRowSet;
 import org.apache.log4j.Logger;
 
+import main.ExportSettings;
 import main.MainException;
+import main.TaskRunner;
+import database.ConsistentSnapshot;
 import database.DBAccess;
+import database.DBContext;
+import database.ConcatenatedRows;
+import database.DataStream;
+import database.KeyRange;
+import database.OuterUnionQuery;
 import orass.ORASSNode;
 import database.ColumnDetail;
 
@@ -28,9 +52,12 @@ import database.ColumnDetail;
 
 public class XMLDataGenerator implements Generator {
 
+	private DBContext context;
 	private DBAccess dbCache;
+	private ConsistentSnapshot snapshot;
 	private File file;
-	private PrintWriter writer;
+	private XMLWriter writer;
+	private Map<String, TagBytes> tags;
 	private List<List<String>> tables;
 	private List<String> nodeTables;
 	private List<NodeRelationship> relationships;
@@ -39,34 +66,136 @@ public class XMLDataGenerator implements Generator {
 	private Map<String, List<String>> colMaps;
 	private Map<String, CachedRowSet> tableKeyData;
 	private Map<String, CachedRowSet> tableData;
-	private Map<String, List<TupleIDMap>> tableDataIDs;
+	private Map<String, ORASSNode> tableNodes;
+	private Map<String, RowSpool> rowSpools;
+	private Map<String, List<String>> keyScans;
+	private Map<String, List<String>> dataScans;
+	private Set<String> printedTables;
+	private List<String> keyFetches;
+	private List<String> dataFetches;
+	private List<String> dataCopies;
+	private Map<ORASSNode, RelationshipIndex> relationshipIndexes;
+	private Map<ORASSNode, RelationshipMerge> relationshipMerges;
+	private Map<ORASSNode, RelationshipBatch> relationshipBatches;
+	private Map<String, NaryRelationshipIndex> naryIndexes;
+	private Map<String, TupleIDRegistry> tableDataIDs;
 	private Map<String, List<String>> nRels;
+	private EdgePlanner edgePlanner;
+	private Map<String, EdgeStrategy> edgeStrategies;
+	private List<ORASSNode> printOrder;
+	private Map<ORASSNode, RowSource> prefetchedRows;
+	private ExportSettings settings;
 
 
 	//	private Map<Integer, Boolean> needClosing;
 	private Logger logger = Logger.getLogger(XMLDataGenerator.class);
 
+	public XMLDataGenerator(DBContext context) {
+		this(context, ExportSettings.fromSystemProperties());
+	}
+
+	public XMLDataGenerator(DBContext context, ExportSettings settings) {
+		this.context  = context;
+		this.dbCache  = context.getDBAccess();
+		this.settings = settings;
+	}
+
+	/*
+	 * Generator which prints a part of the document of 'parent' into 'writer' with its own access.
+	 * The tables and tuple IDs of the parent are shared, they are only read while printing.
+	 * */
+	private XMLDataGenerator(XMLDataGenerator parent, DBAccess dbAccess, XMLWriter writer) {
+		this.context = parent.context;
+		this.dbCache = dbAccess;
+		this.writer = writer;
+		this.tags = parent.tags;
+		this.settings = parent.settings;
+		this.tables = parent.tables;
+		this.nodeTables = parent.nodeTables;
+		this.relationships = parent.relationships;
+		this.keyMaps = parent.keyMaps;
+		this.colMaps = parent.colMaps;
+		this.criticalColMaps = parent.criticalColMaps;
+		this.tableDataIDs = parent.tableDataIDs;
+		this.tableKeyData = parent.tableKeyData;
+		this.tableData = parent.tableData;
+		this.tableNodes = parent.tableNodes;
+		this.rowSpools = parent.rowSpools;
+		this.keyScans = parent.keyScans;
+		this.dataScans = parent.dataScans;
+		this.printedTables = new HashSet<String>();
+		this.relationshipIndexes = new IdentityHashMap<ORASSNode, RelationshipIndex>();
+		this.relationshipMerges = new IdentityHashMap<ORASSNode, RelationshipMerge>();
+		this.relationshipBatches = new IdentityHashMap<ORASSNode, RelationshipBatch>();
+		this.naryIndexes = new HashMap<String, NaryRelationshipIndex>();
+		this.nRels = parent.nRels;
+		this.edgePlanner = new EdgePlanner(dbAccess, settings);
+		this.edgeStrategies = parent.edgeStrategies;
+		this.printOrder = parent.printOrder;
+		this.prefetchedRows = new IdentityHashMap<ORASSNode, RowSource>();
+	}
+
 	@Override
 	public void generate(String dbName, String fileName, List<ORASSNode> rootNodes, Map<String, List<String>> naryRels) throws MainException {
 		// TODO Auto-generated method stub
-		dbCache = DBAccess.getInstance();
 		tables = new ArrayList<List<String>>();
 		nodeTables = new ArrayList<String>();
 		relationships = new ArrayList<NodeRelationship>();
 		keyMaps = new HashMap<String, List<String>>();
 		colMaps = new HashMap<String, List<String>>();
 		criticalColMaps = new HashMap<String, List<ColumnDetail>>();
-		tableDataIDs = new HashMap<String, List<TupleIDMap>>();
+		tableDataIDs = new HashMap<String, TupleIDRegistry>();
 		tableKeyData= new HashMap<String, CachedRowSet>();
 		tableData= new HashMap<String, CachedRowSet>();
+		tableNodes = new HashMap<String, ORASSNode>();
+		rowSpools = new HashMap<String, RowSpool>();
+		keyScans = new HashMap<String, List<String>>();
+		dataScans = new HashMap<String, List<String>>();
+		printedTables = new HashSet<String>();
+		keyFetches = new ArrayList<String>();
+		dataFetches = new ArrayList<String>();
+		dataCopies = new ArrayList<String>();
+		relationshipIndexes = new IdentityHashMap<ORASSNode, RelationshipIndex>();
+		relationshipMerges = new IdentityHashMap<ORASSNode, RelationshipMerge>();
+		relationshipBatches = new IdentityHashMap<ORASSNode, RelationshipBatch>();
+		naryIndexes = new HashMap<String, NaryRelationshipIndex>();
 		nRels = naryRels;
+		edgePlanner = new EdgePlanner(dbCache, settings);
+		edgeStrategies = Collections.synchronizedMap(new HashMap<String, EdgeStrategy>());
+		printOrder = new ArrayList<ORASSNode>();
+		prefetchedRows = new IdentityHashMap<ORASSNode, RowSource>();
+		tags = new ConcurrentHashMap<String, TagBytes>();
 		//	needClosing = new HashMap<Integer, Boolean>();
 
 		setupFile(dbName, fileName);
 
-		printDB(dbName, fileName, rootNodes);
-
-		writer.close();
+		// Streamed rows are read while printing, so only materialised rows are read in parallel
+		if(settings.isParallelExtraction() && !settings.isStreaming()){
+			snapshot = context.openSnapshot(settings.getExtractionThreads());
+			if(settings.isMergeJoin() || settings.isOuterUnion() || settings.isEdgePlanner()){
+				// A stream of the snapshot would be read into memory, see DBAccess.openStream
+				logger.info("The extraction threads read a snapshot, so relationships are not merged and outer unions are not used");
+			}
+		}
+		try{
+			printDB(dbName, fileName, rootNodes);
+		}finally{
+			closePrefetchedRows();
+			if(snapshot != null){
+				snapshot.close();
+				snapshot = null;
+			}
+			writer.close();
+			for(TupleIDRegistry registry : tableDataIDs.values()){
+				registry.close();
+			}
+			for(RowSpool spool : rowSpools.values()){
+				spool.close();
+			}
+		}
+		if(writer.checkError()){
+			throw new MainException("The data output file cannot be written.");
+		}
 	}
 
 	private void setupFile(String dbName, String fileName) throws MainException{
@@ -85,7 +214,12 @@ public class XMLDataGenerator implements Generator {
 		}
 
 		try{
-			writer = new PrintWriter(new FileOutputStream(filePath),true);
+			OutputStream out = new FileOutputStream(filePath);
+			if(settings.isPipeline()){
+				// The file is written by a thread of its own
+				out = new QueuedOutputStream(out, "xml-writer");
+			}
+			writer = new XMLWriter(out);
 		}  catch(FileNotFoundException e){
 			throw new MainException("FileOutputStream: Cannot find the data output file.");
 		}
@@ -101,64 +235,604 @@ public class XMLDataGenerator implements Generator {
 		writer.println("xsi:schemaLocation=\""+filename+".xsd\">");
 
 		//CachedRowSet results = setupData();
+		List<ORASSNode> unionRoots = new ArrayList<ORASSNode>();
 		for(int i=0; i<rootNodes.size(); i++){
 			ORASSNode root = rootNodes.get(i);
 			setupTables(root);
-			populateTableData(root);
+			boolean isUnion = settings.isOuterUnion() && snapshot == null && canUseOuterUnion(root);
+			if(isUnion){
+				unionRoots.add(root);
+			}
+			// The data of a subtree exported with an outer union is read by the union, unless it also assigns the tuple IDs
+			populateTableData(root, !isUnion || settings.isSingleScan());
 		}
+		fetchTableData();
 
 		assignIDsToTuples();
 
+		if(settings.isEdgePlanner()){
+			for(int i=0; i<rootNodes.size(); i++){
+				ORASSNode root = rootNodes.get(i);
+				if(!unionRoots.contains(root)){
+					planEdges(root);
+				}
+			}
+		}
+
+		if(isParallelPrinting()){
+			printInParallel(rootNodes, unionRoots);
+		}else{
+			for(int i=0; i<rootNodes.size(); i++){
+				if(!unionRoots.contains(rootNodes.get(i))){
+					collectNodes(rootNodes.get(i), printOrder);
+				}
+			}
+			for(int i=0; i<rootNodes.size(); i++){
+				ORASSNode root = rootNodes.get(i);
+				if(unionRoots.contains(root)){
+					printOuterUnion(root);
+				}else{
+					printTable(root, 1);
+				}
+			}
+		}
+
+		writer.println("</"+dbName+">");
+	}
+
+	/*
+	 * Whether the tables are printed by several threads. Streamed rows are shared through
+	 * spools and the session connection, so they are always printed one table after the other.
+	 * */
+	private boolean isParallelPrinting(){
+		if(!settings.isParallelPrinting() || settings.isStreaming()){
+			return false;
+		}
+		return snapshot == null || !snapshot.getWorkers().isEmpty();
+	}
+
+	/*
+	 * Prints each table, and each subtree exported with an outer union, into a segment of its own.
+	 * The document is a sequence of tables once the tuple IDs are known, so the segments are printed
+	 * in any order by the threads and copied into the document in the order of the serial print.
+	 * */
+	private void printInParallel(List<ORASSNode> rootNodes, List<ORASSNode> unionRoots) throws MainException{
+		List<ORASSNode> sections = new ArrayList<ORASSNode>();
 		for(int i=0; i<rootNodes.size(); i++){
 			ORASSNode root = rootNodes.get(i);
-			printTable(root, 1);
+			if(unionRoots.contains(root)){
+				sections.add(root);
+			}else{
+				collectNodes(root, sections);
+			}
 		}
+		List<DBAccess> snapshotWorkers = snapshot == null ? null : snapshot.getWorkers();
+		int threadCount = settings.getPrintThreads();
+		if(snapshotWorkers != null){
+			threadCount = Math.min(threadCount, snapshotWorkers.size());
+		}
+		WorkerAccesses accesses = new WorkerAccesses(context, snapshotWorkers);
+		ExecutorService executor = TaskRunner.newExecutor(settings.isVirtualThreads(), threadCount);
+		List<Future<File>> segments = new ArrayList<Future<File>>();
+		int appended = 0;
+		try{
+			for(int i=0; i<sections.size(); i++){
+				ORASSNode section = sections.get(i);
+				segments.add(executor.submit(newSection(section, unionRoots.contains(section), accesses)));
+			}
+			for(; appended<segments.size(); appended++){
+				appendSegment(getSegment(segments.get(appended)));
+			}
+		}finally{
+			// The sections still running read the registries and the snapshot, which are closed once this returns
+			TaskRunner.shutdownAndWait(executor, segments);
+			for(int i=appended; i<segments.size(); i++){
+				deleteSegment(segments.get(i));
+			}
+		}
+		logger.info("Printed " + sections.size() + " sections with " + threadCount + " threads");
+	}
 
-		writer.println("</"+dbName+">");
+	private Callable<File> newSection(final ORASSNode node, final boolean isUnion, final WorkerAccesses accesses){
+		return new Callable<File>(){
+			public File call() throws Exception{
+				int connectionCount = getConnectionCount(node, isUnion);
+				DBAccess access = accesses.acquire(connectionCount);
+				File segment = null;
+				boolean isPrinted = false;
+				try{
+					segment = File.createTempFile("section", ".xml", settings.getTempDirectory());
+					XMLWriter segmentWriter = new XMLWriter(new FileOutputStream(segment));
+					try{
+						XMLDataGenerator generator = new XMLDataGenerator(XMLDataGenerator.this, access, segmentWriter);
+						if(isUnion){
+							generator.printOuterUnion(node);
+						}else{
+							generator.printTableRows(node, 1);
+						}
+					}finally{
+						segmentWriter.close();
+					}
+					if(segmentWriter.checkError()){
+						throw new MainException("Cannot write the segment of " + node.getName() + " to " + segment);
+					}
+					isPrinted = true;
+					return segment;
+				}finally{
+					accesses.release(access, connectionCount);
+					if(!isPrinted && segment != null){
+						segment.delete();
+					}
+				}
+			}
+		};
+	}
+
+	/*
+	 * Connections a section may hold at once: its access, and a stream for each relationship it prints
+	 * */
+	private int getConnectionCount(ORASSNode node, boolean isUnion){
+		if(isUnion){
+			return 2;
+		}
+		int count = 2 + node.getChildren().size() + node.getSupertypeNode().size();
+		if(node.getNormalEntityNode() != null){
+			count++;
+		}
+		return count;
+	}
+
+	private File getSegment(Future<File> segment) throws MainException{
+		try{
+			return segment.get();
+		}catch(InterruptedException ex){
+			Thread.currentThread().interrupt();
+			throw new MainException("Interrupted while printing the tables.");
+		}catch(ExecutionException ex){
+			if(ex.getCause() instanceof MainException){
+				throw (MainException) ex.getCause();
+			}
+			throw new MainException("Cannot print the tables : " + ex.getCause());
+		}
+	}
+
+	private void deleteSegment(Future<File> segment){
+		segment.cancel(true);
+		if(segment.isDone() && !segment.isCancelled()){
+			try{
+				segment.get().delete();
+			}catch(Exception ex){
+				// the section failed and has deleted its segment
+			}
+		}
 	}
 
-	private void populateTableData(ORASSNode node) throws MainException{
+	/*
+	 * Copies a printed segment into the document and deletes it
+	 * */
+	private void appendSegment(File segment) throws MainException{
+		try{
+			InputStream in = new FileInputStream(segment);
+			try{
+				byte[] buffer = new byte[XMLWriter.BUFFER_SIZE];
+				int count;
+				while((count = in.read(buffer)) != -1){
+					writer.write(buffer, 0, count);
+				}
+			}finally{
+				in.close();
+			}
+		}catch(IOException ex){
+			throw new MainException("Cannot copy the segment " + segment + " : " + ex.getMessage());
+		}finally{
+			segment.delete();
+		}
+	}
+
+	private void populateTableData(ORASSNode node, boolean fetchData) throws MainException{
 		String tableName = node.getName();
 		String originalName = node.getOriginalName();
-		List<String> cols = keyMaps.get(tableName);
-		CachedRowSet crsKey = dbCache.getSelectedData(originalName, cols);
-		tableKeyData.put(tableName, crsKey);
-		//logger.info("Table: " + originalName);
-		List<ColumnDetail> colDetails = node.getEntityAttributes();
-		CachedRowSet crs = dbCache.getData(originalName, colDetails, criticalColMaps.get(tableName));
-		tableData.put(tableName, crs);
+		tableNodes.put(tableName, node);
+		// Nodes which alias the same table share its scans
+		boolean isFirstKeyScan = addToScan(keyScans, getKeyScan(node), tableName);
+		boolean isFirstDataScan = fetchData && addToScan(dataScans, getDataScan(node), tableName);
+		// In streaming mode the rows are read when they are needed
+		if(!settings.isStreaming()){
+			// The rows are read by fetchTableData once the scans of all the nodes are known
+			if(!settings.isSingleScan() && isFirstKeyScan){
+				keyFetches.add(tableName);
+			}
+			//logger.info("Table: " + originalName);
+			if(isFirstDataScan){
+				dataFetches.add(tableName);
+			}else if(fetchData){
+				dataCopies.add(tableName);
+			}
+		}
 		//logger.info("Table: " + originalName + "; table size: "+crs.size());
-		List<TupleIDMap> tim = new ArrayList<TupleIDMap>();
-		tableDataIDs.put(tableName, tim);
 		List<ORASSNode> children = node.getChildren();
 		for(int j=0; j<children.size(); j++){
 			ORASSNode child = children.get(j);
-			populateTableData(child);
+			populateTableData(child, fetchData);
+		}
+	}
+
+	/*
+	 * Reads the key and data scans of the tables, on the workers of the snapshot if there are any
+	 * */
+	private void fetchTableData() throws MainException{
+		if(snapshot != null && !snapshot.getWorkers().isEmpty()){
+			fetchInParallel(snapshot.getWorkers());
+			if(!settings.isParallelPrinting()){
+				// Otherwise the workers print the tables in the same snapshot
+				snapshot.releaseWorkers();
+			}
+		}else{
+			for(int i=0; i<keyFetches.size(); i++){
+				String tableName = keyFetches.get(i);
+				tableKeyData.put(tableName, fetchScan(dbCache, tableName, true, null));
+			}
+			for(int i=0; i<dataFetches.size(); i++){
+				String tableName = dataFetches.get(i);
+				tableData.put(tableName, fetchScan(dbCache, tableName, false, null));
+			}
+		}
+		// Each node closes its rows once printed, so an alias gets a copy of the rows in memory
+		for(int i=0; i<dataCopies.size(); i++){
+			String tableName = dataCopies.get(i);
+			String scannedTable = dataScans.get(getDataScan(tableNodes.get(tableName))).get(0);
+			try{
+				tableData.put(tableName, tableData.get(scannedTable).createCopy());
+			}catch(SQLException ex){
+				throw new MainException("Cannot copy the data of " + scannedTable + " : " + ex.getMessage());
+			}
+		}
+		keyFetches.clear();
+		dataFetches.clear();
+		dataCopies.clear();
+	}
+
+	/*
+	 * Reads the scans with one thread per worker. Every worker reads the same snapshot,
+	 * so the tables refer to each other as they do on the session connection.
+	 * */
+	private void fetchInParallel(List<DBAccess> workers) throws MainException{
+		final BlockingQueue<DBAccess> idleWorkers = new LinkedBlockingQueue<DBAccess>(workers);
+		ExecutorService executor = TaskRunner.newExecutor(settings.isVirtualThreads(), workers.size());
+		List<Future<CachedRowSet>> fetches = new ArrayList<Future<CachedRowSet>>();
+		try{
+			Map<String, List<Future<CachedRowSet>>> keyResults = new LinkedHashMap<String, List<Future<CachedRowSet>>>();
+			Map<String, List<Future<CachedRowSet>>> dataResults = new LinkedHashMap<String, List<Future<CachedRowSet>>>();
+			for(int i=0; i<keyFetches.size(); i++){
+				String tableName = keyFetches.get(i);
+				keyResults.put(tableName, submitFetches(executor, idleWorkers, tableName, true, workers.size()));
+				fetches.addAll(keyResults.get(tableName));
+			}
+			for(int i=0; i<dataFetches.size(); i++){
+				String tableName = dataFetches.get(i);
+				dataResults.put(tableName, submitFetches(executor, idleWorkers, tableName, false, workers.size()));
+				fetches.addAll(dataResults.get(tableName));
+			}
+			for(Map.Entry<String, List<Future<CachedRowSet>>> result : keyResults.entrySet()){
+				tableKeyData.put(result.getKey(), getFetchResult(result.getValue()));
+			}
+			for(Map.Entry<String, List<Future<CachedRowSet>>> result : dataResults.entrySet()){
+				tableData.put(result.getKey(), getFetchResult(result.getValue()));
+			}
+		}finally{
+			// The snapshot is closed once this returns, so the fetches still running are waited for
+			TaskRunner.shutdownAndWait(executor, fetches);
 		}
+		logger.info("Read " + (keyFetches.size() + dataFetches.size()) + " scans on " + workers.size() + " connections");
 	}
 
+	/*
+	 * Submits the scan of a table, split into key ranges if the table is large enough
+	 * */
+	private List<Future<CachedRowSet>> submitFetches(ExecutorService executor, BlockingQueue<DBAccess> idleWorkers, String tableName, boolean isKeyScan, int rangeCount) throws MainException{
+		List<Future<CachedRowSet>> results = new ArrayList<Future<CachedRowSet>>();
+		List<KeyRange> ranges = getScanRanges(tableName, isKeyScan, rangeCount);
+		if(ranges == null){
+			results.add(executor.submit(newFetch(idleWorkers, tableName, isKeyScan, null)));
+			return results;
+		}
+		for(int i=0; i<ranges.size(); i++){
+			results.add(executor.submit(newFetch(idleWorkers, tableName, isKeyScan, ranges.get(i))));
+		}
+		return results;
+	}
+
+	/*
+	 * Splits a scan into ranges of its first ORDER BY column. The ranges read one after the
+	 * other give the rows of the whole scan in the same order, so every tuple gets the ID it
+	 * gets from a single scan: its position is the number of rows in the ranges before its own
+	 * plus its position in its range.
+	 * @return	the ranges, or null if the scan is read at once
+	 * */
+	private List<KeyRange> getScanRanges(String tableName, boolean isKeyScan, int rangeCount) throws MainException{
+		ORASSNode node = tableNodes.get(tableName);
+		String originalName = node.getOriginalName();
+		if(rangeCount < 2 || settings.getPartitionRows() <= 0 || dbCache.getTableRowCount(originalName) < settings.getPartitionRows()){
+			return null;
+		}
+		String colTable;
+		String colName;
+		if(isKeyScan){
+			colTable = originalName;
+			colName = keyMaps.get(tableName).get(0);
+		}else{
+			List<ColumnDetail> orderCols = criticalColMaps.get(tableName);
+			if(orderCols.isEmpty() || !isScannedColumn(node.getEntityAttributes(), orderCols.get(0))){
+				// A DISTINCT scan could give the same row in two ranges of a column it does not select
+				return null;
+			}
+			colTable = orderCols.get(0).getTableName();
+			colName = orderCols.get(0).getName();
+		}
+		List<Object> bounds = dbCache.getRangeBounds(colTable, colName, rangeCount);
+		if(bounds.isEmpty()){
+			return null;
+		}
+		return KeyRange.split(colTable + "." + colName, bounds);
+	}
+
+	private boolean isScannedColumn(List<ColumnDetail> cols, ColumnDetail col){
+		for(int i=0; i<cols.size(); i++){
+			if(cols.get(i).getTableName().equals(col.getTableName()) && cols.get(i).getName().equals(col.getName())){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private Callable<CachedRowSet> newFetch(final BlockingQueue<DBAccess> idleWorkers, final String tableName, final boolean isKeyScan, final KeyRange range){
+		return new Callable<CachedRowSet>(){
+			public CachedRowSet call() throws Exception{
+				DBAccess worker = idleWorkers.take();
+				try{
+					return fetchScan(worker, tableName, isKeyScan, range);
+				}finally{
+					idleWorkers.put(worker);
+				}
+			}
+		};
+	}
+
+	/*
+	 * Rows of a scan, joined in the order of its ranges
+	 * */
+	private CachedRowSet getFetchResult(List<Future<CachedRowSet>> results) throws MainException{
+		List<CachedRowSet> parts = new ArrayList<CachedRowSet>();
+		for(int i=0; i<results.size(); i++){
+			parts.add(getFetchResult(results.get(i)));
+		}
+		return ConcatenatedRows.concatenate(parts);
+	}
+
+	private CachedRowSet getFetchResult(Future<CachedRowSet> result) throws MainException{
+		try{
+			return result.get();
+		}catch(InterruptedException ex){
+			Thread.currentThread().interrupt();
+			throw new MainException("Interrupted while reading the table data.");
+		}catch(ExecutionException ex){
+			if(ex.getCause() instanceof MainException){
+				throw (MainException) ex.getCause();
+			}
+			throw new MainException("Cannot read the table data : " + ex.getCause());
+		}
+	}
+
+	/*
+	 * Reads the key scan or the data scan of a table
+	 * */
+	private CachedRowSet fetchScan(DBAccess access, String tableName, boolean isKeyScan, KeyRange range) throws MainException{
+		ORASSNode node = tableNodes.get(tableName);
+		if(isKeyScan){
+			return access.getSelectedData(node.getOriginalName(), keyMaps.get(tableName), range);
+		}
+		return access.getData(node.getOriginalName(), node.getEntityAttributes(), criticalColMaps.get(tableName), range);
+	}
+
+	/*
+	 * Adds a table to the tables read by a scan
+	 * @return	true if the table is the first one of the scan, i.e. the one whose rows are read
+	 * */
+	private boolean addToScan(Map<String, List<String>> scans, String scan, String tableName){
+		List<String> tables = scans.get(scan);
+		if(tables == null){
+			tables = new ArrayList<String>();
+			scans.put(scan, tables);
+		}
+		if(!tables.contains(tableName)){
+			tables.add(tableName);
+		}
+		return tables.get(0).equals(tableName);
+	}
+
+	/*
+	 * Key scans of nodes with the same original table and key columns read the same rows
+	 * */
+	private String getKeyScan(ORASSNode node){
+		return node.getOriginalName() + " " + keyMaps.get(node.getName());
+	}
+
+	/*
+	 * Data scans of nodes with the same original table, columns and order read the same rows
+	 * */
+	private String getDataScan(ORASSNode node){
+		StringBuilder scan = new StringBuilder(node.getOriginalName());
+		List<ColumnDetail> cols = node.getEntityAttributes();
+		for(int i=0; i<cols.size(); i++){
+			scan.append(" ").append(cols.get(i).getTableName()).append(".").append(cols.get(i).getName());
+		}
+		scan.append(" ORDER BY");
+		List<ColumnDetail> orderCols = criticalColMaps.get(node.getName());
+		for(int i=0; i<orderCols.size(); i++){
+			scan.append(" ").append(orderCols.get(i).getTableName()).append(".").append(orderCols.get(i).getName());
+		}
+		return scan.toString();
+	}
 	private void assignIDsToTuples() throws MainException{
+		if(settings.isSingleScan()){
+			assignIDsFromTableData();
+			return;
+		}
 		try{
 			for(int i=0; i<nodeTables.size(); i++){
 				String tableName = nodeTables.get(i);
-				CachedRowSet keyData = tableKeyData.get(tableName);
+				List<String> aliases = keyScans.get(getKeyScan(tableNodes.get(tableName)));
+				if(!aliases.get(0).equals(tableName)){
+					// The keys have been registered with the scan of the first alias
+					continue;
+				}
 				List<String> keyCols = keyMaps.get(tableName);
-				int k = 1; 
-				while(keyData.next()){
-					String id = tableName + k;
-					List<String> keyVals = getSelectedVals(tableName, keyCols, keyData);
-					TupleIDMap tidm = new TupleIDMap(tableName, id, keyVals);
-					List<TupleIDMap> tim = tableDataIDs.get(tableName);
-					tim.add(tidm);
-					k++;
+				DataStream keyStream = openKeyData(tableName, keyCols);
+				try{
+					ResultSet keyData = keyStream.getResultSet();
+					TupleIDRegistry[] registries = new TupleIDRegistry[aliases.size()];
+					for(int j=0; j<registries.length; j++){
+						registries[j] = tableDataIDs.get(aliases.get(j));
+					}
+					String keyCol = keyCols.get(0);
+					while(keyData.next()){
+						List<String> keyVals = null;
+						for(int j=0; j<registries.length; j++){
+							TupleIDRegistry registry = registries[j];
+							if(registry instanceof LongTupleIDRegistry){
+								((LongTupleIDRegistry) registry).register(keyData.getLong(keyCol));
+							}else{
+								if(keyVals == null){
+									keyVals = getSelectedVals(tableName, keyCols, keyData);
+								}
+								registry.register(keyVals);
+							}
+							if(isOverMappingThreshold(registry)){
+								registries[j] = mapRegistry(registry);
+							}
+						}
+					}
+				}finally{
+					keyStream.close();
 				}
 			}
 		}catch(SQLException ex){
+			throw new MainException(ex.getMessage());
+		}
+	}
+	/*
+	 * Assigns the tuple IDs while scanning the data of each table, instead of running a separate key scan.
+	 * Materialised rows are rewound for printing, streamed rows are kept in a RowSpool until the table is printed.
+	 * */
+	private void assignIDsFromTableData() throws MainException{
+		Set<String> scannedTables = new HashSet<String>();
+		for(int i=0; i<nodeTables.size(); i++){
+			String tableName = nodeTables.get(i);
+			if(!scannedTables.add(tableName)){
+				continue;
+			}
+			ORASSNode node = tableNodes.get(tableName);
+			List<String> aliases = dataScans.get(getDataScan(node));
+			if(aliases == null || !aliases.get(0).equals(tableName)){
+				// The tuples have been registered with the scan of the first alias
+				continue;
+			}
+			List<String> keyCols = keyMaps.get(tableName);
+			RowSpool spool = null;
+			if(settings.isStreaming()){
+				spool = new RowSpool(settings.getTempDirectory(), getScannedColumns(node));
+				for(int j=0; j<aliases.size(); j++){
+					rowSpools.put(aliases.get(j), spool);
+				}
+				spool.setReaderCount(aliases.size());
+			}
+			TupleIDRegistry[] registries = new TupleIDRegistry[aliases.size()];
+			for(int j=0; j<registries.length; j++){
+				registries[j] = tableDataIDs.get(aliases.get(j));
+			}
+			RowSource rows = new ResultSetRowSource(openTableData(node));
+			try{
+				while(rows.next()){
+					List<String> keyVals = null;
+					for(int k=0; k<registries.length; k++){
+						TupleIDRegistry registry = registries[k];
+						if(registry instanceof LongTupleIDRegistry){
+							((LongTupleIDRegistry) registry).register(rows.getLong(keyCols.get(0)));
+						}else{
+							if(keyVals == null){
+								keyVals = new ArrayList<String>();
+								for(int j=0; j<keyCols.size(); j++){
+									keyVals.add(rows.getString(keyCols.get(j)));
+								}
+							}
+							registry.register(keyVals);
+						}
+						if(isOverMappingThreshold(registry)){
+							registries[k] = mapRegistry(registry);
+						}
+					}
+					if(spool != null){
+						spool.append(rows);
+					}
+				}
+			}finally{
+				rows.close();
+			}
+			if(spool == null){
+				try{
+					tableData.get(tableName).beforeFirst();
+				}catch(SQLException ex){
+					throw new MainException("Cannot rewind the data of " + tableName + " : " + ex.getMessage());
+				}
+			}
+		}
+	}
 
+	/*
+	 * Columns read from the data of a table: the key columns followed by the attributes
+	 * */
+	private List<String> getScannedColumns(ORASSNode node){
+		List<String> cols = new ArrayList<String>(keyMaps.get(node.getName()));
+		List<ColumnDetail> entityCols = node.getEntityAttributes();
+		for(int i=0; i<entityCols.size(); i++){
+			String colName = entityCols.get(i).getName();
+			if(!cols.contains(colName)){
+				cols.add(colName);
+			}
 		}
+		return cols;
 	}
 
-	private List<String> getSelectedVals(String tableName, List<String> cols, CachedRowSet data) throws MainException{
+	/*
+	 * Returns the primary key values of a table in the order of the key scan
+	 * */
+	private DataStream openKeyData(String tableName, List<String> keyCols) throws MainException{
+		if(settings.isStreaming()){
+			return dbCache.streamSelectedData(tableNodes.get(tableName).getOriginalName(), keyCols);
+		}
+		return new DataStream(tableKeyData.get(tableName));
+	}
+
+	private boolean isOverMappingThreshold(TupleIDRegistry registry){
+		return settings.isMappedRegistryEnabled() && !registry.isMapped() && registry.size() >= settings.getMappedRegistryThreshold();
+	}
+
+	/*
+	 * Moves the registry of a table to memory-mapped files once the table has more tuples than the threshold
+	 * */
+	private TupleIDRegistry mapRegistry(TupleIDRegistry registry) throws MainException{
+		String tableName = registry.getTableName();
+		try{
+			TupleIDRegistry mapped = registry.toMappedRegistry(settings.getTempDirectory());
+			tableDataIDs.put(tableName, mapped);
+			logger.info("Tuple IDs of " + tableName + " moved to a memory-mapped file after " + registry.size() + " tuples");
+			return mapped;
+		}catch(IOException ex){
+			throw new MainException("Cannot create the tuple ID file of " + tableName + " : " + ex.getMessage());
+		}
+	}
+
+	private List<String> getSelectedVals(String tableName, List<String> cols, ResultSet data) throws MainException{
 
 		try{
 			//logger.info("get data for "+tableName);
@@ -176,15 +850,45 @@ public class XMLDataGenerator implements Generator {
 
 	}
 
-	private String getTupleID(String tableName, List<String> keyVals){
-		List<TupleIDMap> tim = tableDataIDs.get(tableName);
-		for(int i=0; i<tim.size(); i++){
-			TupleIDMap currIDMap = tim.get(i);
-			if(currIDMap.isPKValsSame(keyVals)){
-				return currIDMap.getID();
+	/*
+	 * Returns the ID of the tuple of 'tableName' whose key is in the current row of 'data'.
+	 * A single integer key is read with getLong, other keys into the reusable slots of the cursor.
+	 * */
+	private String getTupleID(String tableName, List<String> keyCols, RowCursor data) throws MainException{
+		return tableDataIDs.get(tableName).getID(data, keyCols);
+	}
+
+	/*
+	 * Returns the ID of the tuple whose key is in the current row of the cursor
+	 * */
+	private String getTupleID(TupleIDRegistry registry, LookaheadCursor data){
+		if(data.isLongKey() && registry instanceof LongTupleIDRegistry){
+			return ((LongTupleIDRegistry) registry).getID(data.getLongKey());
+		}
+		return registry.getID(data.getKeyVals());
+	}
+
+	/*
+	 * Tables whose primary key is a single integer column get a registry that keeps the keys as longs.
+	 * Composite and non-integer keys use the generic registry, and so do BIGINT UNSIGNED keys,
+	 * whose values above Long.MAX_VALUE cannot be read as longs.
+	 * */
+	private TupleIDRegistry createRegistry(String tableName, List<String> pks, List<ColumnDetail> colDetails){
+		if(pks.size()==1){
+			String pkCol = pks.get(0);
+			for(int i=0; i<colDetails.size(); i++){
+				ColumnDetail col = colDetails.get(i);
+				if(col.getName().equals(pkCol) && isLongType(col)){
+					return new LongTupleIDRegistry(tableName);
+				}
 			}
 		}
-		return "";
+		return new TupleIDRegistry(tableName);
+	}
+
+	private boolean isLongType(ColumnDetail col){
+		int sqlType = col.getSqlType();
+		return sqlType == Types.TINYINT || sqlType == Types.SMALLINT || sqlType == Types.INTEGER || (sqlType == Types.BIGINT && !col.isUnsigned());
 	}
 
 	private List<NodeRelationship> getNaryRelationship(String relName){
@@ -231,70 +935,66 @@ public class XMLDataGenerator implements Generator {
 	}
 
 	private void printTable(ORASSNode node, int indentation) throws MainException{
-		try{
-			String tableName = node.getName();
-			CachedRowSet data = tableData.get(tableName);
+		printTableRows(node, indentation);
 
-			List<String> keyCols = keyMaps.get(tableName);
-			//List<String> cols = colMaps.get(tableName);
-			List<ColumnDetail> entityCols = node.getEntityAttributes();
-			boolean firstPrint = true;
-
-			List<String> entityColNames = new ArrayList<String>();
-			for(int i=0; i< entityCols.size(); i++){
-				String currName = entityCols.get(i).getName();
-				entityColNames.add(currName);
-			}
-			data.next();
-			List<String> prevVals = getSelectedVals(tableName, entityColNames, data);
-			data.previous();
-			List<ORASSNode> children = node.getChildren();
-			List<ORASSNode> supertypes = node.getSupertypeNode();
-			ORASSNode regularEntity = node.getNormalEntityNode();
-
-			if(supertypes.size()>0){
-				List<ColumnDetail> filteredEntityCols = new ArrayList<ColumnDetail>();
-				for(int i=0; i<supertypes.size(); i++){
-					ORASSNode supertype = supertypes.get(i);
-					String supertypeName = supertype.getName();
-					List<String> supertypeCols = colMaps.get(supertypeName);
-					for(int j = 0; j<entityCols.size(); j++){
-						ColumnDetail col = entityCols.get(j);
-						if(!supertypeCols.contains(col.getName())){
-							filteredEntityCols.add(col);
-						}
-					}
-				}
-				entityCols = filteredEntityCols;
-			}
-			String prevId = "";
+		List<ORASSNode> children = node.getChildren();
+		for(int i=0; i<children.size(); i++){
+			ORASSNode child = children.get(i);
+			printTable(child, 1);
+		}
+	}
+
+	/*
+	 * Prints the tuples of a table, without the tables of its children
+	 * */
+	private void printTableRows(ORASSNode node, int indentation) throws MainException{
+		String tableName = node.getName();
+		TagBytes tableTags = getTags(tableName);
+
+		List<String> keyCols = keyMaps.get(tableName);
+		//List<String> cols = colMaps.get(tableName);
+		List<ColumnDetail> entityCols = node.getEntityAttributes();
+		boolean firstPrint = true;
+
+		List<String> entityColNames = new ArrayList<String>();
+		for(int i=0; i< entityCols.size(); i++){
+			String currName = entityCols.get(i).getName();
+			entityColNames.add(currName);
+		}
+		List<ORASSNode> children = node.getChildren();
+		List<ORASSNode> supertypes = node.getSupertypeNode();
+		ORASSNode regularEntity = node.getNormalEntityNode();
 
+		entityCols = getPrintedEntityCols(node);
+		String prevId = "";
+		TupleIDRegistry registry = tableDataIDs.get(tableName);
+		boolean isLongKey = registry instanceof LongTupleIDRegistry;
+
+		RowSource rows = openPrintedRows(node);
+		try{
+			LookaheadCursor data = new LookaheadCursor(rows, keyCols, entityColNames, isLongKey);
+			int[] entityColIndexes = new int[entityCols.size()];
+			for(int i=0; i<entityColIndexes.length; i++){
+				entityColIndexes[i] = data.indexOf(entityCols.get(i).getName());
+			}
+			boolean needsOrdinal = settings.isMergeJoin() || settings.getBatchSize() > 0 || settings.isEdgePlanner() || !settings.isRelationshipPrefetch();
 			while(data.next()){
-				List<String> keyVals = getSelectedVals(tableName, keyCols, data);
-				String id = getTupleID(tableName, keyVals);
+				String id = getTupleID(registry, data);
+				int ordinal = needsOrdinal ? getTupleOrdinal(registry, data) : 0;
 				// Print opening tag
 				if(!id.equals(prevId)){
-					printTabs(indentation);
-					writer.println("<"+tableName+" "+ tableName +"#=\"" + id+"\">");
+					writer.printTupleStart(indentation, tableTags, id);
 					firstPrint= true;
 				}
 				// Print columns
 				for(int i=0;i<entityCols.size();i++){
 					ColumnDetail col = entityCols.get(i);
 					String colName = col.getName();
-					String nextData = data.getString(colName);
-					String prevColVal = prevVals.get(i);
+					String nextData = data.getString(entityColIndexes[i]);
 
 					boolean hasFKref = col.hasForeignRef();
-					if((firstPrint || !prevColVal.equals(nextData)) && !hasFKref){
-						printTabs(indentation+1);
-						if (data.wasNull()){
-							writer.print("<"+colName);
-							writer.print(" xsi:nil=\"true\">");
-						}else{
-							writer.print("<"+colName+">"+nextData);
-						}
-						writer.println("</"+colName+">");
+					if((firstPrint || !data.isSameAsPrevious(entityColIndexes[i])) && !hasFKref){
+						printAttribute(colName, nextData, indentation+1);
 					}
 				}
 
@@ -308,86 +1008,694 @@ public class XMLDataGenerator implements Generator {
 								List<String> entityOrder = nRels.get(relName);
 								String topEntity = entityOrder.get(0);
 								if(topEntity.equals(tableName)){
-									List<NodeRelationship> nodeRels = getNaryRelationship(relName);
-									CachedRowSet naryCrs = getNaryRelationshipData(nodeRels);
-									printNaryRelationship(node, child, entityOrder, nodeRels, naryCrs, id, indentation+1);
+									printNaryRelationship(node, child, id, indentation+1);
 								}
 							}else{
-								List<NodeRelationship> nodeRels = getNodeRelationship(node,child);
-								CachedRowSet crs = getRelationshipData(node, child, nodeRels);
-								printRelationship(node, child, nodeRels, crs, id, indentation+1);
-								crs.close();
+								printRelationship(node, child, id, ordinal, indentation+1);
 							}
 						}else{
-							List<NodeRelationship> nodeRels = getNodeRelationship(node,child);
-							CachedRowSet crs = getRelationshipData(node, child, nodeRels);
-							printRelationship(node, child, nodeRels, crs, id, indentation+1);
-							crs.close();
+							printRelationship(node, child, id, ordinal, indentation+1);
 						}
 					}
 
 					// Print IS-A relationships
 					for(int i=0; i<supertypes.size(); i++){
 						ORASSNode supertype = supertypes.get(i);
-						List<NodeRelationship> nodeRels = getNodeRelationship(node,supertype);
 						//logger.info("is-a nodeRels size="+nodeRels.size());
 						String supertypeName = supertype.getOriginalName();
 						if(node.getOriginalName().equals(supertypeName)){
-							printSpecialRelationship(supertype, keyVals, indentation+1);
+							printSpecialRelationship(supertype, getTupleID(tableDataIDs.get(supertype.getName()), data), indentation+1);
 						}else{
-							CachedRowSet crsIsA = getRelationshipData(node, supertype, nodeRels);
-							printRelationship(node, supertype, nodeRels, crsIsA, id, indentation+1);
-							crsIsA.close();
+							printRelationship(node, supertype, id, ordinal, indentation+1);
 						}
 					}
 
 					// Print ID/EX relationships
 					if(regularEntity!=null){
-						List<NodeRelationship> nodeRels = getNodeRelationship(node,regularEntity);
 						//logger.info("weak nodeRels size="+nodeRels.size());
-						CachedRowSet crsWeak = getRelationshipData(node, regularEntity, nodeRels);
-						printRelationship(node, regularEntity, nodeRels, crsWeak, id, indentation+1);
-						crsWeak.close();
+						printRelationship(node, regularEntity, id, ordinal, indentation+1);
 					}
 				}
 				firstPrint= false;
 				prevId = id;
-				prevVals = getSelectedVals(tableName, entityColNames, data);
-				printClosingTag(node, data, keyCols, keyVals, indentation);
+				// Print closing tag if the next row belongs to another tuple
+				if(!data.isNextKeySame()){
+					writer.printEnd(indentation, tableTags);
+				}
 			}
+		}finally{
+			rows.close();
+			relationshipIndexes.clear();
+			naryIndexes.clear();
+			relationshipBatches.clear();
+			closeRelationshipMerges();
+		}
+	}
 
-			for(int i=0; i<children.size(); i++){
-				ORASSNode child = children.get(i);
-				printTable(child, 1);
+	/*
+	 * A subtree can be exported with one outer union if the data of each of its tables is ordered by
+	 * the primary key, if no relationship joins a table with itself, and if the server converts
+	 * the values of the union to the same text as the driver does for the other exports.
+	 * */
+	private boolean canUseOuterUnion(ORASSNode root){
+		List<ORASSNode> nodes = new ArrayList<ORASSNode>();
+		collectNodes(root, nodes);
+		for(int i=0; i<nodes.size(); i++){
+			ORASSNode node = nodes.get(i);
+			if(!isOrderedByKey(node)){
+				return false;
 			}
-		}catch(SQLException ex){
-			throw new MainException("Print table " + node.getName()+" : "+ ex.getMessage());
+			List<OuterUnionEdge> edges = getUnionEdges(node);
+			for(int j=0; j<edges.size(); j++){
+				OuterUnionEdge edge = edges.get(j);
+				if(edge.getKind() == OuterUnionEdge.RELATIONSHIP && edge.getTarget().getOriginalName().equals(node.getOriginalName())){
+					return false;
+				}
+			}
+		}
+		OuterUnionQuery union = new OuterUnionQuery();
+		for(int i=0; i<nodes.size(); i++){
+			addUnionBranches(union, i, nodes.get(i));
+		}
+		if(!union.hasExactValues()){
+			logger.info("The subtree of " + root.getName() + " has columns which are not integers or characters, so it is not exported with an outer union");
+			return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Nodes of a subtree in the order their tables are printed
+	 * */
+	private void collectNodes(ORASSNode node, List<ORASSNode> nodes){
+		nodes.add(node);
+		List<ORASSNode> children = node.getChildren();
+		for(int i=0; i<children.size(); i++){
+			collectNodes(children.get(i), nodes);
+		}
+	}
+
+	/*
+	 * Relationships printed in a tuple of 'node', in the order printTable prints them
+	 * */
+	private List<OuterUnionEdge> getUnionEdges(ORASSNode node){
+		List<OuterUnionEdge> edges = new ArrayList<OuterUnionEdge>();
+		int branchSeq = 0;
+		List<ORASSNode> children = node.getChildren();
+		for(int i=0; i<children.size(); i++){
+			ORASSNode child = children.get(i);
+			if(node.hasRelation(child) && nRels.keySet().contains(node.getRelation(child))){
+				if(nRels.get(node.getRelation(child)).get(0).equals(node.getName())){
+					edges.add(new OuterUnionEdge(OuterUnionEdge.NARY, child, 0));
+				}
+			}else{
+				edges.add(new OuterUnionEdge(OuterUnionEdge.RELATIONSHIP, child, ++branchSeq));
+			}
+		}
+		List<ORASSNode> supertypes = node.getSupertypeNode();
+		for(int i=0; i<supertypes.size(); i++){
+			ORASSNode supertype = supertypes.get(i);
+			if(node.getOriginalName().equals(supertype.getOriginalName())){
+				edges.add(new OuterUnionEdge(OuterUnionEdge.SPECIAL, supertype, 0));
+			}else{
+				edges.add(new OuterUnionEdge(OuterUnionEdge.RELATIONSHIP, supertype, ++branchSeq));
+			}
+		}
+		ORASSNode regularEntity = node.getNormalEntityNode();
+		if(regularEntity!=null){
+			edges.add(new OuterUnionEdge(OuterUnionEdge.RELATIONSHIP, regularEntity, ++branchSeq));
 		}
+		return edges;
 	}
 
-	private void printClosingTag(ORASSNode node, CachedRowSet data, List<String> keyCols, List<String> currKeyVals, int indentation) throws MainException{
+	/*
+	 * Adds the data of a node and its relationships to the union.
+	 * The values of the data are the key columns followed by the attributes, the values of a relationship are
+	 * the key of the node, the key of the referenced node and the printed relationship attributes.
+	 * */
+	private void addUnionBranches(OuterUnionQuery union, int nodeSeq, ORASSNode node){
+		String tableName = node.getName();
+		List<String> keyCols = keyMaps.get(tableName);
+		List<ColumnDetail> criticalCols = criticalColMaps.get(tableName);
+		List<ColumnDetail> keyDetails = criticalCols.subList(0, keyCols.size());
+		List<ColumnDetail> sortDetails = criticalCols.subList(keyCols.size(), criticalCols.size());
+
+		List<String> scannedCols = getScannedColumns(node);
+		List<ColumnDetail> valueCols = new ArrayList<ColumnDetail>();
+		for(int i=0; i<scannedCols.size(); i++){
+			valueCols.add(getColumnDetail(node, scannedCols.get(i), i < keyCols.size()));
+		}
+		union.addEntityBranch(nodeSeq, node.getOriginalName(), node.getEntityAttributes(), keyDetails, sortDetails, valueCols);
+
+		List<OuterUnionEdge> edges = getUnionEdges(node);
+		for(int i=0; i<edges.size(); i++){
+			OuterUnionEdge edge = edges.get(i);
+			if(edge.getKind() != OuterUnionEdge.RELATIONSHIP){
+				continue;
+			}
+			ORASSNode node2 = edge.getTarget();
+			List<NodeRelationship> nodeRels = getNodeRelationship(node, node2);
+			if(!isPrinted(node, nodeRels)){
+				continue;
+			}
+			List<ColumnDetail> relValueCols = new ArrayList<ColumnDetail>(keyDetails);
+			List<String> keyCols2 = keyMaps.get(node2.getName());
+			for(int j=0; j<keyCols2.size(); j++){
+				relValueCols.add(getColumnDetail(node2, keyCols2.get(j), true));
+			}
+			String relName = getRelName(nodeRels);
+			List<ColumnDetail> relCols = node2.getRelAttributes();
+			for(int j=0; j<relCols.size(); j++){
+				if(relCols.get(j).getTableName().equals(relName)){
+					relValueCols.add(relCols.get(j));
+				}
+			}
+			union.addRelationshipBranch(nodeSeq, edge.getBranchSeq(), getRelationshipTables(node, node2, nodeRels), nodeRels, keyDetails, relValueCols);
+		}
+	}
+
+	/*
+	 * Column of a node with the given name. Key columns are qualified with the table of the node.
+	 * */
+	private ColumnDetail getColumnDetail(ORASSNode node, String colName, boolean isKey){
+		List<ColumnDetail> entityCols = node.getEntityAttributes();
+		for(int i=0; i<entityCols.size(); i++){
+			ColumnDetail col = entityCols.get(i);
+			if(col.getName().equals(colName) && (!isKey || col.getTableName().equals(node.getOriginalName()))){
+				return col;
+			}
+		}
+		return new ColumnDetail(node.getOriginalName(), colName, new HashMap<String, String>(), null, true, false, 0, Types.VARCHAR);
+	}
+
+	/*
+	 * Prints a subtree from the rows of one outer union, which come grouped by table and by tuple.
+	 * The rows of a tuple are kept until the tuple is complete, because the relationships of a
+	 * tuple are printed between the attributes of its first row and the attributes of its other rows.
+	 * */
+	private void printOuterUnion(ORASSNode root) throws MainException{
+		List<ORASSNode> nodes = new ArrayList<ORASSNode>();
+		collectNodes(root, nodes);
+		OuterUnionQuery union = new OuterUnionQuery();
+		for(int i=0; i<nodes.size(); i++){
+			addUnionBranches(union, i, nodes.get(i));
+		}
+
+		RowCursor data = new RowCursor(new ResultSetRowSource(dbCache.streamOuterUnion(union)));
 		try{
-			String tableName = node.getName();
-			if(!data.isLast()){
-				data.next();
-				List<String> nextKeyVals = getSelectedVals(tableName, keyCols, data);
-				boolean sameVals = isValsEqual(currKeyVals, nextKeyVals);
-				if(!sameVals){
-					printTabs(indentation);
-					writer.println("</"+tableName+">");
+			int nodeSeqIndex = data.indexOf(OuterUnionQuery.NODE_SEQ);
+			int branchSeqIndex = data.indexOf(OuterUnionQuery.BRANCH_SEQ);
+			int[] valueIndexes = new int[union.getValueSlotCount()];
+			for(int i=0; i<valueIndexes.length; i++){
+				valueIndexes[i] = data.indexOf(OuterUnionQuery.valueSlot(i));
+			}
+
+			int currSeq = -1;
+			String[] currKey = null;
+			List<String[]> entityRows = new ArrayList<String[]>();
+			Map<Integer, List<String[]>> relRows = new HashMap<Integer, List<String[]>>();
+			while(data.next()){
+				int nodeSeq = Integer.parseInt(data.getString(nodeSeqIndex));
+				int branchSeq = Integer.parseInt(data.getString(branchSeqIndex));
+				String[] vals = new String[valueIndexes.length];
+				for(int i=0; i<vals.length; i++){
+					vals[i] = data.getString(valueIndexes[i]);
+				}
+				int keyCount = keyMaps.get(nodes.get(nodeSeq).getName()).size();
+				if(nodeSeq != currSeq || !isSameKey(currKey, vals, keyCount)){
+					if(!entityRows.isEmpty()){
+						printUnionTuple(nodes.get(currSeq), entityRows, relRows);
+					}
+					currSeq = nodeSeq;
+					currKey = vals;
+					entityRows.clear();
+					relRows.clear();
+				}
+				if(branchSeq == 0){
+					entityRows.add(vals);
+				}else if(!entityRows.isEmpty()){
+					// Relationships of a tuple without data are not printed
+					List<String[]> rows = relRows.get(branchSeq);
+					if(rows == null){
+						rows = new ArrayList<String[]>();
+						relRows.put(branchSeq, rows);
+					}
+					rows.add(vals);
 				}
-				data.previous();
-			} else{
-				printTabs(indentation);
-				writer.println("</"+tableName+">");
 			}
+			if(!entityRows.isEmpty()){
+				printUnionTuple(nodes.get(currSeq), entityRows, relRows);
+			}
+		}finally{
+			data.close();
+			naryIndexes.clear();
+		}
+	}
 
-		}catch(SQLException ex){
-			throw new MainException(ex.getMessage());
+	private boolean isSameKey(String[] key, String[] vals, int keyCount){
+		for(int i=0; i<keyCount; i++){
+			if(!LookaheadCursor.isSameValue(key[i], vals[i])){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Prints a tuple of 'node' from its rows in an outer union, in the same way as printTable
+	 * */
+	private void printUnionTuple(ORASSNode node, List<String[]> entityRows, Map<Integer, List<String[]>> relRows) throws MainException{
+		String tableName = node.getName();
+		int indentation = 1;
+		List<String> keyCols = keyMaps.get(tableName);
+		List<String> keyVals = Arrays.asList(entityRows.get(0)).subList(0, keyCols.size());
+		String id = tableDataIDs.get(tableName).getID(keyVals);
+
+		List<String> scannedCols = getScannedColumns(node);
+		List<ColumnDetail> entityCols = getPrintedEntityCols(node);
+		int[] entityColIndexes = new int[entityCols.size()];
+		for(int i=0; i<entityColIndexes.length; i++){
+			entityColIndexes[i] = scannedCols.indexOf(entityCols.get(i).getName());
+		}
+
+		TagBytes tableTags = getTags(tableName);
+		writer.printTupleStart(indentation, tableTags, id);
+		String[] prevRow = null;
+		for(int r=0; r<entityRows.size(); r++){
+			String[] row = entityRows.get(r);
+			for(int i=0; i<entityCols.size(); i++){
+				ColumnDetail col = entityCols.get(i);
+				String value = row[entityColIndexes[i]];
+				if((prevRow == null || !LookaheadCursor.isSameValue(prevRow[entityColIndexes[i]], value)) && !col.hasForeignRef()){
+					printAttribute(col.getName(), value, indentation+1);
+				}
+			}
+			if(prevRow == null){
+				printUnionRelationships(node, id, keyVals, relRows, indentation+1);
+			}
+			prevRow = row;
+		}
+		writer.printEnd(indentation, tableTags);
+	}
+
+	private void printUnionRelationships(ORASSNode node, String id, List<String> keyVals, Map<Integer, List<String[]>> relRows, int indentation) throws MainException{
+		int keyCount = keyVals.size();
+		List<OuterUnionEdge> edges = getUnionEdges(node);
+		for(int i=0; i<edges.size(); i++){
+			OuterUnionEdge edge = edges.get(i);
+			ORASSNode node2 = edge.getTarget();
+			if(edge.getKind() == OuterUnionEdge.NARY){
+				printNaryRelationship(node, node2, id, indentation);
+			}else if(edge.getKind() == OuterUnionEdge.SPECIAL){
+				printSpecialRelationship(node2, tableDataIDs.get(node2.getName()).getID(keyVals), indentation);
+			}else{
+				List<NodeRelationship> nodeRels = getNodeRelationship(node, node2);
+				List<String> attributeNames = getPrintedAttributes(node2, getRelName(nodeRels));
+				RelationshipIndex index = new RelationshipIndex(attributeNames);
+				List<String[]> rows = relRows.get(edge.getBranchSeq());
+				if(rows != null){
+					String table2 = node2.getName();
+					int keyCount2 = keyMaps.get(table2).size();
+					TupleIDRegistry registry2 = tableDataIDs.get(table2);
+					for(int j=0; j<rows.size(); j++){
+						String[] row = rows.get(j);
+						String refID = registry2.getID(Arrays.asList(row).subList(keyCount, keyCount + keyCount2));
+						String[] attributeVals = new String[attributeNames.size()];
+						System.arraycopy(row, keyCount + keyCount2, attributeVals, 0, attributeVals.length);
+						index.add(id, refID, attributeVals);
+					}
+				}
+				printReferences(node2, index, id, indentation);
+			}
+		}
+	}
+
+	/*
+	 * Attributes printed in the tuples of a node. The columns inherited from a supertype are printed by the supertype.
+	 * */
+	private List<ColumnDetail> getPrintedEntityCols(ORASSNode node){
+		List<ColumnDetail> entityCols = node.getEntityAttributes();
+		List<ORASSNode> supertypes = node.getSupertypeNode();
+		if(supertypes.size()>0){
+			List<ColumnDetail> filteredEntityCols = new ArrayList<ColumnDetail>();
+			for(int i=0; i<supertypes.size(); i++){
+				ORASSNode supertype = supertypes.get(i);
+				String supertypeName = supertype.getName();
+				List<String> supertypeCols = colMaps.get(supertypeName);
+				for(int j = 0; j<entityCols.size(); j++){
+					ColumnDetail col = entityCols.get(j);
+					if(!supertypeCols.contains(col.getName())){
+						filteredEntityCols.add(col);
+					}
+				}
+			}
+			entityCols = filteredEntityCols;
+		}
+		return entityCols;
+	}
+
+	private void printAttribute(String colName, String value, int indentation){
+		writer.printNillableElement(indentation, getTags(colName), value);
+	}
+
+	/*
+	 * Tags of an element, encoded the first time the element is printed
+	 * */
+	private TagBytes[] getTags(List<String> names){
+		TagBytes[] elementTags = new TagBytes[names.size()];
+		for(int i=0; i<elementTags.length; i++){
+			elementTags[i] = getTags(names.get(i));
+		}
+		return elementTags;
+	}
+
+	private TagBytes getTags(String name){
+		TagBytes elementTags = tags.get(name);
+		if(elementTags == null){
+			elementTags = new TagBytes(name);
+			tags.put(name, elementTags);
+		}
+		return elementTags;
+	}
+
+	/*
+	 * Returns the rows of a table, ordered by its critical columns.
+	 * In streaming mode the rows are read from the database, or from the spool of the single scan, while the table is printed.
+	 * */
+	private RowSource openTableRows(ORASSNode node) throws MainException{
+		RowSpool spool = rowSpools.remove(node.getName());
+		if(spool != null){
+			return spool.open();
+		}
+		RowSource rows = new ResultSetRowSource(openTableData(node));
+		List<String> aliases = dataScans.get(getDataScan(node));
+		if(settings.isStreaming() && aliases != null && aliases.size() > 1){
+			// The rows are streamed once and kept for the aliases printed later
+			spool = new RowSpool(settings.getTempDirectory(), getScannedColumns(node));
+			int readers = 0;
+			for(int i=0; i<aliases.size(); i++){
+				String alias = aliases.get(i);
+				if(!alias.equals(node.getName()) && !printedTables.contains(alias)){
+					rowSpools.put(alias, spool);
+					readers++;
+				}
+			}
+			if(readers > 0){
+				spool.setReaderCount(readers);
+				rows = new SpoolingRowSource(rows, spool);
+			}else{
+				spool.close();
+			}
+		}
+		printedTables.add(node.getName());
+		return rows;
+	}
+	/*
+	 * Rows of a table to print. In pipeline mode the rows are read by a thread of their own,
+	 * and streamed rows of the next table are read while this one is printed.
+	 * */
+	private RowSource openPrintedRows(ORASSNode node) throws MainException{
+		RowSource rows = prefetchedRows.remove(node);
+		if(rows != null){
+			return rows;
+		}
+		rows = openTableRows(node);
+		if(!settings.isPipeline()){
+			return rows;
+		}
+		rows = new PrefetchingRowSource(rows, getScannedColumns(node), "xml-fetch-" + node.getName());
+		int next = printOrder.indexOf(node) + 1;
+		if(settings.isStreaming() && next > 0 && next < printOrder.size()){
+			ORASSNode nextNode = printOrder.get(next);
+			List<String> aliases = dataScans.get(getDataScan(nextNode));
+			// Rows shared with aliases are spooled while the first alias is printed
+			if(aliases == null || aliases.size() <= 1){
+				prefetchedRows.put(nextNode, new PrefetchingRowSource(openTableRows(nextNode), getScannedColumns(nextNode), "xml-fetch-" + nextNode.getName()));
+			}
+		}
+		return rows;
+	}
+
+	private void closePrefetchedRows() throws MainException{
+		for(RowSource rows : prefetchedRows.values()){
+			rows.close();
+		}
+		prefetchedRows.clear();
+	}
+
+	private DataStream openTableData(ORASSNode node) throws MainException{
+		String tableName = node.getName();
+		if(settings.isStreaming()){
+			return dbCache.streamData(node.getOriginalName(), node.getEntityAttributes(), criticalColMaps.get(tableName));
 		}
+		return new DataStream(tableData.get(tableName));
 	}
 
-	private CachedRowSet getRelationshipData(ORASSNode node1, ORASSNode node2, List<NodeRelationship> nodeRels) throws MainException{
+	/*
+	 * Plans the relationships printed in the tables of a subtree
+	 * */
+	private void planEdges(ORASSNode root) throws MainException{
+		List<ORASSNode> nodes = new ArrayList<ORASSNode>();
+		collectNodes(root, nodes);
+		for(int i=0; i<nodes.size(); i++){
+			ORASSNode node = nodes.get(i);
+			List<OuterUnionEdge> edges = getUnionEdges(node);
+			for(int j=0; j<edges.size(); j++){
+				if(edges.get(j).getKind() == OuterUnionEdge.RELATIONSHIP){
+					getEdgeStrategy(node, edges.get(j).getTarget());
+				}
+			}
+		}
+	}
+
+	/*
+	 * Strategy of the relationship between 'node1' and 'node2', chosen by the planner or given by the settings.
+	 * In a snapshot the relationships are not merged, since their streams would be read into memory.
+	 * */
+	private EdgeStrategy getEdgeStrategy(ORASSNode node1, ORASSNode node2) throws MainException{
+		if(!settings.isEdgePlanner()){
+			if(settings.isMergeJoin() && snapshot == null && isOrderedByKey(node1)){
+				return EdgeStrategy.MERGE;
+			}
+			// A batch holds consecutive tuples of the key scan, so the tuples have to be printed in key order
+			if(settings.getBatchSize() > 0 && isOrderedByKey(node1)){
+				return EdgeStrategy.BATCH;
+			}
+			return settings.isRelationshipPrefetch() ? EdgeStrategy.PREFETCH : EdgeStrategy.JOIN;
+		}
+		String edgeName = node1.getName() + " -> " + node2.getName();
+		EdgeStrategy strategy = edgeStrategies.get(edgeName);
+		if(strategy == null){
+			List<NodeRelationship> nodeRels = getNodeRelationship(node1, node2);
+			if(isPrinted(node1, nodeRels)){
+				strategy = edgePlanner.plan(edgeName, node1.getOriginalName(), getRelationshipTables(node1, node2, nodeRels), nodeRels, isOrderedByKey(node1), snapshot == null);
+			}else{
+				// Nothing is read for this relationship
+				strategy = EdgeStrategy.PREFETCH;
+			}
+			edgeStrategies.put(edgeName, strategy);
+		}
+		return strategy;
+	}
+
+	/*
+	 * Prints the references from a tuple of 'node1' to the related tuples of 'node2'.
+	 * With relationship prefetch, the relationship is joined once for all the tuples of 'node1'
+	 * and kept until the table of 'node1' has been printed.
+	 * 'ordinal' is the position of the tuple in the key scan, 0 if it is not needed.
+	 * With merge join, the relationship is streamed in the order of the tuples of 'node1' if they are printed in key order.
+	 * With batches, the relationship is read for a batch of consecutive tuples of 'node1' at a time.
+	 * */
+	private void printRelationship(ORASSNode node1, ORASSNode node2, String id, int ordinal, int indentation) throws MainException{
+		EdgeStrategy strategy = getEdgeStrategy(node1, node2);
+		if(ordinal == 0 && (strategy == EdgeStrategy.MERGE || strategy == EdgeStrategy.BATCH)){
+			strategy = settings.isRelationshipPrefetch() ? EdgeStrategy.PREFETCH : EdgeStrategy.JOIN;
+		}
+		if(strategy == EdgeStrategy.MERGE && relationshipMerges.get(node2) == null
+				&& (relationshipIndexes.containsKey(node2) || !dbCache.canOpenStream())){
+			// Every connection of the pool is already streaming, so the relationship is prefetched
+			// for the rest of the table instead of waiting for a connection which is never returned
+			if(!relationshipIndexes.containsKey(node2)){
+				logger.info("No free connection to merge " + node1.getName() + " -> " + node2.getName() + ", the relationship is prefetched");
+			}
+			strategy = EdgeStrategy.PREFETCH;
+		}
+		if(strategy == EdgeStrategy.MERGE){
+			RelationshipMerge merge = relationshipMerges.get(node2);
+			if(merge == null){
+				merge = openRelationshipMerge(node1, node2);
+				relationshipMerges.put(node2, merge);
+			}
+			printReferences(node2, merge.getReferences(id, ordinal), id, indentation);
+			return;
+		}
+		if(strategy == EdgeStrategy.BATCH){
+			RelationshipBatch batch = relationshipBatches.get(node2);
+			if(batch == null || !batch.contains(ordinal)){
+				batch = readRelationshipBatch(node1, node2, ordinal);
+				relationshipBatches.put(node2, batch);
+			}
+			printReferences(node2, batch.getIndex(), id, indentation);
+			return;
+		}
+		RelationshipIndex index = relationshipIndexes.get(node2);
+		if(index == null){
+			List<NodeRelationship> nodeRels = getNodeRelationship(node1, node2);
+			RowCursor relData;
+			if(strategy == EdgeStrategy.JOIN && ordinal > 0 && isPrinted(node1, nodeRels)){
+				// The join of one tuple runs the same prepared statement for every tuple
+				relData = new RowCursor(new ResultSetRowSource(getRelationshipData(node1, node2, nodeRels, ordinal)));
+			}else{
+				relData = new RowCursor(new ResultSetRowSource(getRelationshipData(node1, node2, nodeRels)));
+			}
+			try{
+				if(strategy == EdgeStrategy.PREFETCH){
+					index = readRelationship(node1, node2, nodeRels, relData, null);
+					relationshipIndexes.put(node2, index);
+				}else{
+					index = readRelationship(node1, node2, nodeRels, relData, id);
+				}
+			}finally{
+				relData.close();
+			}
+		}
+		printReferences(node2, index, id, indentation);
+	}
+
+	/*
+	 * Streams the relationship between 'node1' and 'node2' ordered by the key of 'node1'
+	 * */
+	private RelationshipMerge openRelationshipMerge(ORASSNode node1, ORASSNode node2) throws MainException{
+		String table1 = node1.getName();
+		String table2 = node2.getName();
+		List<NodeRelationship> nodeRels = getNodeRelationship(node1, node2);
+		List<String> attributeNames = getPrintedAttributes(node2, getRelName(nodeRels));
+		RowCursor relData;
+		if(isPrinted(node1, nodeRels)){
+			List<String> fromTables = getRelationshipTables(node1, node2, nodeRels);
+			relData = new RowCursor(new ResultSetRowSource(dbCache.streamJoin(fromTables, nodeRels, getRelationshipColumns(node1, node2, nodeRels), node1.getOriginalName(), keyMaps.get(table1))));
+		}else{
+			// Nothing is printed for this relationship
+			relData = new RowCursor(new EmptyRowSource());
+		}
+		return new RelationshipMerge(relData, tableDataIDs.get(table1), keyMaps.get(table1), tableDataIDs.get(table2), keyMaps.get(table2), attributeNames);
+	}
+
+	/*
+	 * Reads the references of the batch of tuples of 'node1' which contains the tuple at position 'ordinal'.
+	 * The keys of the tuples of the batch are looked up by their positions and selected with an IN list.
+	 * */
+	private RelationshipBatch readRelationshipBatch(ORASSNode node1, ORASSNode node2, int ordinal) throws MainException{
+		String table1 = node1.getName();
+		List<String> keyCols = keyMaps.get(table1);
+		TupleIDRegistry registry = tableDataIDs.get(table1);
+		int batchSize = edgePlanner.getBatchSize();
+		int first = ((ordinal - 1) / batchSize) * batchSize + 1;
+		int last = Math.min(first + batchSize - 1, registry.size());
+
+		List<NodeRelationship> nodeRels = getNodeRelationship(node1, node2);
+		if(!isPrinted(node1, nodeRels)){
+			return new RelationshipBatch(first, last, new RelationshipIndex(getPrintedAttributes(node2, getRelName(nodeRels))));
+		}
+		List<List<String>> keyVals = new ArrayList<List<String>>(last - first + 1);
+		for(int i=first; i<=last; i++){
+			keyVals.add(registry.getKeyVals(i, keyCols.size()));
+		}
+		List<String> fromTables = getRelationshipTables(node1, node2, nodeRels);
+		RowCursor relData = new RowCursor(new ResultSetRowSource(dbCache.joinTablesForKeys(fromTables, nodeRels, getRelationshipColumns(node1, node2, nodeRels), node1.getOriginalName(), keyCols, keyVals)));
+		try{
+			return new RelationshipBatch(first, last, readRelationship(node1, node2, nodeRels, relData, null));
+		}finally{
+			relData.close();
+		}
+	}
+
+	private void closeRelationshipMerges() throws MainException{
+		try{
+			for(RelationshipMerge merge : relationshipMerges.values()){
+				merge.close();
+			}
+		}finally{
+			relationshipMerges.clear();
+		}
+	}
+
+	/*
+	 * The rows of a table can be merged with its relationships if they are ordered by its primary key,
+	 * i.e. the key columns of the table come first in its critical columns, in the order of the key.
+	 * */
+	private boolean isOrderedByKey(ORASSNode node){
+		String tableName = node.getName();
+		List<String> keyCols = keyMaps.get(tableName);
+		List<ColumnDetail> criticalCols = criticalColMaps.get(tableName);
+		if(keyCols.isEmpty() || criticalCols.size() < keyCols.size()){
+			return false;
+		}
+		for(int i=0; i<keyCols.size(); i++){
+			ColumnDetail col = criticalCols.get(i);
+			if(!col.getName().equals(keyCols.get(i)) || !col.getTableName().equals(node.getOriginalName())){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int getTupleOrdinal(TupleIDRegistry registry, LookaheadCursor data){
+		if(data.isLongKey() && registry instanceof LongTupleIDRegistry){
+			return ((LongTupleIDRegistry) registry).getOrdinal(data.getLongKey());
+		}
+		return registry.getOrdinal(data.getKeyVals());
+	}
+
+	private DataStream getRelationshipData(ORASSNode node1, ORASSNode node2, List<NodeRelationship> nodeRels) throws MainException{
+		return joinTables(getRelationshipTables(node1, node2, nodeRels), nodeRels, getRelationshipColumns(node1, node2, nodeRels));
+	}
+
+	/*
+	 * Columns read from the join of a relationship: the keys of both nodes and the printed relationship attributes.
+	 * A column is selected once, from the first table that has it, as it is read by its name.
+	 * */
+	private Map<String, List<String>> getRelationshipColumns(ORASSNode node1, ORASSNode node2, List<NodeRelationship> nodeRels){
+		Map<String, List<String>> selectClause = new LinkedHashMap<String, List<String>>();
+		Set<String> selected = new HashSet<String>();
+		addSelectColumns(selectClause, selected, node1.getOriginalName(), keyMaps.get(node1.getName()));
+		addSelectColumns(selectClause, selected, node2.getOriginalName(), keyMaps.get(node2.getName()));
+		String relName = getRelName(nodeRels);
+		List<String> attributeNames = getPrintedAttributes(node2, relName);
+		if(relName.equals("") && !attributeNames.isEmpty()){
+			// Attributes without a table are read from all the columns
+			return null;
+		}
+		addSelectColumns(selectClause, selected, relName, attributeNames);
+		return selectClause;
+	}
+
+	private void addSelectColumns(Map<String, List<String>> selectClause, Set<String> selected, String tableName, List<String> cols){
+		for(int i=0; i<cols.size(); i++){
+			String col = cols.get(i);
+			if(selected.add(col)){
+				List<String> tableCols = selectClause.get(tableName);
+				if(tableCols == null){
+					tableCols = new ArrayList<String>();
+					selectClause.put(tableName, tableCols);
+				}
+				tableCols.add(col);
+			}
+		}
+	}
+
+	/*
+	 * Joins the relationship for the tuple of 'node1' at position 'ordinal' of the key scan only
+	 * */
+	private DataStream getRelationshipData(ORASSNode node1, ORASSNode node2, List<NodeRelationship> nodeRels, int ordinal) throws MainException{
+		String table1 = node1.getName();
+		List<String> keyCols = keyMaps.get(table1);
+		List<List<String>> keyVals = new ArrayList<List<String>>(1);
+		keyVals.add(tableDataIDs.get(table1).getKeyVals(ordinal, keyCols.size()));
+		return dbCache.joinTablesForKeys(getRelationshipTables(node1, node2, nodeRels), nodeRels, getRelationshipColumns(node1, node2, nodeRels), node1.getOriginalName(), keyCols, keyVals);
+	}
+
+	private List<String> getRelationshipTables(ORASSNode node1, ORASSNode node2, List<NodeRelationship> nodeRels){
 		List<String> fromTables = new ArrayList<String>();
 		String table1 = node1.getOriginalName();
 		String table2 = node2.getOriginalName();
@@ -405,11 +1713,10 @@ public class XMLDataGenerator implements Generator {
 		}
 
 		//logger.debug("from tables size: "+fromTables.size());
-		CachedRowSet crs = dbCache.joinTables(fromTables, nodeRels, null);
-		return crs;
+		return fromTables;
 	}
 
-	private CachedRowSet getNaryRelationshipData(List<NodeRelationship> nodeRels) throws MainException{
+	private DataStream getNaryRelationshipData(List<NodeRelationship> nodeRels, List<String> entityOrder, List<String> attributeNames) throws MainException{
 		List<String> fromTables = new ArrayList<String>();
 		for(int i=0; i<nodeRels.size();i++){
 			NodeRelationship rel = nodeRels.get(i);
@@ -418,155 +1725,231 @@ public class XMLDataGenerator implements Generator {
 			String table2 = rel.getTable2();
 			if(!fromTables.contains(table2)) fromTables.add(table2);
 		}
-		CachedRowSet crs = dbCache.joinTables(fromTables, nodeRels, null);
-		return crs;
+		List<String> orderTables = new ArrayList<String>();
+		List<List<String>> orderCols = new ArrayList<List<String>>();
+		// The keys of the entities and the attributes are selected, or all the columns if an entity is not joined by its name
+		Map<String, List<String>> selectClause = new LinkedHashMap<String, List<String>>();
+		Set<String> selected = new HashSet<String>();
+		for(int i=0; i<entityOrder.size(); i++){
+			String entity = entityOrder.get(i);
+			if(fromTables.contains(entity) && keyMaps.containsKey(entity)){
+				orderTables.add(entity);
+				orderCols.add(keyMaps.get(entity));
+				addSelectColumns(selectClause, selected, entity, keyMaps.get(entity));
+			}else{
+				selectClause = null;
+			}
+		}
+		if(selectClause != null){
+			addSelectColumns(selectClause, selected, nodeRels.get(0).getTable1(), attributeNames);
+		}
+		return dbCache.streamJoin(fromTables, nodeRels, selectClause, orderTables, orderCols);
 	}
 
-	private void printRelationship(ORASSNode node1, ORASSNode node2, List<NodeRelationship> nodeRels, CachedRowSet data, String ID, int indentation) throws MainException{
-		try{
-			int n = nodeRels.size();
-			String relName = "";
-			String table1 = node1.getName();
-			String table2 = node2.getName();
-			List<String> cols1 = keyMaps.get(table1);
-			List<String> cols2 = keyMaps.get(table2);
-			boolean shouldPrint = false;
-			if(n==1){
-				shouldPrint = true;
-			}else{
-				for(int i=0; i<nodeRels.size(); i++){
-					NodeRelationship nodeRel = nodeRels.get(i);
-					String relTable2 = nodeRel.getTable2();
-					if(relTable2.equals(table1)){
-						shouldPrint = true;
-					}
-					relName = nodeRel.getTable1();
+	private DataStream joinTables(List<String> fromTables, List<NodeRelationship> nodeRels, Map<String, List<String>> selectClause) throws MainException{
+		if(settings.isStreaming()){
+			return dbCache.streamJoin(fromTables, nodeRels, selectClause);
+		}
+		return new DataStream(dbCache.joinTables(fromTables, nodeRels, selectClause));
+	}
+
+	/*
+	 * Reads the references from the tuples of 'node1' to the tuples of 'node2'.
+	 * Only the references of 'parentID' are kept, or the references of all the tuples if it is null.
+	 * */
+	private RelationshipIndex readRelationship(ORASSNode node1, ORASSNode node2, List<NodeRelationship> nodeRels, RowCursor data, String parentID) throws MainException{
+		String table1 = node1.getName();
+		String table2 = node2.getName();
+		List<String> cols1 = keyMaps.get(table1);
+		List<String> cols2 = keyMaps.get(table2);
+		List<String> attributeNames = getPrintedAttributes(node2, getRelName(nodeRels));
+		RelationshipIndex index = new RelationshipIndex(attributeNames);
+		if(!isPrinted(node1, nodeRels)){
+			return index;
+		}
+		while(data.next()){
+			String currID = this.getTupleID(table1, cols1, data);
+			if(parentID == null || parentID.equals(currID)){
+				String refID = this.getTupleID(table2, cols2, data);
+				String[] attributeVals = new String[attributeNames.size()];
+				for(int i=0; i<attributeVals.length; i++){
+					attributeVals[i] = data.getString(attributeNames.get(i));
 				}
+				index.add(currID, refID, attributeVals);
 			}
-			List<ColumnDetail> relCols = node2.getRelAttributes();
-			int m = relCols.size();
-			while(data.next()){
-				List<String> pkValues = getSelectedVals(table1, cols1, data);
-				String currID = this.getTupleID(table1, pkValues);
-				if(ID.equals(currID) && shouldPrint){
-					// Print ID reference of the relationship
-					List<String> pkValues2 = getSelectedVals(table2, cols2, data);
-					String refID = this.getTupleID(table2, pkValues2);
-					printTabs(indentation);
-					if(m==0){
-						writer.print("<"+table2+" " +table2+"_Ref=\""+refID+"\">");
-						writer.println("</"+table2+">");
-					}else{
-						writer.println("<"+table2+" " +table2+"_Ref=\""+refID+"\">");
-					}
+		}
+		return index;
+	}
 
+	/*
+	 * A relationship through a relationship table is printed under the table it refers to
+	 * */
+	private boolean isPrinted(ORASSNode node1, List<NodeRelationship> nodeRels){
+		if(nodeRels.size()==1){
+			return true;
+		}
+		String table1 = node1.getName();
+		for(int i=0; i<nodeRels.size(); i++){
+			if(nodeRels.get(i).getTable2().equals(table1)){
+				return true;
+			}
+		}
+		return false;
+	}
 
-					// Print relationship attributes
-					for(int i=0; i<relCols.size(); i++){
-						ColumnDetail col= relCols.get(i);
+	/*
+	 * Name of the relationship table, empty if the relationship is a single foreign key
+	 * */
+	private String getRelName(List<NodeRelationship> nodeRels){
+		String relName = "";
+		if(nodeRels.size()>1){
+			relName = nodeRels.get(nodeRels.size()-1).getTable1();
+		}
+		return relName;
+	}
 
-						String tName = col.getTableName();
-						if(tName.equals(relName)){
-							String colName = col.getName();
-							String colVal = data.getString(colName);
-							printTabs(indentation+1);
-							writer.print("<"+colName+">"+colVal);
-							writer.println("</"+colName+">");
-						}
-					}
-					if(m>0){
-						printTabs(indentation);
-						writer.println("</"+table2+">");
-					}
-				}
+	/*
+	 * Relationship attributes of 'node2' which are printed, i.e. the ones stored in the relationship table
+	 * */
+	private List<String> getPrintedAttributes(ORASSNode node2, String relName){
+		List<ColumnDetail> relCols = node2.getRelAttributes();
+		List<String> attributeNames = new ArrayList<String>();
+		for(int i=0; i<relCols.size(); i++){
+			ColumnDetail col= relCols.get(i);
+			if(col.getTableName().equals(relName)){
+				attributeNames.add(col.getName());
 			}
-		}catch(SQLException ex){
-			throw new MainException(ex.getMessage());
 		}
+		return attributeNames;
 	}
 
-	private void printNaryRelationship(ORASSNode node1, ORASSNode node2, List<String> entityOrder, List<NodeRelationship> nodeRels, CachedRowSet data, String id, int indentation) throws MainException{
-		try{
-			String relName = nodeRels.get(0).getTable1();
-			while(data.next()){
-				printNaryRelHelp(node1, node2, relName, 1, entityOrder, data, id, indentation);
+	private void printReferences(ORASSNode node2, RelationshipIndex index, String ID, int indentation){
+		String table2 = node2.getName();
+		int m = node2.getRelAttributes().size();
+		List<String> attributeNames = index.getAttributeNames();
+		List<RelationshipIndex.Reference> references = index.get(ID);
+		TagBytes table2Tags = getTags(table2);
+		TagBytes[] attributeTags = getTags(attributeNames);
+		for(int j=0; j<references.size(); j++){
+			RelationshipIndex.Reference reference = references.get(j);
+			// Print ID reference of the relationship
+			String refID = reference.getRefID();
+			writer.printReference(indentation, table2Tags, refID, m==0);
+
+			// Print relationship attributes
+			for(int i=0; i<attributeNames.size(); i++){
+				writer.printElement(indentation+1, attributeTags[i], reference.getAttributeVal(i));
+			}
+			if(m>0){
+				writer.printEnd(indentation, table2Tags);
 			}
-		}catch(SQLException ex){
-			throw new MainException(ex.getMessage());
 		}
 	}
 
-	private void printNaryRelHelp(ORASSNode node1, ORASSNode node2, String relName, int node2Index, List<String> entityOrder, CachedRowSet data, String id, int indentation) throws MainException{
-		try{
-			String table1 = node1.getName();
-			String table2 = node2.getName();
-			List<String> cols1 = keyMaps.get(table1);
-			List<String> cols2 = keyMaps.get(table2);
-			List<ColumnDetail> relCols = node2.getRelAttributes();
+	/*
+	 * Prints the n-ary relationship of a tuple of 'node1', whose top entity is 'node1'.
+	 * The relationship is joined once for all the tuples of 'node1' and kept until the table of 'node1' has been printed.
+	 * Each row of the relationship is printed as a chain of references nested in the order of its entities.
+	 * */
+	private void printNaryRelationship(ORASSNode node1, ORASSNode node2, String id, int indentation) throws MainException{
+		String relName = node1.getRelation(node2);
+		List<ORASSNode> chainNodes = getNaryChainNodes(node2, nRels.get(relName));
+		NaryRelationshipIndex index = naryIndexes.get(relName);
+		if(index == null){
+			index = readNaryRelationship(node1, relName, chainNodes);
+			naryIndexes.put(relName, index);
+		}
+		List<String> attributeNames = index.getAttributeNames();
+		List<NaryRelationshipIndex.Chain> chains = index.get(id);
+		TagBytes[] chainTags = new TagBytes[chainNodes.size()];
+		for(int k=0; k<chainTags.length; k++){
+			chainTags[k] = getTags(chainNodes.get(k).getName());
+		}
+		TagBytes[] attributeTags = getTags(attributeNames);
+		for(int j=0; j<chains.size(); j++){
+			NaryRelationshipIndex.Chain chain = chains.get(j);
+			for(int k=0; k<chainTags.length; k++){
+				writer.printReference(indentation+k, chainTags[k], chain.getRefID(k), false);
+			}
+			// Print relationship attributes
+			for(int i=0; i<attributeTags.length; i++){
+				writer.printElement(indentation+chainTags.length, attributeTags[i], chain.getAttributeVal(i));
+			}
+			for(int k=chainTags.length-1; k>=0; k--){
+				writer.printEnd(indentation+k, chainTags[k]);
+			}
+		}
+	}
 
-			List<String> pkVals = getSelectedVals(table1, cols1, data);
-			String currID = this.getTupleID(table1, pkVals);
-			if(currID.equals(id)){
-				List<String> pkVals2 = getSelectedVals(table2, cols2,data);
-				String refID = getTupleID(table2, pkVals2);
-				printTabs(indentation);
-				writer.println("<"+table2+" " +table2+"_Ref=\""+refID+"\">");
-				if(node2Index<entityOrder.size()-1){
-					String nextEntity = entityOrder.get(node2Index+1);
-					List<ORASSNode> children2 = node2.getChildren();
-
-					for(int i=0; i<children2.size(); i++){
-						ORASSNode child = children2.get(i);
-						String childName = child.getName();
-						if(childName.equals(nextEntity)){
-							printNaryRelHelp(node2, child, relName, node2Index+1, entityOrder, data, refID, indentation+1);
-						}
-					}
-				}else{
-					// Print relationship attributes
-					for(int i=0; i<relCols.size(); i++){
-						ColumnDetail col= relCols.get(i);
-
-						String tName = col.getTableName();
-						if(tName.equals(relName)){
-							String colName = col.getName();
-							String colVal = data.getString(colName);
-							printTabs(indentation+1);
-							writer.print("<"+colName+">"+colVal);
-							writer.println("</"+colName+">");
-						}
+	/*
+	 * Nodes referenced below the top entity of an n-ary relationship, i.e. 'node2' followed by its descendants
+	 * named after the next entities of the relationship. The chain ends where no such child exists.
+	 * */
+	private List<ORASSNode> getNaryChainNodes(ORASSNode node2, List<String> entityOrder){
+		List<ORASSNode> chainNodes = new ArrayList<ORASSNode>();
+		ORASSNode curr = node2;
+		while(curr != null){
+			chainNodes.add(curr);
+			ORASSNode next = null;
+			if(chainNodes.size() < entityOrder.size()-1){
+				String nextEntity = entityOrder.get(chainNodes.size()+1);
+				List<ORASSNode> children = curr.getChildren();
+				for(int i=0; i<children.size() && next == null; i++){
+					if(children.get(i).getName().equals(nextEntity)){
+						next = children.get(i);
 					}
 				}
-				printTabs(indentation);
-				writer.println("</"+table2+">");
 			}
-		}catch(Exception ex){
-			throw new MainException(ex.getMessage());
+			curr = next;
 		}
+		return chainNodes;
 	}
 
-	private void printSpecialRelationship(ORASSNode node2, List<String> pkVals, int indentation) throws MainException{
+	/*
+	 * Reads an n-ary relationship with one join ordered by the keys of its entities
+	 * */
+	private NaryRelationshipIndex readNaryRelationship(ORASSNode node1, String relName, List<ORASSNode> chainNodes) throws MainException{
+		List<String> entityOrder = nRels.get(relName);
+		List<NodeRelationship> nodeRels = getNaryRelationship(relName);
+		// Relationship attributes are only printed at the end of a complete chain
+		List<String> attributeNames = new ArrayList<String>();
+		if(chainNodes.size() == entityOrder.size()-1){
+			attributeNames = getPrintedAttributes(chainNodes.get(chainNodes.size()-1), relName);
+		}
+		NaryRelationshipIndex index = new NaryRelationshipIndex(attributeNames);
+
+		String table1 = node1.getName();
+		List<String> cols1 = keyMaps.get(table1);
+		RowCursor data = new RowCursor(new ResultSetRowSource(getNaryRelationshipData(nodeRels, entityOrder, attributeNames)));
 		try{
-			String table2 = node2.getName();
-			String refID = this.getTupleID(table2, pkVals);
-			printTabs(indentation);
-			writer.println("<"+table2 + " "+table2+"_Ref=\""+refID+"\"></"+table2+">");
-		}catch(Exception ex){
-			throw new MainException(ex.getMessage());
+			while(data.next()){
+				String parentID = getTupleID(table1, cols1, data);
+				String[] refIDs = new String[chainNodes.size()];
+				for(int k=0; k<refIDs.length; k++){
+					String table2 = chainNodes.get(k).getName();
+					refIDs[k] = getTupleID(table2, keyMaps.get(table2), data);
+				}
+				String[] attributeVals = new String[attributeNames.size()];
+				for(int i=0; i<attributeVals.length; i++){
+					attributeVals[i] = data.getString(attributeNames.get(i));
+				}
+				index.add(parentID, refIDs, attributeVals);
+			}
+		}finally{
+			data.close();
 		}
+		return index;
 	}
 
-	private boolean isValsEqual(List<String> vals1, List<String> vals2) throws MainException{
-		//boolean isEqual = true;
-		for(int i= 0; i<vals1.size(); i++){
-			String val1 = vals1.get(i);
-			String val2 = vals2.get(i);
-			//logger.info("val1=" + val1 + "; val2= " +val2);
-			if(!val1.equals(val2)){
-				return false;
-			}
+	/*
+	 * Prints the reference to a supertype stored in the same table
+	 * */
+	private void printSpecialRelationship(ORASSNode node2, String refID, int indentation) throws MainException{
+		try{
+			writer.printReference(indentation, getTags(node2.getName()), refID, true);
+		}catch(Exception ex){
+			throw new MainException(ex.getMessage());
 		}
-		return true;
 	}
 
 	private boolean checkTableExist(String tName){
@@ -595,6 +1978,7 @@ public class XMLDataGenerator implements Generator {
 		keyMaps.put(newName, pks);
 		List<ColumnDetail> criticalCols = new ArrayList<ColumnDetail>();
 		List<ColumnDetail> colDetails = parent.getEntityAttributes();
+		tableDataIDs.put(newName, createRegistry(newName, pks, colDetails));
 		for(int i=0; i< colDetails.size(); i++){
 			ColumnDetail col = colDetails.get(i);
 			String colName = col.getName();
@@ -704,10 +2088,4 @@ public class XMLDataGenerator implements Generator {
 		}
 	}
 
-	private void printTabs(int indentation){
-		for(int i=0; i<indentation; i++){
-			writer.print("\t");
-		}
-
-	}
 }
@@ -1,10 +1,8 @@
 package xml;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -21,7 +19,7 @@ import database.ColumnDetail;
 public class XMLSchemaGenerator implements Generator {
 	
 	private static Logger logger = Logger.getLogger(XMLSchemaGenerator.class);
-	private PrintWriter writer;
+	private XMLWriter writer;
 	private Map<Integer, String> sqlDataTypes;
 	private List<String> processedTables;
 	private Map<String, List<String>> naryRels;
@@ -61,7 +59,7 @@ public class XMLSchemaGenerator implements Generator {
 			isDone = file.createNewFile();
 			logger.info("file created? " + isDone);
 			
-			writer = new PrintWriter(new BufferedWriter(new FileWriter(file, false)), true);
+			writer = new XMLWriter(new FileOutputStream(file, false));
 			
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -108,20 +106,6 @@ public class XMLSchemaGenerator implements Generator {
 		sqlDataTypes.put(java.sql.Types.JAVA_OBJECT, 	"xs:string");
 	}
 	
-	/**
-	 * Generates a string of tabs 
-	 * @param numberOfTabs	number of tabs
-	 * @return				a string of tabs according to the specified number of tabs
-	 */
-	private String getTabs(int numberOfTabs) {
-		String tabs = "";
-		
-		for (int i=0; i<numberOfTabs; ++i) {
-			tabs += "\t";
-		}
-		return tabs;
-	}
-	
 	/**
 	 * Print XML schema for a database
 	 * @param dbName			name of database
@@ -177,7 +161,7 @@ public class XMLSchemaGenerator implements Generator {
 	private void printElementDeclaration(ORASSNode node, int numOfTabs) {
 		
 		String tableName = node.getName();
-		writer.println(getTabs(numOfTabs) + "<xs:element name=\""+tableName+"\" type=\""+tableName+"_Type\" maxOccurs=\"unbounded\"/>");
+		writer.println(numOfTabs, "<xs:element name=\""+tableName+"\" type=\""+tableName+"_Type\" maxOccurs=\"unbounded\"/>");
 		
 		List<ORASSNode> children = node.getChildren();
 		Iterator<ORASSNode> itr1 = children.iterator();
@@ -210,8 +194,8 @@ public class XMLSchemaGenerator implements Generator {
 		
 		String tableName = node.getName();
 		
-		writer.println(getTabs(numOfTabs)     + "<xs:complexType name=\""+tableName+"_Type\">");
-		writer.println(getTabs(numOfTabs + 1) + "<xs:attribute name=\""+tableName+"#\" type=\"xs:string\" use=\"required\"/>");
+		writer.println(numOfTabs, "<xs:complexType name=\""+tableName+"_Type\">");
+		writer.println(numOfTabs + 1, "<xs:attribute name=\""+tableName+"#\" type=\"xs:string\" use=\"required\"/>");
 		
 		List<ORASSNode> superTypes = node.getSupertypeNode();
 		ORASSNode normalEntity = node.getNormalEntityNode();
@@ -220,7 +204,7 @@ public class XMLSchemaGenerator implements Generator {
 		
 		// print all column info if it is not a subtype
 		if (!isSubType) {
-			writer.println(getTabs(numOfTabs + 1) + "<xs:all>");
+			writer.println(numOfTabs + 1, "<xs:all>");
 			printColumns(node.getEntityAttributes(), numOfTabs + 2);
 		}
 		
@@ -230,23 +214,23 @@ public class XMLSchemaGenerator implements Generator {
 			while (itr.hasNext()) {
 				ORASSNode superType = itr.next();
 				String superTypeName = superType.getName();
-				writer.println(getTabs(numOfTabs + 1) + "<xs:all>");
-				writer.println(getTabs(numOfTabs + 2) + "<xs:element name=\""+superTypeName+"\">");
-				writer.println(getTabs(numOfTabs + 3) + "<xs:complexType>");
-				writer.println(getTabs(numOfTabs + 4) + "<xs:attribute name=\""+superTypeName+"_Ref\" type=\"xs:string\" use=\"required\"/>");
-				writer.println(getTabs(numOfTabs + 3) + "</xs:complexType>");
-				writer.println(getTabs(numOfTabs + 2) + "</xs:element>");
+				writer.println(numOfTabs + 1, "<xs:all>");
+				writer.println(numOfTabs + 2, "<xs:element name=\""+superTypeName+"\">");
+				writer.println(numOfTabs + 3, "<xs:complexType>");
+				writer.println(numOfTabs + 4, "<xs:attribute name=\""+superTypeName+"_Ref\" type=\"xs:string\" use=\"required\"/>");
+				writer.println(numOfTabs + 3, "</xs:complexType>");
+				writer.println(numOfTabs + 2, "</xs:element>");
 			}
 		}
 		
 		// if it is a weak entity, print the reference to its normal entity	
 		else if (isWeakEntity) {
 			String normalEntityName = normalEntity.getName();
-			writer.println(getTabs(numOfTabs + 2) + "<xs:element name=\""+normalEntityName+"\">");
-			writer.println(getTabs(numOfTabs + 3) + "<xs:complexType>");
-			writer.println(getTabs(numOfTabs + 4) + "<xs:attribute name=\""+normalEntityName+"_Ref\" type=\"xs:string\" use=\"required\"/>");
-			writer.println(getTabs(numOfTabs + 3) + "</xs:complexType>");
-			writer.println(getTabs(numOfTabs + 2) + "</xs:element>");
+			writer.println(numOfTabs + 2, "<xs:element name=\""+normalEntityName+"\">");
+			writer.println(numOfTabs + 3, "<xs:complexType>");
+			writer.println(numOfTabs + 4, "<xs:attribute name=\""+normalEntityName+"_Ref\" type=\"xs:string\" use=\"required\"/>");
+			writer.println(numOfTabs + 3, "</xs:complexType>");
+			writer.println(numOfTabs + 2, "</xs:element>");
 		}
 		
 		// print references to other tables
@@ -266,22 +250,22 @@ public class XMLSchemaGenerator implements Generator {
 			}
 			
 			else {
-				writer.println(getTabs(numOfTabs + 2) + "<xs:element name=\""+childName+"\" minOccurs=\"0\" maxOccurs=\"unbounded\">");
-				writer.println(getTabs(numOfTabs + 3) + "<xs:complexType>");
-				writer.println(getTabs(numOfTabs + 4) + "<xs:attribute name=\""+childName+"_Ref\" type=\"xs:string\" use=\"required\"/>");
+				writer.println(numOfTabs + 2, "<xs:element name=\""+childName+"\" minOccurs=\"0\" maxOccurs=\"unbounded\">");
+				writer.println(numOfTabs + 3, "<xs:complexType>");
+				writer.println(numOfTabs + 4, "<xs:attribute name=\""+childName+"_Ref\" type=\"xs:string\" use=\"required\"/>");
 				List<ColumnDetail> relAttrs = child.getRelAttributes();
 				if (relAttrs.size() > 0) {
-					writer.println(getTabs(numOfTabs + 4) + "<xs:all>");
+					writer.println(numOfTabs + 4, "<xs:all>");
 					printRelColumns(relAttrs, numOfTabs + 5);
-					writer.println(getTabs(numOfTabs + 4) + "</xs:all>");
+					writer.println(numOfTabs + 4, "</xs:all>");
 				}
-				writer.println(getTabs(numOfTabs + 3) + "</xs:complexType>");
-				writer.println(getTabs(numOfTabs + 2) + "</xs:element>");
+				writer.println(numOfTabs + 3, "</xs:complexType>");
+				writer.println(numOfTabs + 2, "</xs:element>");
 			}
 		}
 		
-		writer.println(getTabs(numOfTabs + 1) + "</xs:all>");
-		writer.println(getTabs(numOfTabs)     + "</xs:complexType>");
+		writer.println(numOfTabs + 1, "</xs:all>");
+		writer.println(numOfTabs, "</xs:complexType>");
 		writer.println();
 		
 		itr = children.iterator();
@@ -298,9 +282,9 @@ public class XMLSchemaGenerator implements Generator {
 	private void printEntitiesInNary(ORASSNode node, String naryRelName, List<String> entities, int currEntityIndex, int numOfTabs) {
 		
 		String entityName = node.getName();
-		writer.println(getTabs(numOfTabs) + "<xs:element name=\""+entityName+"\" minOccurs=\"0\" maxOccurs=\"unbounded\">");
-		writer.println(getTabs(numOfTabs + 1) + "<xs:complexType>");
-		writer.println(getTabs(numOfTabs + 2) + "<xs:attribute name=\""+entityName+"_Ref\" type=\"xs:string\" use=\"required\"/>");
+		writer.println(numOfTabs, "<xs:element name=\""+entityName+"\" minOccurs=\"0\" maxOccurs=\"unbounded\">");
+		writer.println(numOfTabs + 1, "<xs:complexType>");
+		writer.println(numOfTabs + 2, "<xs:attribute name=\""+entityName+"_Ref\" type=\"xs:string\" use=\"required\"/>");
 		
 		List<ColumnDetail> naryRelAttrs = new ArrayList<ColumnDetail>();
 		if (currEntityIndex == entities.size()-1) {
@@ -315,9 +299,9 @@ public class XMLSchemaGenerator implements Generator {
 			}
 			
 			if (naryRelAttrs.size() > 0) {
-				writer.println(getTabs(numOfTabs + 2) + "<xs:all>");
+				writer.println(numOfTabs + 2, "<xs:all>");
 				printColumns(naryRelAttrs, numOfTabs + 3);
-				writer.println(getTabs(numOfTabs + 2) + "</xs:all>");
+				writer.println(numOfTabs + 2, "</xs:all>");
 			}
 		}
 		
@@ -334,8 +318,8 @@ public class XMLSchemaGenerator implements Generator {
 			}
 		}
 		
-		writer.println(getTabs(numOfTabs + 1) + "</xs:complexType>");
-		writer.println(getTabs(numOfTabs) + "</xs:element>");
+		writer.println(numOfTabs + 1, "</xs:complexType>");
+		writer.println(numOfTabs, "</xs:element>");
 	}
 	
 	
@@ -355,10 +339,8 @@ public class XMLSchemaGenerator implements Generator {
 			
 			xmlMaxOccur   = column.isMultiValued() ? " maxOccurs=\"unbounded\"" : "";
 			
-			xml = "";		
-			xml += getTabs(numOfTabs); 
-			xml += "<xs:element name=\""+column.getName()+"\" type=\""+colType+"\" nillable=\""+column.isNullable()+"\""+xmlColDefault + xmlMaxOccur + "/>";
-			writer.println(xml);
+			xml = "<xs:element name=\""+column.getName()+"\" type=\""+colType+"\" nillable=\""+column.isNullable()+"\""+xmlColDefault + xmlMaxOccur + "/>";
+			writer.println(numOfTabs, xml);
 			
 		}
 	}
@@ -382,10 +364,8 @@ public class XMLSchemaGenerator implements Generator {
 			
 			xmlMaxOccur   = column.isMultiValued() ? " maxOccurs=\"unbounded\"" : "";
 			
-			xml = "";		
-			xml += getTabs(numOfTabs); 
-			xml += "<xs:element name=\""+column.getName()+"\" type=\""+colType+"\" nillable=\""+column.isNullable()+"\""+xmlColDefault + xmlMaxOccur + "/>";
-			writer.println(xml);
+			xml = "<xs:element name=\""+column.getName()+"\" type=\""+colType+"\" nillable=\""+column.isNullable()+"\""+xmlColDefault + xmlMaxOccur + "/>";
+			writer.println(numOfTabs, xml);
 			
 		}
 	}
@@ -443,18 +423,18 @@ public class XMLSchemaGenerator implements Generator {
 		
 		if (tableName.equals(originalName)) {
 		
-			writer.println(getTabs(numOfTabs)     + "<xs:unique name=\""+tableName+"_Uniq"+"\">");
-			writer.println(getTabs(numOfTabs + 1) + "<xs:selector xpath=\".//"+tableName+"/*\"/>");
+			writer.println(numOfTabs, "<xs:unique name=\""+tableName+"_Uniq"+"\">");
+			writer.println(numOfTabs + 1, "<xs:selector xpath=\".//"+tableName+"/*\"/>");
 			
 			List<ColumnDetail> cols = node.getAttributes();
 			Iterator<ColumnDetail> colsItr = cols.iterator();
 			while(colsItr.hasNext()) {
 				ColumnDetail column = colsItr.next();
 				if (column.isUnique())
-					writer.println(getTabs(numOfTabs + 1) + "<xs:field xpath=\""+column.getName()+"\"/>");
+					writer.println(numOfTabs + 1, "<xs:field xpath=\""+column.getName()+"\"/>");
 			}
 			
-			writer.println(getTabs(numOfTabs) + "</xs:unique>");
+			writer.println(numOfTabs, "</xs:unique>");
 			writer.println();
 		}
 		
@@ -489,10 +469,10 @@ public class XMLSchemaGenerator implements Generator {
 	private void printKey(ORASSNode node, int numOfTabs) {
 		String tableName = node.getName();
 		
-		writer.println(getTabs(numOfTabs)     + "<xs:key name=\""+tableName+"_Key"+"\">");
-		writer.println(getTabs(numOfTabs + 1) + "<xs:selector xpath=\".//"+tableName+"\"/>");
-		writer.println(getTabs(numOfTabs + 1) + "<xs:field xpath=\"@"+tableName+"#\"/>");
-		writer.println(getTabs(numOfTabs)     + "</xs:key>");
+		writer.println(numOfTabs, "<xs:key name=\""+tableName+"_Key"+"\">");
+		writer.println(numOfTabs + 1, "<xs:selector xpath=\".//"+tableName+"\"/>");
+		writer.println(numOfTabs + 1, "<xs:field xpath=\"@"+tableName+"#\"/>");
+		writer.println(numOfTabs, "</xs:key>");
 		writer.println();
 		
 		List<ORASSNode> children = node.getChildren();
@@ -544,10 +524,10 @@ public class XMLSchemaGenerator implements Generator {
 		
 		String tableName = node.getName();
 		
-		writer.println(getTabs(numOfTabs)     + "<xs:keyref name=\""+tableName+"_KeyRef"+"\" refer=\""+tableName+"_Key"+"\">");
-		writer.println(getTabs(numOfTabs + 1) + "<xs:selector xpath=\""+dbName+"/*\"/>");
-		writer.println(getTabs(numOfTabs + 1) + "<xs:field xpath=\"@"+tableName+"_Ref\"/>");
-		writer.println(getTabs(numOfTabs)     + "</xs:keyref>");
+		writer.println(numOfTabs, "<xs:keyref name=\""+tableName+"_KeyRef"+"\" refer=\""+tableName+"_Key"+"\">");
+		writer.println(numOfTabs + 1, "<xs:selector xpath=\""+dbName+"/*\"/>");
+		writer.println(numOfTabs + 1, "<xs:field xpath=\"@"+tableName+"_Ref\"/>");
+		writer.println(numOfTabs, "</xs:keyref>");
 		writer.println();
 		
 		if (isRoot)
@@ -565,9 +545,11 @@ public class XMLSchemaGenerator implements Generator {
 	/**
 	 * Close I/O connection to file 
 	 */
-	private void finish() {
+	private void finish() throws MainException {
 		writer.close();
 		logger.info("Close database connection.");
+		if (writer.checkError())
+			throw new MainException("The XML schema file cannot be written.");
 	}
 	
 }
@@ -0,0 +1,232 @@
+package xml;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Writes the XML documents as UTF-8 bytes through a large buffer.
+ *
+ * <p>
+ * The underlying stream is only written when the buffer is full, so that a document costs
+ * one system call per {@link #BUFFER_SIZE} bytes instead of one per line. ASCII text is copied
+ * into the buffer char by char, and the tags and indentation are copied from arrays encoded
+ * once, see {@link TagBytes}. Lines end with the line separator of the platform.
+ * </p>
+ *
+ * <p>
+ * As with a <code>PrintWriter</code>, the print methods do not throw. An error of the
+ * underlying stream is reported by {@link #checkError()}.
+ * </p>
+ */
+public class XMLWriter {
+
+	public static final int BUFFER_SIZE = 262144;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final byte[] LINE_SEPARATOR = encode(System.getProperty("line.separator"));
+	private static final byte[] ATTRIBUTE_END = encode("\">");
+	private static final byte[] TABS = tabs(64);
+
+	private OutputStream out;
+	private byte[] buffer;
+	private int count;
+	private boolean hasError;
+
+	public XMLWriter(OutputStream out) {
+		this(out, BUFFER_SIZE);
+	}
+
+	public XMLWriter(OutputStream out, int bufferSize) {
+		this.out      = out;
+		this.buffer   = new byte[bufferSize];
+		this.count    = 0;
+		this.hasError = false;
+	}
+
+	/**
+	 * Encodes text to UTF-8
+	 */
+	public static byte[] encode(String text) {
+		return text.getBytes(UTF8);
+	}
+
+	/**
+	 * Prints text. A null text is printed as "null", as a <code>PrintWriter</code> does.
+	 */
+	public void print(String text) {
+		if (text == null)
+			text = "null";
+		int length = text.length();
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			if (c >= 0x80) {
+				write(encode(text.substring(i)));
+				return;
+			}
+			if (count == buffer.length)
+				flushBuffer();
+			buffer[count++] = (byte) c;
+		}
+	}
+
+	public void println(String line) {
+		print(line);
+		println();
+	}
+
+	public void println() {
+		write(LINE_SEPARATOR);
+	}
+
+	/**
+	 * Prints a line after the given number of tabs
+	 */
+	public void println(int indentation, String line) {
+		printTabs(indentation);
+		println(line);
+	}
+
+	public void printTabs(int indentation) {
+		while (indentation > 0) {
+			int tabs = Math.min(indentation, TABS.length);
+			write(TABS, 0, tabs);
+			indentation -= tabs;
+		}
+	}
+
+	/**
+	 * Prints the opening tag of a tuple with its ID, e.g. <code>&lt;table table#="table1"&gt;</code>
+	 */
+	public void printTupleStart(int indentation, TagBytes tags, String id) {
+		printTabs(indentation);
+		write(tags.getOpenID());
+		print(id);
+		write(ATTRIBUTE_END);
+		println();
+	}
+
+	/**
+	 * Prints the reference to a tuple, e.g. <code>&lt;table table_Ref="table1"&gt;</code>
+	 * @param isEmpty	whether the element is closed on the same line
+	 */
+	public void printReference(int indentation, TagBytes tags, String refID, boolean isEmpty) {
+		printTabs(indentation);
+		write(tags.getOpenRef());
+		print(refID);
+		write(ATTRIBUTE_END);
+		if (isEmpty)
+			write(tags.getClose());
+		println();
+	}
+
+	/**
+	 * Prints the closing tag of an element on a line of its own
+	 */
+	public void printEnd(int indentation, TagBytes tags) {
+		printTabs(indentation);
+		write(tags.getClose());
+		println();
+	}
+
+	/**
+	 * Prints an element with a value, e.g. <code>&lt;column&gt;value&lt;/column&gt;</code>
+	 */
+	public void printElement(int indentation, TagBytes tags, String value) {
+		printTabs(indentation);
+		write(tags.getOpen());
+		print(value);
+		write(tags.getClose());
+		println();
+	}
+
+	/**
+	 * Prints an element with a value, or an element with xsi:nil if the value is null
+	 */
+	public void printNillableElement(int indentation, TagBytes tags, String value) {
+		if (value != null) {
+			printElement(indentation, tags, value);
+			return;
+		}
+		printTabs(indentation);
+		write(tags.getOpenNil());
+		write(tags.getClose());
+		println();
+	}
+
+	public void write(byte[] bytes) {
+		write(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Writes bytes. Blocks larger than the buffer go to the underlying stream directly.
+	 */
+	public void write(byte[] bytes, int off, int len) {
+		if (len > buffer.length - count) {
+			flushBuffer();
+			if (len >= buffer.length) {
+				writeOut(bytes, off, len);
+				return;
+			}
+		}
+		System.arraycopy(bytes, off, buffer, count, len);
+		count += len;
+	}
+
+	public void flush() {
+		flushBuffer();
+		try {
+			out.flush();
+		} catch (IOException e) {
+			hasError = true;
+		}
+	}
+
+	/**
+	 * Writes the buffer and closes the underlying stream
+	 */
+	public void close() {
+		if (buffer == null)
+			return;
+		flushBuffer();
+		buffer = null;
+		try {
+			out.close();
+		} catch (IOException e) {
+			hasError = true;
+		}
+	}
+
+	/**
+	 * Writes the buffer, and tells whether the underlying stream has failed
+	 * @return	true if some text could not be written
+	 */
+	public boolean checkError() {
+		if (buffer != null)
+			flush();
+		return hasError;
+	}
+
+	private void flushBuffer() {
+		if (count > 0) {
+			writeOut(buffer, 0, count);
+			count = 0;
+		}
+	}
+
+	private void writeOut(byte[] bytes, int off, int len) {
+		if (hasError)
+			return;
+		try {
+			out.write(bytes, off, len);
+		} catch (IOException e) {
+			hasError = true;
+		}
+	}
+
+	private static byte[] tabs(int count) {
+		byte[] tabs = new byte[count];
+		Arrays.fill(tabs, (byte) '\t');
+		return tabs;
+	}
+}
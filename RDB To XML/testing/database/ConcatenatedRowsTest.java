@@ -0,0 +1,85 @@
+package database;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.RowSetMetaData;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+
+import com.sun.rowset.CachedRowSetImpl;
+
+import junit.framework.TestCase;
+
+public class ConcatenatedRowsTest extends TestCase {
+
+	public void testRowsFollowTheOrderOfTheParts() throws Exception {
+		List<CachedRowSet> parts = new ArrayList<CachedRowSet>();
+		// The range of the NULL keys comes first, then the ranges of the values, one of them empty
+		parts.add(part(new Integer[] {null, null}, new String[] {"n1", "n2"}));
+		parts.add(part(new Integer[] {1, 2}, new String[] {"a", null}));
+		parts.add(part(new Integer[0], new String[0]));
+		parts.add(part(new Integer[] {5}, new String[] {"e"}));
+
+		CachedRowSet rows = ConcatenatedRows.concatenate(parts);
+		assertEquals("null:n1, null:n2, 1:a, 2:null, 5:e", read(rows));
+		for (int i = 0; i < parts.size(); i++) {
+			assertNull(parts.get(i));
+		}
+	}
+
+	public void testEmptyPartsGiveNoRows() throws Exception {
+		List<CachedRowSet> parts = new ArrayList<CachedRowSet>();
+		parts.add(part(new Integer[0], new String[0]));
+		parts.add(part(new Integer[0], new String[0]));
+		assertEquals("", read(ConcatenatedRows.concatenate(parts)));
+	}
+
+	public void testSinglePartIsReturned() throws Exception {
+		List<CachedRowSet> parts = new ArrayList<CachedRowSet>();
+		CachedRowSet part = part(new Integer[] {3}, new String[] {"c"});
+		parts.add(part);
+		assertTrue(ConcatenatedRows.concatenate(parts) == part);
+	}
+
+	private String read(CachedRowSet rows) throws Exception {
+		StringBuilder text = new StringBuilder();
+		rows.beforeFirst();
+		while (rows.next()) {
+			int id = rows.getInt("id");
+			String key = rows.wasNull() ? "null" : String.valueOf(id);
+			text.append(text.length() > 0 ? ", " : "").append(key).append(":").append(rows.getString("name"));
+		}
+		return text.toString();
+	}
+
+	private CachedRowSet part(Integer[] ids, String[] names) throws Exception {
+		RowSetMetaData metaData = new RowSetMetaDataImpl();
+		metaData.setColumnCount(2);
+		metaData.setColumnName(1, "id");
+		metaData.setColumnType(1, Types.INTEGER);
+		metaData.setNullable(1, RowSetMetaData.columnNullable);
+		metaData.setColumnName(2, "name");
+		metaData.setColumnType(2, Types.VARCHAR);
+		metaData.setNullable(2, RowSetMetaData.columnNullable);
+		CachedRowSet crs = new CachedRowSetImpl();
+		crs.setMetaData(metaData);
+		// A row is inserted before the rows inserted earlier
+		for (int i = ids.length - 1; i >= 0; i--) {
+			crs.moveToInsertRow();
+			if (ids[i] == null)
+				crs.updateNull(1);
+			else
+				crs.updateInt(1, ids[i]);
+			if (names[i] == null)
+				crs.updateNull(2);
+			else
+				crs.updateString(2, names[i]);
+			crs.insertRow();
+			crs.moveToCurrentRow();
+		}
+		crs.beforeFirst();
+		return crs;
+	}
+}
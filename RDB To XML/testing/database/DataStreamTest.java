@@ -0,0 +1,58 @@
+package database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import main.MainException;
+import junit.framework.TestCase;
+
+public class DataStreamTest extends TestCase {
+
+	private List<String> closed;
+
+	protected void setUp() {
+		closed = new ArrayList<String>();
+	}
+
+	public void testConnectionIsClosedWhenTheResultsFail() throws Exception {
+		DataStream stream = new DataStream(mock(ResultSet.class, "results", true), mock(Statement.class, "statement", true),
+				mock(Connection.class, "connection", false));
+		try {
+			stream.close();
+			fail("The close should have failed");
+		} catch (MainException e) {
+			assertEquals("Failed to close the data stream : results", e.getMessage());
+		}
+		assertEquals("[results, statement, connection]", closed.toString());
+	}
+
+	public void testSharedConnectionIsNotClosed() throws Exception {
+		DataStream stream = new DataStream(mock(ResultSet.class, "results", false), mock(Statement.class, "statement", false), null);
+		stream.close();
+		assertEquals("[results, statement]", closed.toString());
+	}
+
+	/*
+	 * JDBC object which records its close, and fails it if asked to
+	 * */
+	private <T> T mock(Class<T> type, final String name, final boolean failsToClose) {
+		InvocationHandler handler = new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("close")) {
+					closed.add(name);
+					if (failsToClose)
+						throw new SQLException(name);
+				}
+				return null;
+			}
+		};
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler));
+	}
+}
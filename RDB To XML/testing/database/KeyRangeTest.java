@@ -0,0 +1,25 @@
+package database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class KeyRangeTest extends TestCase {
+
+	public void testRangesCoverAllValues() throws Exception {
+		List<Object> bounds = new ArrayList<Object>(Arrays.asList((Object) 100L, 200L));
+		List<KeyRange> ranges = KeyRange.split("student.id", bounds);
+		assertEquals(3, ranges.size());
+		assertEquals("(student.id IS NULL OR student.id < ?)", ranges.get(0).toCondition());
+		assertEquals("student.id >= ? AND student.id < ?", ranges.get(1).toCondition());
+		assertEquals("student.id >= ?", ranges.get(2).toCondition());
+	}
+
+	public void testNoBoundsGivesOneRange() throws Exception {
+		List<KeyRange> ranges = KeyRange.split("student.id", new ArrayList<Object>());
+		assertEquals(1, ranges.size());
+		assertEquals("1=1", ranges.get(0).toCondition());
+	}
+}
@@ -0,0 +1,40 @@
+package database;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class OuterUnionQueryTest extends TestCase {
+
+	public void testIntegerAndCharacterValuesAreExact() {
+		OuterUnionQuery union = newUnion(column("id", Types.INTEGER), column("name", Types.VARCHAR));
+		assertTrue(union.hasExactValues());
+	}
+
+	public void testTemporalKeyIsNotExact() {
+		// The server gives '2020-01-02 03:04:05' where the driver reads '2020-01-02 03:04:05.0'
+		OuterUnionQuery union = newUnion(column("created", Types.TIMESTAMP), column("name", Types.VARCHAR));
+		assertFalse(union.hasExactValues());
+	}
+
+	public void testDecimalAttributeIsNotExact() {
+		OuterUnionQuery union = newUnion(column("id", Types.BIGINT), column("price", Types.DECIMAL));
+		assertFalse(union.hasExactValues());
+	}
+
+	private OuterUnionQuery newUnion(ColumnDetail key, ColumnDetail attribute) {
+		List<ColumnDetail> keyCols = Arrays.asList(key);
+		List<ColumnDetail> valueCols = Arrays.asList(key, attribute);
+		OuterUnionQuery union = new OuterUnionQuery();
+		union.addEntityBranch(0, "orders", valueCols, keyCols, new ArrayList<ColumnDetail>(), valueCols);
+		return union;
+	}
+
+	private ColumnDetail column(String name, int sqlType) {
+		return new ColumnDetail("orders", name, new HashMap<String, String>(), null, true, false, 0, sqlType);
+	}
+}
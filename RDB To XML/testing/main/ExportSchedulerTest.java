@@ -0,0 +1,169 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import database.MetadataCache;
+import junit.framework.TestCase;
+
+public class ExportSchedulerTest extends TestCase {
+
+	private List<String> started;
+	private Map<String, CountDownLatch> releases;
+	private Map<String, Integer> connections;
+	private ExportSettings settings;
+
+	protected void setUp() {
+		started     = new ArrayList<String>();
+		releases    = new HashMap<String, CountDownLatch>();
+		connections = new HashMap<String, Integer>();
+		settings    = new ExportSettings();
+		settings.setPoolSize(2);
+	}
+
+	public void testJobsOfTheSameDatabaseWaitForItsConnections() throws Exception {
+		ExportScheduler scheduler = newScheduler(2, 2);
+		submit(scheduler, "a", "a1", 0);
+		submit(scheduler, "a", "a2", 0);
+		submit(scheduler, "b", "b1", 0);
+		waitForStarted(2);
+		assertEquals("[a1, b1]", getStartedAtOnce(2));
+
+		release("a1");
+		waitForStarted(3);
+		assertEquals("[a2]", getStarted(2, 3));
+		release("b1");
+		release("a2");
+		scheduler.shutdown();
+		assertEquals(Integer.valueOf(2), connections.get("a2"));
+	}
+
+	public void testHigherPriorityThenFairShareGoFirst() throws Exception {
+		ExportScheduler scheduler = newScheduler(2, 4);
+		submit(scheduler, "a", "a1", 0);
+		submit(scheduler, "a", "a2", 0);
+		waitForStarted(2);
+		submit(scheduler, "a", "a3", 0);
+		submit(scheduler, "b", "b1", 0);
+		submit(scheduler, "c", "c1", 5);
+
+		// c1 has the highest priority, then b1 has no running job while a2 is still running
+		release("a1");
+		waitForStarted(3);
+		release("c1");
+		waitForStarted(4);
+		assertEquals("[c1, b1]", getStarted(2, 4));
+		release("a2");
+		release("b1");
+		release("a3");
+		scheduler.shutdown();
+		assertEquals("[a1, a2]", getStartedAtOnce(2));
+		assertEquals("[c1, b1, a3]", getStarted(2, 5));
+	}
+
+	public void testFailedJobReleasesItsConnections() throws Exception {
+		ExportScheduler scheduler = newScheduler(1, 2);
+		Future<Void> failed = submit(scheduler, "a", "fail", 0);
+		submit(scheduler, "a", "a1", 0);
+		release("a1");
+		scheduler.shutdown();
+		assertEquals("[fail, a1]", getStarted(0, 2));
+		try {
+			failed.get();
+			fail("The job should have failed");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof MainException);
+		}
+	}
+
+	public void testCancelledJobKeepsItsConnectionsUntilItReturns() throws Exception {
+		ExportScheduler scheduler = newScheduler(2, 2);
+		Future<Void> cancelled = submit(scheduler, "a", "a1", 0);
+		Future<Void> dropped = submit(scheduler, "a", "a2", 0);
+		submit(scheduler, "a", "a3", 0);
+		waitForStarted(1);
+		assertTrue(dropped.cancel(false));
+		assertTrue(cancelled.cancel(false));
+		Thread.sleep(200);
+		assertEquals("[a1]", getStarted(0, 1));
+		assertEquals(1, getStartedCount());
+
+		release("a1");
+		waitForStarted(2);
+		release("a3");
+		scheduler.shutdown();
+		assertEquals("[a1, a3]", getStarted(0, 2));
+	}
+
+	private ExportScheduler newScheduler(int maxJobs, int connectionsPerDatabase) {
+		return new ExportScheduler(settings, maxJobs, connectionsPerDatabase) {
+			protected void runJob(ExportJob job, ExportSettings jobSettings, MetadataCache metadata) throws MainException {
+				String name = job.getRootEntity();
+				CountDownLatch release;
+				synchronized (ExportSchedulerTest.this) {
+					started.add(name);
+					connections.put(name, jobSettings.getPoolSize());
+					release = getRelease(name);
+					ExportSchedulerTest.this.notifyAll();
+				}
+				if (name.equals("fail"))
+					throw new MainException("failed");
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new MainException("interrupted");
+				}
+			}
+		};
+	}
+
+	private Future<Void> submit(ExportScheduler scheduler, String dbName, String name, int priority) throws MainException {
+		ExportJob job = new ExportJob("localhost", "3306", dbName, "user", "password", name, name);
+		job.setPriority(priority);
+		return scheduler.submit(job);
+	}
+
+	private synchronized CountDownLatch getRelease(String name) {
+		CountDownLatch release = releases.get(name);
+		if (release == null) {
+			release = new CountDownLatch(1);
+			releases.put(name, release);
+		}
+		return release;
+	}
+
+	private void release(String name) {
+		getRelease(name).countDown();
+	}
+
+	private synchronized void waitForStarted(int count) throws InterruptedException {
+		long end = System.currentTimeMillis() + 10000;
+		while (started.size() < count && System.currentTimeMillis() < end) {
+			wait(100);
+		}
+		assertEquals(count, started.size());
+	}
+
+	private synchronized int getStartedCount() {
+		return started.size();
+	}
+
+	private synchronized String getStarted(int from, int to) {
+		return started.subList(from, to).toString();
+	}
+
+	/*
+	 * The first jobs, which are started at once and whose threads may run in any order
+	 * */
+	private synchronized String getStartedAtOnce(int count) {
+		List<String> jobs = new ArrayList<String>(started.subList(0, count));
+		Collections.sort(jobs);
+		return jobs.toString();
+	}
+}
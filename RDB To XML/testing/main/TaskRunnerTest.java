@@ -0,0 +1,44 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.TestCase;
+
+public class TaskRunnerTest extends TestCase {
+
+	public void testFailureWaitsForTheRunningTasks() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final AtomicBoolean finished = new AtomicBoolean(false);
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		tasks.add(new Callable<Integer>() {
+			public Integer call() throws Exception {
+				started.await(10, TimeUnit.SECONDS);
+				throw new MainException("failed");
+			}
+		});
+		tasks.add(new Callable<Integer>() {
+			public Integer call() {
+				started.countDown();
+				// as a blocking query, this ignores the interruption
+				long end = System.currentTimeMillis() + 300;
+				while (System.currentTimeMillis() < end) {
+					Thread.yield();
+				}
+				finished.set(true);
+				return 1;
+			}
+		});
+		try {
+			new TaskRunner(false, 2).runAll(tasks);
+			fail("The tasks should have failed");
+		} catch (MainException e) {
+			assertEquals("failed", e.getMessage());
+		}
+		assertTrue(finished.get());
+	}
+}
@@ -0,0 +1,31 @@
+package xml;
+
+import junit.framework.TestCase;
+
+public class EdgePlannerTest extends TestCase {
+
+	private static final long PARENT_ROWS = 100000;
+	private static final long JOIN_ROWS = 5000000;
+	private static final long CARDINALITY = 100000;
+	private static final long PREFETCH_LIMIT = 1000000;
+
+	public void testBatchesAreReadForAParentInKeyOrder() {
+		assertEquals(EdgeStrategy.MERGE, EdgePlanner.choose(PARENT_ROWS, JOIN_ROWS, CARDINALITY, PREFETCH_LIMIT, true, true));
+		assertEquals(EdgeStrategy.BATCH, EdgePlanner.choose(PARENT_ROWS, JOIN_ROWS, CARDINALITY, PREFETCH_LIMIT, true, false));
+		assertEquals(200, EdgePlanner.getQueryCount(EdgeStrategy.BATCH, PARENT_ROWS, 500, true));
+	}
+
+	public void testUnorderedParentIsNotReadInBatches() {
+		// Almost every tuple of an unordered parent would read a batch of its own
+		assertEquals(PARENT_ROWS, EdgePlanner.getQueryCount(EdgeStrategy.BATCH, PARENT_ROWS, 500, false));
+		assertEquals(EdgeStrategy.JOIN, EdgePlanner.choose(PARENT_ROWS, JOIN_ROWS, CARDINALITY, PREFETCH_LIMIT, false, true));
+		assertEquals(PARENT_ROWS, EdgePlanner.getQueryCount(EdgeStrategy.JOIN, PARENT_ROWS, 500, false));
+		// Without an index the relationship is read once
+		assertEquals(EdgeStrategy.PREFETCH, EdgePlanner.choose(PARENT_ROWS, JOIN_ROWS, -1, PREFETCH_LIMIT, false, true));
+		assertEquals(1, EdgePlanner.getQueryCount(EdgeStrategy.PREFETCH, PARENT_ROWS, 500, false));
+	}
+
+	public void testSmallRelationshipIsPrefetched() {
+		assertEquals(EdgeStrategy.PREFETCH, EdgePlanner.choose(PARENT_ROWS, 20000, CARDINALITY, PREFETCH_LIMIT, false, true));
+	}
+}
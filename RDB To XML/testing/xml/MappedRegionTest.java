@@ -0,0 +1,37 @@
+package xml;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+public class MappedRegionTest extends TestCase {
+
+	public void testValuesSpanChunks() throws Exception {
+		MappedRegion region = new MappedRegion(null, "region", 4);
+		region.ensureCapacity(40);
+		assertEquals(48, region.capacity());
+		// Chunks of 16 bytes : the longs end the first chunk and start the second, the bytes span the second and the third
+		region.putLong(8, 123456789012L);
+		region.putLong(16, -42L);
+		region.putBytes(28, "across chunks".getBytes("UTF-8"));
+		assertEquals(123456789012L, region.getLong(8));
+		assertEquals(-42L, region.getLong(16));
+		byte[] bytes = new byte[13];
+		region.getBytes(28, bytes);
+		assertEquals("across chunks", new String(bytes, "UTF-8"));
+		region.close();
+	}
+
+	public void testCloseDeletesTheFile() throws Exception {
+		File directory = new File(System.getProperty("java.io.tmpdir"), "mapped-region-test");
+		directory.mkdirs();
+		MappedRegion region = new MappedRegion(directory, "region", 12);
+		region.ensureCapacity(10000);
+		region.putInt(9000, 42);
+		assertEquals(42, region.getInt(9000));
+		assertEquals(1, directory.listFiles().length);
+		region.close();
+		assertEquals(0, directory.listFiles().length);
+		directory.delete();
+	}
+}
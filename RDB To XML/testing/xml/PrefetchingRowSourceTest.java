@@ -0,0 +1,80 @@
+package xml;
+
+import java.io.File;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class PrefetchingRowSourceTest extends TestCase {
+
+	private RowSpool spool;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		spool = new RowSpool(new File(System.getProperty("java.io.tmpdir")), Arrays.asList("id", "name"));
+	}
+
+	protected void tearDown() throws Exception {
+		spool.close();
+		super.tearDown();
+	}
+
+	public void testRowsAreReadInOrder() throws Exception {
+		int rowCount = PrefetchingRowSource.BATCH_SIZE * 3 + 7;
+		for (int i = 1; i <= rowCount; i++) {
+			spool.append(new Row(Integer.toString(i), i % 5 == 0 ? null : "name" + i));
+		}
+
+		RowSource rows = new PrefetchingRowSource(spool.open(), Arrays.asList("id", "name"), "test-fetch", 2);
+		for (int i = 1; i <= rowCount; i++) {
+			assertTrue(rows.next());
+			assertEquals(i, rows.getLong("id"));
+			assertEquals(i % 5 == 0 ? null : "name" + i, rows.getString("name"));
+		}
+		assertFalse(rows.next());
+		rows.close();
+	}
+
+	public void testCloseBeforeTheEnd() throws Exception {
+		for (int i = 1; i <= PrefetchingRowSource.BATCH_SIZE * 4; i++) {
+			spool.append(new Row(Integer.toString(i), "name" + i));
+		}
+
+		RowSource rows = new PrefetchingRowSource(spool.open(), Arrays.asList("id", "name"), "test-fetch", 1);
+		assertTrue(rows.next());
+		assertEquals(1, rows.getLong("id"));
+		rows.close();
+	}
+
+	/*
+	 * Single row of values for the columns 'id' and 'name'
+	 * */
+	private static class Row implements RowSource {
+		private String id;
+		private String name;
+
+		private Row(String id, String name) {
+			this.id   = id;
+			this.name = name;
+		}
+
+		public boolean next() {
+			return false;
+		}
+
+		public String getString(String col) {
+			return col.equals("id") ? id : name;
+		}
+
+		public long getLong(String col) {
+			return Long.parseLong(getString(col));
+		}
+
+		public boolean wasNull() {
+			return false;
+		}
+
+		public void close() {
+		}
+	}
+}
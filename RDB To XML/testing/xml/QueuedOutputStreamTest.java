@@ -0,0 +1,21 @@
+package xml;
+
+import java.io.ByteArrayOutputStream;
+
+import junit.framework.TestCase;
+
+public class QueuedOutputStreamTest extends TestCase {
+
+	public void testTextIsWrittenInOrder() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		StringBuilder expected = new StringBuilder();
+		XMLWriter writer = new XMLWriter(new QueuedOutputStream(out, "test-writer", 2), 1000);
+		for (int i = 0; i < 20000; i++) {
+			writer.println("<row id=\"" + i + "\"></row>");
+			expected.append("<row id=\"" + i + "\"></row>").append(System.getProperty("line.separator"));
+		}
+		writer.close();
+		assertFalse(writer.checkError());
+		assertEquals(expected.toString(), out.toString("UTF-8"));
+	}
+}
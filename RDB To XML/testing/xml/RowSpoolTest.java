@@ -0,0 +1,86 @@
+package xml;
+
+import java.io.File;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class RowSpoolTest extends TestCase {
+
+	private RowSpool spool;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		spool = new RowSpool(new File(System.getProperty("java.io.tmpdir")), Arrays.asList("id", "name"));
+	}
+
+	protected void tearDown() throws Exception {
+		spool.close();
+		super.tearDown();
+	}
+
+	public void testRowsAreReadInOrder() throws Exception {
+		spool.append(new Row("1", "Alice"));
+		spool.append(new Row("2", null));
+		spool.append(new Row("3", "\u00e9t\u00e9"));
+		assertEquals(3, spool.getRowCount());
+
+		RowSource rows = spool.open();
+		assertTrue(rows.next());
+		assertEquals(1, rows.getLong("id"));
+		assertEquals("Alice", rows.getString("name"));
+		assertTrue(rows.next());
+		assertNull(rows.getString("name"));
+		assertTrue(rows.next());
+		assertEquals("\u00e9t\u00e9", rows.getString("name"));
+		assertFalse(rows.next());
+		rows.close();
+	}
+
+	public void testSharedSpoolIsReadByEachReader() throws Exception {
+		spool.append(new Row("1", "Alice"));
+		spool.setReaderCount(2);
+
+		RowSource first = spool.open();
+		assertTrue(first.next());
+		assertFalse(first.next());
+		first.close();
+
+		RowSource second = spool.open();
+		assertTrue(second.next());
+		assertEquals("Alice", second.getString("name"));
+		second.close();
+	}
+
+	/*
+	 * Single row of values for the columns 'id' and 'name'
+	 * */
+	private static class Row implements RowSource {
+		private String id;
+		private String name;
+
+		private Row(String id, String name) {
+			this.id   = id;
+			this.name = name;
+		}
+
+		public boolean next() {
+			return false;
+		}
+
+		public String getString(String col) {
+			return col.equals("id") ? id : name;
+		}
+
+		public long getLong(String col) {
+			return Long.parseLong(getString(col));
+		}
+
+		public boolean wasNull() {
+			return false;
+		}
+
+		public void close() {
+		}
+	}
+}
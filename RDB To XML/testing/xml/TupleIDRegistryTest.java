@@ -0,0 +1,161 @@
+package xml;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class TupleIDRegistryTest extends TestCase {
+
+	private TupleIDRegistry registry;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		registry = new TupleIDRegistry("student");
+	}
+
+	public void testIDsFollowRegistrationOrder() {
+		assertEquals("student1", registry.register(Arrays.asList("a0001")));
+		assertEquals("student2", registry.register(Arrays.asList("a0002")));
+		assertEquals("student1", registry.getID(Arrays.asList("a0001")));
+		assertEquals("student2", registry.getID(Arrays.asList("a0002")));
+	}
+
+	public void testRegisteringTwiceKeepsID() {
+		registry.register(Arrays.asList("a0001"));
+		assertEquals("student1", registry.register(Arrays.asList("a0001")));
+		assertEquals(1, registry.size());
+	}
+
+	public void testUnknownKeyHasEmptyID() {
+		registry.register(Arrays.asList("a0001"));
+		assertEquals("", registry.getID(Arrays.asList("a0003")));
+	}
+
+	public void testCompositeKeysDoNotCollide() {
+		registry.register(Arrays.asList("ab", "c"));
+		registry.register(Arrays.asList("a", "bc"));
+		assertEquals("student1", registry.getID(Arrays.asList("ab", "c")));
+		assertEquals("student2", registry.getID(Arrays.asList("a", "bc")));
+	}
+
+	public void testGrowsPastInitialCapacity() {
+		for (int i = 1; i <= 10000; i++) {
+			List<String> key = new ArrayList<String>();
+			key.add("" + i);
+			key.add("x" + i);
+			registry.register(key);
+		}
+		assertEquals(10000, registry.size());
+		assertEquals("student4321", registry.getID(Arrays.asList("4321", "x4321")));
+	}
+
+	public void testKeyValsByOrdinal() throws Exception {
+		registry.register(Arrays.asList("3:x", null));
+		registry.register(Arrays.asList("a", "b:c"));
+		assertEquals(Arrays.asList("3:x", null), registry.getKeyVals(1, 2));
+		assertEquals(Arrays.asList("a", "b:c"), registry.getKeyVals(2, 2));
+
+		TupleIDRegistry mapped = registry.toMappedRegistry(new File(System.getProperty("java.io.tmpdir")));
+		try {
+			mapped.register(Arrays.asList("d", "e"));
+			assertEquals(Arrays.asList("a", "b:c"), mapped.getKeyVals(2, 2));
+			assertEquals(Arrays.asList("d", "e"), mapped.getKeyVals(3, 2));
+		} finally {
+			mapped.close();
+		}
+
+		LongTupleIDRegistry longRegistry = new LongTupleIDRegistry("course");
+		longRegistry.register(42);
+		longRegistry.register(-7);
+		assertEquals(-7, longRegistry.getKey(2));
+		assertEquals(Arrays.asList("42"), longRegistry.getKeyVals(1, 1));
+	}
+
+	public void testLongKeys() {
+		LongTupleIDRegistry longRegistry = new LongTupleIDRegistry("course");
+		for (long key = -5000; key <= 5000; key += 5) {
+			longRegistry.register(key);
+		}
+		assertEquals(2001, longRegistry.size());
+		assertEquals("course1", longRegistry.getID(-5000));
+		assertEquals("course2001", longRegistry.getID(5000));
+		assertEquals("", longRegistry.getID(3));
+		assertEquals("course1001", longRegistry.getID(Arrays.asList("0")));
+		assertEquals("", longRegistry.getID(Arrays.asList("abc")));
+	}
+
+	public void testMappedRegistryKeepsIDs() throws Exception {
+		for (int i = 1; i <= 100; i++) {
+			registry.register(Arrays.asList("a" + i, "" + i));
+		}
+		TupleIDRegistry mapped = registry.toMappedRegistry(new File(System.getProperty("java.io.tmpdir")));
+		try {
+			assertTrue(mapped.isMapped());
+			for (int i = 101; i <= 200000; i++) {
+				mapped.register(Arrays.asList("a" + i, "" + i));
+			}
+			assertEquals(200000, mapped.size());
+			assertEquals("student42", mapped.getID(Arrays.asList("a42", "42")));
+			assertEquals("student150000", mapped.getID(Arrays.asList("a150000", "150000")));
+			assertEquals("", mapped.getID(Arrays.asList("a42", "43")));
+		} finally {
+			mapped.close();
+		}
+	}
+
+	public void testMappedLongRegistryKeepsIDs() throws Exception {
+		LongTupleIDRegistry longRegistry = new LongTupleIDRegistry("course");
+		for (long key = 1; key <= 100; key++) {
+			longRegistry.register(key * 7);
+		}
+		LongTupleIDRegistry mapped = (LongTupleIDRegistry) longRegistry.toMappedRegistry(new File(System.getProperty("java.io.tmpdir")));
+		try {
+			for (long key = 101; key <= 200000; key++) {
+				mapped.register(key * 7);
+			}
+			assertEquals(200000, mapped.size());
+			assertEquals("course3", mapped.getID(21));
+			assertEquals("course199999", mapped.getID(199999 * 7));
+			assertEquals("", mapped.getID(22));
+		} finally {
+			mapped.close();
+		}
+	}
+
+	public void testLongKeysAreReadFromCursorWithGetLong() throws Exception {
+		LongTupleIDRegistry longRegistry = new LongTupleIDRegistry("staff");
+		longRegistry.register(7L);
+		longRegistry.register(3L);
+		final Long[] keys = {3L, null, 5L};
+		RowCursor data = new RowCursor(new RowSource() {
+			private int row = -1;
+			private boolean wasNull;
+			public boolean next() {
+				return ++row < keys.length;
+			}
+			public String getString(String col) {
+				throw new AssertionError("The key should be read with getLong");
+			}
+			public long getLong(String col) {
+				wasNull = keys[row] == null;
+				return wasNull ? 0 : keys[row];
+			}
+			public boolean wasNull() {
+				return wasNull;
+			}
+			public void close() {
+			}
+		});
+		List<String> keyCols = Arrays.asList("id");
+		assertTrue(data.next());
+		assertEquals("staff2", longRegistry.getID(data, keyCols));
+		assertEquals(2, longRegistry.getOrdinal(data, keyCols));
+		assertTrue(data.next());
+		assertEquals("", longRegistry.getID(data, keyCols));
+		assertTrue(data.next());
+		assertEquals(0, longRegistry.getOrdinal(data, keyCols));
+	}
+}
@@ -0,0 +1,52 @@
+package xml;
+
+import java.io.ByteArrayOutputStream;
+
+import junit.framework.TestCase;
+
+public class XMLWriterTest extends TestCase {
+
+	private static final String NL = System.getProperty("line.separator");
+
+	public void testTagsMatchTheText() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XMLWriter writer = new XMLWriter(out, 16);
+		TagBytes table = new TagBytes("staff");
+		TagBytes column = new TagBytes("name");
+		writer.printTupleStart(1, table, "staff1");
+		writer.printNillableElement(2, column, "Zo\u00eb");
+		writer.printNillableElement(2, column, null);
+		writer.printElement(2, column, null);
+		writer.printReference(2, table, "staff2", true);
+		writer.printReference(2, table, "staff3", false);
+		writer.printEnd(2, table);
+		writer.printEnd(1, table);
+		writer.close();
+		assertFalse(writer.checkError());
+		assertEquals("\t<staff staff#=\"staff1\">" + NL
+				+ "\t\t<name>Zo\u00eb</name>" + NL
+				+ "\t\t<name xsi:nil=\"true\"></name>" + NL
+				+ "\t\t<name>null</name>" + NL
+				+ "\t\t<staff staff_Ref=\"staff2\"></staff>" + NL
+				+ "\t\t<staff staff_Ref=\"staff3\">" + NL
+				+ "\t\t</staff>" + NL
+				+ "\t</staff>" + NL, out.toString("UTF-8"));
+	}
+
+	public void testLongTextAndDeepIndentation() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XMLWriter writer = new XMLWriter(out, 8);
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			text.append(i % 7 == 0 ? '\u00e9' : 'a');
+		}
+		writer.println(100, text.toString());
+		writer.close();
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			expected.append('\t');
+		}
+		expected.append(text).append(NL);
+		assertEquals(expected.toString(), out.toString("UTF-8"));
+	}
+}